@@ -0,0 +1,116 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the memory allocated by the plugin per play event and fails if filtered events allocate anything.<br>
+ * Allocations are read from the thread MXBean of HotSpot, which counts the bytes allocated by the current thread, after
+ * a warm-up long enough for the listener to be compiled. Events which aren't filtered are reported as well: they start
+ * and end a play session, which has to be recorded. The same figures, with more detail, are given by the listener
+ * benchmark run with the GC profiler of JMH (<code>-prof gc</code>).<br>
+ * Debug logging must be disabled, as log messages are only built when it is enabled.
+ */
+public final class AllocationCheck {
+
+	/** Events sent before measuring, for the listener to be compiled. */
+	private static final int WARMUP_EVENT_PAIRS = 500000;
+
+	/** Events whose allocations are measured. */
+	private static final int MEASURED_EVENT_PAIRS = 1000000;
+
+	/** Long enough for the sessions never to reach the percent played required. */
+	private static final double MEDIA_DURATION_SECONDS = 1000000;
+
+	/**
+	 * Hidden constructor, this class is only run from the command line.
+	 */
+	private AllocationCheck() {
+	}
+
+	/**
+	 * Runs the check. The process exits with status 1 if filtered events allocate memory.
+	 *
+	 * @param args not used
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static void main(String[] args) throws IOException {
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threadBean.isThreadAllocatedMemorySupported() || !threadBean.isThreadAllocatedMemoryEnabled()) {
+			System.err.println("The JVM doesn't measure the memory allocated by threads");
+			System.exit(1);
+		}
+
+		Path directory = Files.createTempDirectory("autodelete-allocation");
+		AutoDeleteFileAfterPlayPlugin plugin = BenchmarkFiles.createPlugin(directory);
+		boolean failed;
+		try {
+			// Audio isn't deleted by the default configuration, these events are filtered
+			StubMediaInfo audioMedia = new StubMediaInfo(StubMediaInfo.Type.AUDIO, MEDIA_DURATION_SECONDS);
+			StubRealFile audio = new StubRealFile(new File(directory.toFile(), "audio.mp3"), "audio", audioMedia);
+			StubMediaInfo videoMedia = new StubMediaInfo(StubMediaInfo.Type.VIDEO, MEDIA_DURATION_SECONDS);
+			StubRealFile video = new StubRealFile(new File(directory.toFile(), "video.mkv"), "video", videoMedia);
+
+			play(plugin, audioMedia, audio, WARMUP_EVENT_PAIRS);
+			play(plugin, videoMedia, video, WARMUP_EVENT_PAIRS);
+
+			double filteredBytes = measure(threadBean, plugin, audioMedia, audio);
+			double sessionBytes = measure(threadBean, plugin, videoMedia, video);
+			System.out.println(String.format("Filtered events:     %.2f bytes per event", filteredBytes));
+			System.out.println(String.format("Short play sessions: %.2f bytes per event", sessionBytes));
+
+			if (LoggerFactory.getLogger(AutoDeleteFileAfterPlayPlugin.class).isDebugEnabled()) {
+				System.out.println("Debug logging is enabled, the allocations of filtered events aren't checked");
+				failed = false;
+			} else {
+				// Less than a byte per event is left over by the measurement itself
+				failed = filteredBytes >= 1;
+				System.out.println(failed ? "FAILED: filtered events allocate memory" : "OK: filtered events don't allocate memory");
+			}
+		} finally {
+			plugin.shutdown();
+			BenchmarkFiles.deleteRecursively(directory);
+		}
+		if (failed) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Measures the memory allocated while playing a resource.
+	 *
+	 * @param threadBean the thread MXBean
+	 * @param plugin the plugin
+	 * @param media the media being played
+	 * @param resource the resource being played
+	 * @return the number of bytes allocated per event
+	 */
+	private static double measure(com.sun.management.ThreadMXBean threadBean, AutoDeleteFileAfterPlayPlugin plugin, StubMediaInfo media,
+			StubRealFile resource) {
+		long threadId = Thread.currentThread().getId();
+		long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+		play(plugin, media, resource, MEASURED_EVENT_PAIRS);
+		long endBytes = threadBean.getThreadAllocatedBytes(threadId);
+		return (double) (endBytes - startBytes) / (2L * MEASURED_EVENT_PAIRS);
+	}
+
+	/**
+	 * Plays a resource several times in a row.
+	 *
+	 * @param plugin the plugin
+	 * @param media the media being played
+	 * @param resource the resource being played
+	 * @param count the number of times the resource is played
+	 */
+	private static void play(AutoDeleteFileAfterPlayPlugin plugin, StubMediaInfo media, StubRealFile resource, int count) {
+		for (int i = 0; i < count; i++) {
+			plugin.nowPlaying(media, resource);
+			plugin.donePlaying(media, resource);
+		}
+	}
+}
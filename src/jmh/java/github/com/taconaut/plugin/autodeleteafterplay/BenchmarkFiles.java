@@ -0,0 +1,72 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * File helpers shared by the benchmarks.
+ */
+public final class BenchmarkFiles {
+
+	/**
+	 * Hidden constructor, this class only has static methods.
+	 */
+	private BenchmarkFiles() {
+	}
+
+	/**
+	 * Creates a plugin whose configuration and state files are located in the given directory. Files played in this
+	 * directory will be deleted.
+	 *
+	 * @param directory the directory
+	 * @return the plugin
+	 */
+	public static AutoDeleteFileAfterPlayPlugin createPlugin(Path directory) {
+		return new AutoDeleteFileAfterPlayPlugin(createConfiguration(directory));
+	}
+
+	/**
+	 * Creates a configuration located in the given directory, whose only auto delete folder is the directory. The
+	 * configuration file isn't watched, so that it can be changed before creating the plugin.
+	 *
+	 * @param directory the directory
+	 * @return the configuration
+	 */
+	public static PluginConfiguration createConfiguration(Path directory) {
+		PluginConfiguration configuration = new PluginConfiguration(directory.resolve("configuration.properties").toString());
+		configuration.setWatchConfigurationFile(false);
+		configuration.setAutoDeleteFolderPaths(new String[] { directory.toString() });
+		return configuration;
+	}
+
+	/**
+	 * Deletes a directory and its content.
+	 *
+	 * @param directory the directory
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static void deleteRecursively(Path directory) throws IOException {
+		if (!Files.exists(directory)) {
+			return;
+		}
+
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
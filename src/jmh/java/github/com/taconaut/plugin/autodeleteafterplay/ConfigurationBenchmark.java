@@ -0,0 +1,83 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the cost of reading the configuration values used when a file has been played, from the parsed snapshot
+ * and by parsing the raw properties.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ConfigurationBenchmark {
+	private Path directory;
+	private PluginConfiguration configuration;
+
+	/**
+	 * Creates the configuration.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("autodelete-benchmark");
+		configuration = new PluginConfiguration(directory.resolve("configuration.properties").toString());
+		configuration.setAutoDeleteFolderPaths(new String[] { directory.toString() });
+	}
+
+	/**
+	 * Deletes the configuration directory.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		BenchmarkFiles.deleteRecursively(directory);
+	}
+
+	/**
+	 * Reads the values from the snapshot.
+	 *
+	 * @param blackhole the blackhole consuming the values
+	 */
+	@Benchmark
+	public void snapshotGetters(Blackhole blackhole) {
+		ConfigurationSnapshot snapshot = configuration.getSnapshot();
+		blackhole.consume(snapshot.isDeleteVideo());
+		blackhole.consume(snapshot.getPercentPlayedRequired());
+		blackhole.consume(snapshot.isAccumulatePlayTime());
+		blackhole.consume(snapshot.getAutoDeleteFolderMatcher());
+	}
+
+	/**
+	 * Reads the values by parsing the raw properties.
+	 *
+	 * @param blackhole the blackhole consuming the values
+	 */
+	@Benchmark
+	public void parsedGetters(Blackhole blackhole) {
+		blackhole.consume(configuration.getValue(PluginConfiguration.KEY_DELETE_VIDEO, PluginConfiguration.DEFAULT_DELETE_VIDEO));
+		blackhole.consume(configuration.getValue(PluginConfiguration.KEY_PERCENT_PLAY_REQUIRED, PluginConfiguration.DEFAULT_PERCENT_PLAY_REQUIRED));
+		blackhole.consume(configuration.getValue(PluginConfiguration.KEY_ACCUMULATE_PLAY_TIME, PluginConfiguration.DEFAULT_ACCUMULATE_PLAY_TIME));
+		String folderPaths = configuration.getValue(PluginConfiguration.KEY_AUTO_DELETE_FOLDER_PATHS, PluginConfiguration.DEFAULT_AUTO_DELETE_FOLDER_PATHS);
+		blackhole.consume(folderPaths.split(";"));
+	}
+}
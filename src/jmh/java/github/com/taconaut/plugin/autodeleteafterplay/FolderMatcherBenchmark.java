@@ -0,0 +1,108 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of checking if a file is part of the auto delete folders, for 10 to 10,000 configured folders.
+ * The {@link FolderMatcher} is compared with a linear scan of the folder paths, the way files were matched before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FolderMatcherBenchmark {
+
+	@Param({ "10", "100", "1000", "10000" })
+	private int folderCount;
+
+	private String[] folderPaths;
+	private FolderMatcher folderMatcher;
+	private File matchingFile;
+	private File otherFile;
+
+	/**
+	 * Creates the folders and the files to match. The matching file is located in the last configured folder, which
+	 * is the worst case for the linear scan.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		File root = new File(System.getProperty("java.io.tmpdir"), "autodelete-benchmark-folders");
+		folderPaths = new String[folderCount];
+		for (int i = 0; i < folderCount; i++) {
+			folderPaths[i] = new File(root, "user" + i + File.separator + "downloads").getAbsolutePath();
+		}
+		folderMatcher = new FolderMatcher(folderPaths);
+		matchingFile = new File(folderPaths[folderCount - 1], "show" + File.separator + "episode.mkv");
+		otherFile = new File(root, "other" + File.separator + "movie.mkv");
+	}
+
+	/**
+	 * Matches a file located in an auto delete folder with the folder matcher.
+	 *
+	 * @return the match result
+	 */
+	@Benchmark
+	public boolean folderMatcherHit() {
+		return folderMatcher.matches(matchingFile);
+	}
+
+	/**
+	 * Matches a file which isn't located in an auto delete folder with the folder matcher.
+	 *
+	 * @return the match result
+	 */
+	@Benchmark
+	public boolean folderMatcherMiss() {
+		return folderMatcher.matches(otherFile);
+	}
+
+	/**
+	 * Matches a file located in an auto delete folder with a linear scan.
+	 *
+	 * @return the match result
+	 */
+	@Benchmark
+	public boolean linearScanHit() {
+		return linearScan(matchingFile);
+	}
+
+	/**
+	 * Matches a file which isn't located in an auto delete folder with a linear scan.
+	 *
+	 * @return the match result
+	 */
+	@Benchmark
+	public boolean linearScanMiss() {
+		return linearScan(otherFile);
+	}
+
+	/**
+	 * Checks if the path of the file starts with one of the folder paths.
+	 *
+	 * @param file the file
+	 * @return true, if the file is located in one of the folders
+	 */
+	private boolean linearScan(File file) {
+		String filePath = file.getAbsolutePath();
+		for (String folderPath : folderPaths) {
+			if (filePath.startsWith(folderPath)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
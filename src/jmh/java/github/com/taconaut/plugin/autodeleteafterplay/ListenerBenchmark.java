@@ -0,0 +1,155 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput and latency of a play session (nowPlaying followed by donePlaying) with 1 to 64 renderers
+ * playing concurrently. Every benchmark thread simulates a renderer playing its own file. The files are located in an
+ * auto delete folder but are never played long enough to be deleted, so only the event handling is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ListenerBenchmark {
+
+	/** Long enough for a session of a few microseconds never to reach the percent played required. */
+	private static final double MEDIA_DURATION_SECONDS = 1000000;
+
+	private static final AtomicInteger RENDERER_COUNT = new AtomicInteger();
+
+	private Path directory;
+	private AutoDeleteFileAfterPlayPlugin plugin;
+
+	/**
+	 * Creates the plugin.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("autodelete-benchmark");
+		plugin = BenchmarkFiles.createPlugin(directory);
+	}
+
+	/**
+	 * Stops the plugin and deletes its files.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		plugin.shutdown();
+		BenchmarkFiles.deleteRecursively(directory);
+	}
+
+	/**
+	 * A renderer playing its own files.
+	 */
+	@State(Scope.Thread)
+	public static class Renderer {
+		private StubMediaInfo videoMedia;
+		private StubRealFile video;
+		private StubMediaInfo audioMedia;
+		private StubRealFile audio;
+
+		/**
+		 * Creates the files played by this renderer.
+		 */
+		@Setup(Level.Trial)
+		public void setUp() {
+			int rendererNumber = RENDERER_COUNT.incrementAndGet();
+			File folder = new File(System.getProperty("java.io.tmpdir"), "autodelete-benchmark-renderer-" + rendererNumber);
+
+			videoMedia = new StubMediaInfo(StubMediaInfo.Type.VIDEO, MEDIA_DURATION_SECONDS);
+			video = new StubRealFile(new File(folder, "video.mkv"), "video-" + rendererNumber, videoMedia);
+			audioMedia = new StubMediaInfo(StubMediaInfo.Type.AUDIO, MEDIA_DURATION_SECONDS);
+			audio = new StubRealFile(new File(folder, "audio.mp3"), "audio-" + rendererNumber, audioMedia);
+		}
+	}
+
+	/**
+	 * Plays a video with a single renderer.
+	 *
+	 * @param renderer the renderer
+	 */
+	@Benchmark
+	@Threads(1)
+	public void playVideo1Renderer(Renderer renderer) {
+		play(renderer.videoMedia, renderer.video);
+	}
+
+	/**
+	 * Plays a video with 8 concurrent renderers.
+	 *
+	 * @param renderer the renderer
+	 */
+	@Benchmark
+	@Threads(8)
+	public void playVideo8Renderers(Renderer renderer) {
+		play(renderer.videoMedia, renderer.video);
+	}
+
+	/**
+	 * Plays a video with 64 concurrent renderers.
+	 *
+	 * @param renderer the renderer
+	 */
+	@Benchmark
+	@Threads(64)
+	public void playVideo64Renderers(Renderer renderer) {
+		play(renderer.videoMedia, renderer.video);
+	}
+
+	/**
+	 * Plays an audio file, which is filtered out by the default configuration, with a single renderer.
+	 *
+	 * @param renderer the renderer
+	 */
+	@Benchmark
+	@Threads(1)
+	public void playFilteredAudio1Renderer(Renderer renderer) {
+		play(renderer.audioMedia, renderer.audio);
+	}
+
+	/**
+	 * Plays an audio file, which is filtered out by the default configuration, with 64 concurrent renderers.
+	 *
+	 * @param renderer the renderer
+	 */
+	@Benchmark
+	@Threads(64)
+	public void playFilteredAudio64Renderers(Renderer renderer) {
+		play(renderer.audioMedia, renderer.audio);
+	}
+
+	/**
+	 * Simulates a play session.
+	 *
+	 * @param media the media being played
+	 * @param resource the resource being played
+	 */
+	private void play(StubMediaInfo media, StubRealFile resource) {
+		plugin.nowPlaying(media, resource);
+		plugin.donePlaying(media, resource);
+	}
+}
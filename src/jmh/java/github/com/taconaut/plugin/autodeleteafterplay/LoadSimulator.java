@@ -0,0 +1,511 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMX;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * Offline load simulator replaying a trace of nowPlaying and donePlaying events sent by virtual renderers to the
+ * plugin. The trace is either read from a file or generated, and the played files are created in a temporary
+ * directory, so that the simulator runs without a UMS instance.<br>
+ * Unlike the JMH benchmarks, which measure a single code path in a loop, the simulator replays events at the time
+ * they occurred, lets the plugin delete the files played long enough and reports:
+ * <ul>
+ * <li>the throughput of the events and the delay between the time an event should have been sent and the time it was
+ * sent, which grows when the listener can't keep up</li>
+ * <li>the percentiles of the time spent in nowPlaying and donePlaying, measured by the caller</li>
+ * <li>the number of files deleted, compared to the number of sessions played long enough</li>
+ * <li>the number of sessions lost, i.e. donePlaying events for which the plugin had no session</li>
+ * </ul>
+ * Trace files contain one event per line: <code>offsetMillis,renderer,start|stop,durationSeconds,file</code>, where
+ * the file is relative to the temporary directory and the duration is the one of the media. Lines starting with # are
+ * ignored. A generated trace can be saved with <code>--write-trace</code> to be replayed later.<br>
+ * The virtual renderers are told apart by the internal ids of the resources they play, as renderer configurations
+ * can't be created without a UMS instance.
+ */
+public class LoadSimulator {
+
+	/** Time a generated session is played to be deleted; the plugin only counts whole seconds of play time. */
+	private static final long DELETED_SESSION_MILLIS = 1100;
+
+	/** Duration of the media of a generated session which is played long enough to be deleted. */
+	private static final double DELETED_MEDIA_SECONDS = 1;
+
+	/** Duration of the media of a generated session which is stopped early. */
+	private static final double KEPT_MEDIA_SECONDS = 3600;
+
+	/** Longest time a generated session which is stopped early is played. */
+	private static final int MAX_KEPT_SESSION_MILLIS = 50;
+
+	/** Time given to the plugin to create its threads before the first event is sent. */
+	private static final long START_DELAY_MILLIS = 500;
+
+	/** Interval at which the deletions are polled once all events have been sent. */
+	private static final long DRAIN_POLL_MILLIS = 200;
+
+	private static final String START = "start";
+	private static final String STOP = "stop";
+
+	private final Options options;
+	private final LatencyHistogram lagMicros = new LatencyHistogram();
+	private final LatencyHistogram nowPlayingMicros = new LatencyHistogram();
+	private final LatencyHistogram donePlayingMicros = new LatencyHistogram();
+	private final AtomicLong eventErrors = new AtomicLong();
+
+	/** Sessions of the generated trace played long enough to delete their file. */
+	private int generatedDeletions;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param options the options
+	 */
+	public LoadSimulator(Options options) {
+		this.options = options;
+	}
+
+	/**
+	 * Runs the simulator.
+	 *
+	 * @param args the options, see {@link Options#parse(String[])}
+	 * @throws Exception Signals that the simulation failed.
+	 */
+	public static void main(String[] args) throws Exception {
+		Options options;
+		try {
+			options = Options.parse(args);
+		} catch (IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			System.err.println(Options.USAGE);
+			System.exit(1);
+			return;
+		}
+		new LoadSimulator(options).run();
+	}
+
+	/**
+	 * Replays the trace and prints the report.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @throws InterruptedException Signals that the simulation has been interrupted.
+	 * @throws MalformedObjectNameException Signals that the metrics of the plugin couldn't be found.
+	 */
+	public void run() throws IOException, InterruptedException, MalformedObjectNameException {
+		List<TraceEvent> trace = options.tracePath == null ? generateTrace() : readTrace(options.tracePath);
+		if (options.writeTracePath != null) {
+			writeTrace(trace, options.writeTracePath);
+		}
+
+		Path directory = Files.createTempDirectory("autodelete-simulator");
+		try {
+			Map<String, StubRealFile> resources = createResources(trace, directory);
+			PluginConfiguration configuration = BenchmarkFiles.createConfiguration(directory);
+			configuration.setMoveToRecycleBin(false);
+			AutoDeleteFileAfterPlayPlugin plugin = new AutoDeleteFileAfterPlayPlugin(configuration);
+			try {
+				PluginMetricsMBean metrics = JMX.newMBeanProxy(ManagementFactory.getPlatformMBeanServer(), new ObjectName(PluginMetrics.OBJECT_NAME),
+						PluginMetricsMBean.class);
+				long elapsedNanos = replay(trace, resources, plugin);
+				drain(metrics);
+				printReport(trace, elapsedNanos, metrics);
+			} finally {
+				plugin.shutdown();
+			}
+		} finally {
+			BenchmarkFiles.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * Generates a trace in which every virtual renderer plays sessions one after the other. A share of the sessions
+	 * are played long enough to delete their file, which is only played once; the others are stopped early and play
+	 * files of a shared library.
+	 *
+	 * @return the events, sorted by offset
+	 */
+	private List<TraceEvent> generateTrace() {
+		Random random = new Random(options.seed);
+		List<TraceEvent> trace = new ArrayList<TraceEvent>(options.renderers * options.sessions * 2);
+		for (int renderer = 0; renderer < options.renderers; renderer++) {
+			String rendererName = "renderer-" + renderer;
+			// Spread the first sessions so that the renderers don't all start at the same millisecond
+			long offsetMillis = random.nextInt(1000);
+			for (int session = 0; session < options.sessions; session++) {
+				String file;
+				double durationSeconds;
+				long playMillis;
+				if (random.nextInt(100) < options.deletedPercent) {
+					file = rendererName + "/played-" + session + ".mkv";
+					durationSeconds = DELETED_MEDIA_SECONDS;
+					playMillis = DELETED_SESSION_MILLIS;
+					generatedDeletions++;
+				} else {
+					file = "library/file-" + random.nextInt(options.libraryFiles) + ".mkv";
+					durationSeconds = KEPT_MEDIA_SECONDS;
+					playMillis = 1 + random.nextInt(MAX_KEPT_SESSION_MILLIS);
+				}
+				trace.add(new TraceEvent(offsetMillis, rendererName, true, durationSeconds, file));
+				offsetMillis += playMillis;
+				trace.add(new TraceEvent(offsetMillis, rendererName, false, durationSeconds, file));
+				offsetMillis += random.nextInt(options.maxPauseMillis + 1);
+			}
+		}
+		Collections.sort(trace);
+		return trace;
+	}
+
+	/**
+	 * Reads a trace file.
+	 *
+	 * @param path the path of the trace file
+	 * @return the events, sorted by offset
+	 * @throws IOException Signals that an I/O exception has occurred, or that the trace file is invalid.
+	 */
+	private static List<TraceEvent> readTrace(Path path) throws IOException {
+		List<TraceEvent> trace = new ArrayList<TraceEvent>();
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (line.trim().isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] fields = line.split(",", 5);
+				try {
+					if (fields.length < 5 || !(START.equals(fields[2].trim()) || STOP.equals(fields[2].trim()))) {
+						throw new IllegalArgumentException("expected offsetMillis,renderer,start|stop,durationSeconds,file");
+					}
+					trace.add(new TraceEvent(Long.parseLong(fields[0].trim()), fields[1].trim(), START.equals(fields[2].trim()), Double.parseDouble(fields[3].trim()),
+							fields[4].trim()));
+				} catch (IllegalArgumentException ex) {
+					throw new IOException(String.format("Line %s of the trace file '%s' is invalid: %s", lineNumber, path, ex.getMessage()), ex);
+				}
+			}
+		}
+		Collections.sort(trace);
+		return trace;
+	}
+
+	/**
+	 * Writes a trace file which can be replayed with the --trace option.
+	 *
+	 * @param trace the events
+	 * @param path the path of the trace file
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void writeTrace(List<TraceEvent> trace, Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			writer.write("# offsetMillis,renderer,start|stop,durationSeconds,file");
+			writer.newLine();
+			for (TraceEvent event : trace) {
+				writer.write(String.format(Locale.ROOT, "%s,%s,%s,%s,%s", event.offsetMillis, event.renderer, event.start ? START : STOP, event.durationSeconds,
+						event.file));
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Creates the files of the trace and a resource per renderer and file.
+	 *
+	 * @param trace the events
+	 * @param directory the directory in which the files are created
+	 * @return the resources by renderer and file, see {@link TraceEvent#getResourceKey()}
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private Map<String, StubRealFile> createResources(List<TraceEvent> trace, Path directory) throws IOException {
+		byte[] content = new byte[options.fileSize];
+		Map<String, StubRealFile> resources = new HashMap<String, StubRealFile>();
+		for (TraceEvent event : trace) {
+			String key = event.getResourceKey();
+			if (resources.containsKey(key)) {
+				continue;
+			}
+			Path file = directory.resolve(event.file).normalize();
+			if (!file.startsWith(directory)) {
+				throw new IOException(String.format("The file '%s' of the trace isn't located in the simulation directory", event.file));
+			}
+			if (!Files.exists(file)) {
+				Files.createDirectories(file.getParent());
+				Files.write(file, content);
+			}
+			StubMediaInfo media = new StubMediaInfo(StubMediaInfo.Type.VIDEO, event.durationSeconds);
+			resources.put(key, new StubRealFile(file.toFile(), key, media));
+		}
+		return resources;
+	}
+
+	/**
+	 * Sends the events to the plugin at their offset, using a pool of threads like the UMS request handlers do.
+	 *
+	 * @param trace the events
+	 * @param resources the resources by renderer and file
+	 * @param plugin the plugin
+	 * @return the time elapsed between the first and the last event, in nanoseconds
+	 * @throws InterruptedException Signals that the simulation has been interrupted.
+	 */
+	private long replay(List<TraceEvent> trace, Map<String, StubRealFile> resources, final AutoDeleteFileAfterPlayPlugin plugin) throws InterruptedException {
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(options.threads);
+		final long startNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(START_DELAY_MILLIS);
+		final AtomicLong lastEventNanos = new AtomicLong(startNanos);
+		for (final TraceEvent event : trace) {
+			final StubRealFile resource = resources.get(event.getResourceKey());
+			final long dueNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(event.offsetMillis);
+			executor.schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					long beforeNanos = System.nanoTime();
+					lagMicros.record(TimeUnit.NANOSECONDS.toMicros(beforeNanos - dueNanos));
+					try {
+						if (event.start) {
+							plugin.nowPlaying(resource.getMedia(), resource);
+						} else {
+							plugin.donePlaying(resource.getMedia(), resource);
+						}
+					} catch (RuntimeException ex) {
+						eventErrors.incrementAndGet();
+					}
+					long afterNanos = System.nanoTime();
+					(event.start ? nowPlayingMicros : donePlayingMicros).record(TimeUnit.NANOSECONDS.toMicros(afterNanos - beforeNanos));
+					long last;
+					while ((last = lastEventNanos.get()) < afterNanos && !lastEventNanos.compareAndSet(last, afterNanos)) {
+						// Retry until the latest time has been stored
+					}
+				}
+			}, dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		return lastEventNanos.get() - startNanos;
+	}
+
+	/**
+	 * Waits for the deletions triggered by the trace to complete, or for the drain timeout to elapse.
+	 *
+	 * @param metrics the metrics of the plugin
+	 * @throws InterruptedException Signals that the simulation has been interrupted.
+	 */
+	private void drain(PluginMetricsMBean metrics) throws InterruptedException {
+		long deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.drainSeconds);
+		long previousDone = -1;
+		while (System.nanoTime() < deadlineNanos) {
+			long done = metrics.getDeletionsSucceeded() + metrics.getDeletionsFailed();
+			// A deletion being executed is neither scheduled nor queued, wait for the counters to be stable as well
+			if (metrics.getDeletionsScheduled() == 0 && metrics.getDeletionsQueued() == 0 && done == previousDone) {
+				return;
+			}
+			previousDone = done;
+			Thread.sleep(DRAIN_POLL_MILLIS);
+		}
+		System.out.println(String.format("The deletions didn't complete within %s seconds", options.drainSeconds));
+	}
+
+	/**
+	 * Prints the report of the simulation.
+	 *
+	 * @param trace the events
+	 * @param elapsedNanos the time elapsed between the first and the last event, in nanoseconds
+	 * @param metrics the metrics of the plugin
+	 */
+	private void printReport(List<TraceEvent> trace, long elapsedNanos, PluginMetricsMBean metrics) {
+		double elapsedSeconds = elapsedNanos / 1e9;
+
+		System.out.println(String.format(Locale.ROOT, "Events:            %s from %s renderers in %.3f s (%.0f events/s), %s errors", trace.size(),
+				countRenderers(trace), elapsedSeconds, trace.size() / Math.max(elapsedSeconds, 1e-9), eventErrors.get()));
+		printLatency("Dispatch lag:", lagMicros);
+		printLatency("nowPlaying:", nowPlayingMicros);
+		printLatency("donePlaying:", donePlayingMicros);
+		System.out.println(String.format("Deletions:         %s succeeded, %s failed, %s rejected%s", metrics.getDeletionsSucceeded(), metrics.getDeletionsFailed(),
+				metrics.getDeletionsRejected(), options.tracePath == null ? String.format(" (%s sessions played long enough)", generatedDeletions) : ""));
+		System.out.println(String.format("Sessions lost:     %s, %s still in flight", metrics.getSessionsLost(), metrics.getSessionsInFlight()));
+	}
+
+	/**
+	 * Prints the percentiles of a latency histogram.
+	 *
+	 * @param label the label of the line
+	 * @param histogram the histogram, in microseconds
+	 */
+	private static void printLatency(String label, LatencyHistogram histogram) {
+		System.out.println(String.format(Locale.ROOT, "%-18s p50 %s us, p90 %s us, p99 %s us, p99.9 %s us, max %s us", label, histogram.getPercentile(50),
+				histogram.getPercentile(90), histogram.getPercentile(99), histogram.getPercentile(99.9), histogram.getMax()));
+	}
+
+	/**
+	 * Counts the renderers sending the events of a trace.
+	 *
+	 * @param trace the events
+	 * @return the number of renderers
+	 */
+	private static int countRenderers(List<TraceEvent> trace) {
+		Map<String, Boolean> renderers = new HashMap<String, Boolean>();
+		for (TraceEvent event : trace) {
+			renderers.put(event.renderer, Boolean.TRUE);
+		}
+		return renderers.size();
+	}
+
+	/**
+	 * Event of a trace.
+	 */
+	static class TraceEvent implements Comparable<TraceEvent> {
+		private final long offsetMillis;
+		private final String renderer;
+		private final boolean start;
+		private final double durationSeconds;
+		private final String file;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param offsetMillis the time of the event, relative to the start of the trace
+		 * @param renderer the name of the renderer
+		 * @param start true for nowPlaying, false for donePlaying
+		 * @param durationSeconds the duration of the media
+		 * @param file the path of the file, relative to the simulation directory
+		 */
+		TraceEvent(long offsetMillis, String renderer, boolean start, double durationSeconds, String file) {
+			this.offsetMillis = offsetMillis;
+			this.renderer = renderer;
+			this.start = start;
+			this.durationSeconds = durationSeconds;
+			this.file = file;
+		}
+
+		/**
+		 * Gets the key of the resource played by the event, which is also its internal id.
+		 *
+		 * @return the key
+		 */
+		String getResourceKey() {
+			return renderer + ":" + file;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		@Override
+		public int compareTo(TraceEvent other) {
+			return Long.compare(offsetMillis, other.offsetMillis);
+		}
+	}
+
+	/**
+	 * Options of the simulator.
+	 */
+	static class Options {
+
+		/** Description of the options. */
+		static final String USAGE = "Options:\n"
+				+ "  --renderers <n>         virtual renderers of the generated trace (default 16)\n"
+				+ "  --sessions <n>          sessions played by each renderer (default 200)\n"
+				+ "  --deleted-percent <n>   share of the sessions played long enough to delete their file (default 5)\n"
+				+ "  --library-files <n>     files played by the sessions stopped early (default 100)\n"
+				+ "  --max-pause <ms>        longest pause between two sessions of a renderer (default 10)\n"
+				+ "  --seed <n>              seed of the generated trace (default 1)\n"
+				+ "  --trace <file>          replay a trace file instead of generating one\n"
+				+ "  --write-trace <file>    save the trace to replay it later\n"
+				+ "  --threads <n>           threads sending the events (default 8)\n"
+				+ "  --file-size <bytes>     size of the created files (default 4096)\n"
+				+ "  --drain <seconds>       longest time to wait for the deletions to complete (default 30)";
+
+		private int renderers = 16;
+		private int sessions = 200;
+		private int deletedPercent = 5;
+		private int libraryFiles = 100;
+		private int maxPauseMillis = 10;
+		private long seed = 1;
+		private Path tracePath;
+		private Path writeTracePath;
+		private int threads = 8;
+		private int fileSize = 4096;
+		private int drainSeconds = 30;
+
+		/**
+		 * Parses the command line arguments.
+		 *
+		 * @param args the arguments
+		 * @return the options
+		 * @throws IllegalArgumentException Signals that an argument is invalid.
+		 */
+		static Options parse(String[] args) {
+			Options options = new Options();
+			for (int i = 0; i < args.length; i += 2) {
+				String name = args[i];
+				if (i + 1 >= args.length) {
+					throw new IllegalArgumentException(String.format("The option %s requires a value", name));
+				}
+				String value = args[i + 1];
+				if ("--renderers".equals(name)) {
+					options.renderers = parsePositive(name, value);
+				} else if ("--sessions".equals(name)) {
+					options.sessions = parsePositive(name, value);
+				} else if ("--deleted-percent".equals(name)) {
+					options.deletedPercent = parsePositive(name, value);
+				} else if ("--library-files".equals(name)) {
+					options.libraryFiles = Math.max(1, parsePositive(name, value));
+				} else if ("--max-pause".equals(name)) {
+					options.maxPauseMillis = parsePositive(name, value);
+				} else if ("--seed".equals(name)) {
+					options.seed = parsePositive(name, value);
+				} else if ("--trace".equals(name)) {
+					options.tracePath = Paths.get(value);
+				} else if ("--write-trace".equals(name)) {
+					options.writeTracePath = Paths.get(value);
+				} else if ("--threads".equals(name)) {
+					options.threads = Math.max(1, parsePositive(name, value));
+				} else if ("--file-size".equals(name)) {
+					options.fileSize = parsePositive(name, value);
+				} else if ("--drain".equals(name)) {
+					options.drainSeconds = parsePositive(name, value);
+				} else {
+					throw new IllegalArgumentException(String.format("Unknown option %s", name));
+				}
+			}
+			return options;
+		}
+
+		/**
+		 * Parses a positive integer.
+		 *
+		 * @param name the name of the option
+		 * @param value the value of the option
+		 * @return the integer
+		 * @throws IllegalArgumentException Signals that the value isn't a positive integer.
+		 */
+		private static int parsePositive(String name, String value) {
+			try {
+				int parsedValue = Integer.parseInt(value);
+				if (parsedValue >= 0) {
+					return parsedValue;
+				}
+			} catch (NumberFormatException ex) {
+				// Reported below
+			}
+			throw new IllegalArgumentException(String.format("The value '%s' of the option %s isn't a positive integer", value, name));
+		}
+	}
+}
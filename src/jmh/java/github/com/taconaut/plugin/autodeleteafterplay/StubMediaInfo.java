@@ -0,0 +1,70 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import net.pms.dlna.DLNAMediaInfo;
+
+/**
+ * Media information which doesn't require parsing a file, used to run the benchmarks offline.
+ */
+public class StubMediaInfo extends DLNAMediaInfo {
+
+	/**
+	 * Media types which can be simulated.
+	 */
+	public enum Type {
+		VIDEO, AUDIO, IMAGE
+	}
+
+	private final Type type;
+	private final double durationInSeconds;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param type the media type
+	 * @param durationInSeconds the duration in seconds
+	 */
+	public StubMediaInfo(Type type, double durationInSeconds) {
+		this.type = type;
+		this.durationInSeconds = durationInSeconds;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.pms.dlna.DLNAMediaInfo#isVideo()
+	 */
+	@Override
+	public boolean isVideo() {
+		return type == Type.VIDEO;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.pms.dlna.DLNAMediaInfo#isAudio()
+	 */
+	@Override
+	public boolean isAudio() {
+		return type == Type.AUDIO;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.pms.dlna.DLNAMediaInfo#isImage()
+	 */
+	@Override
+	public boolean isImage() {
+		return type == Type.IMAGE;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.pms.dlna.DLNAMediaInfo#getDurationInSeconds()
+	 */
+	@Override
+	public double getDurationInSeconds() {
+		return durationInSeconds;
+	}
+}
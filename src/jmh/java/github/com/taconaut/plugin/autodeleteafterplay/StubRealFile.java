@@ -0,0 +1,57 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.File;
+
+import net.pms.dlna.DLNAMediaInfo;
+import net.pms.dlna.RealFile;
+
+/**
+ * Real file which isn't part of a UMS media library, used to run the benchmarks offline.
+ */
+public class StubRealFile extends RealFile {
+	private final String internalId;
+	private final DLNAMediaInfo media;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param file the file
+	 * @param internalId the internal id of the resource
+	 * @param media the media information
+	 */
+	public StubRealFile(File file, String internalId, DLNAMediaInfo media) {
+		super(file);
+		this.internalId = internalId;
+		this.media = media;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.pms.dlna.DLNAResource#getInternalId()
+	 */
+	@Override
+	public String getInternalId() {
+		return internalId;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.pms.dlna.DLNAResource#getMedia()
+	 */
+	@Override
+	public DLNAMediaInfo getMedia() {
+		return media;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.pms.dlna.RealFile#getName()
+	 */
+	@Override
+	public String getName() {
+		return getFile().getName();
+	}
+}
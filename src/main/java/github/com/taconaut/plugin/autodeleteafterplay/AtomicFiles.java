@@ -0,0 +1,58 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Helpers used to replace files atomically: the new content is written to a temporary file in the same directory,
+ * which is then renamed over the target. Readers and crashes can therefore only ever see the old or the new content,
+ * never a partially written file.
+ */
+final class AtomicFiles {
+
+	/**
+	 * Hidden constructor, this class only has static methods.
+	 */
+	private AtomicFiles() {
+	}
+
+	/**
+	 * Creates a temporary file next to the target. The parent directory of the target is created if needed.
+	 *
+	 * @param target the file which will be replaced
+	 * @return the temporary file
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	static Path createTempFile(Path target) throws IOException {
+		Files.createDirectories(target.getParent());
+		return Files.createTempFile(target.getParent(), target.getFileName() + ".", ".tmp");
+	}
+
+	/**
+	 * Renames the temporary file over the target. The content of the temporary file must already have been flushed to
+	 * the disk.
+	 *
+	 * @param temp the temporary file created with {@link #createTempFile(Path)}
+	 * @param target the file to replace
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	static void commit(Path temp, Path target) throws IOException {
+		try {
+			Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException ex) {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		// Persist the rename itself. Directories can't be opened on all platforms (e.g. Windows), where this isn't needed.
+		try (FileChannel directory = FileChannel.open(target.getParent(), StandardOpenOption.READ)) {
+			directory.force(true);
+		} catch (IOException ex) {
+			// Nothing more can be done
+		}
+	}
+}
@@ -1,21 +1,20 @@
 package github.com.taconaut.plugin.autodeleteafterplay;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.Date;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.JComponent;
 
-import org.apache.commons.lang.StringUtils;
-import org.fest.util.Arrays;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.sun.jna.platform.FileUtils;
 
+import github.com.taconaut.plugin.autodeleteafterplay.PlaySessionTable.PlaySession;
+
 import net.pms.dlna.DLNAMediaInfo;
 import net.pms.dlna.DLNAResource;
 import net.pms.dlna.RealFile;
@@ -32,24 +31,150 @@ public class AutoDeleteFileAfterPlayPlugin implements StartStopListener {
 	/** Resource file used by the plugin **/
 	protected static final ResourceBundle MESSAGES = ResourceBundle.getBundle("autodeleteafterplay-i18n.messages");
 
-	private static final PluginConfiguration CONFIGURATION;
+	private static final int MAX_RETRY_DELETE = 10;
+	private static final int RETRY_DELETE_INTERVAL_MILLIS = 1000;
+	private static final int DELETION_WORKER_COUNT = 2;
+	private static final int DELETION_QUEUE_CAPACITY = 1000;
+	private static final String DELETION_JOURNAL_FILE_NAME = "pending-deletions.journal";
+	private static final String PLAY_TIME_FILE_NAME = "playtime.properties";
+	private static final String PLAYED_FILES_FILE_NAME = "played-files.properties";
+	private static final long MILLIS_PER_HOUR = 3600000L;
+
+	private final PluginConfiguration pluginConfiguration;
+
+	/** Counters and latency histograms exposed over JMX. */
+	private final PluginMetrics metrics = new PluginMetrics();
+
+	/** Table used to keep track of files being played. */
+	private final PlaySessionTable playSessions;
+
+	/** Accumulator adding up the play time of all sessions of a file. */
+	private final PlayTimeAccumulator playTimeAccumulator = new PlayTimeAccumulator();
+
+	/** Index of the played files kept until their disk runs low on free space or their folder exceeds its quota. */
+	private final PlayedFileIndex playedFileIndex = new PlayedFileIndex();
+
+	/** Journal keeping track of the pending deletions across restarts. */
+	private final DeletionJournal deletionJournal;
+
+	/** Selector picking the strategy used to delete each file. */
+	private final DeletionStrategySelector deletionStrategySelector;
+
+	/** Engine deleting the files in background threads. */
+	private final DeletionEngine deletionEngine;
+
+	/** Pruner removing the folders emptied by deletions. */
+	private final EmptyFolderPruner emptyFolderPruner;
+
+	/** Refresher of the folders of the library holding deleted files. */
+	private final LibraryRefresher libraryRefresher;
+
+	/** Scheduler delaying the deletions by the configured grace period. */
+	private final DeletionScheduler deletionScheduler;
+
+	/** Evictor deleting played files when their disk runs low on free space or their folder exceeds its quota. */
+	private final PlayedFileEvictor playedFileEvictor;
+
+	/** Watcher reloading the configuration when the file has been edited by hand. */
+	private final ConfigurationFileWatcher configurationWatcher;
+
+	/** Persister saving the configuration changed in the configuration panel. */
+	private final ConfigurationPersister configurationPersister;
+
+	/** Writer dumping the metrics to a file in the Prometheus text format. */
+	private final MetricsFileWriter metricsFileWriter;
+
+	private ConfigurationComponent configurationComponent;
+
+	/**
+	 * The Constructor used by UMS. The configuration is loaded from the UMS profile directory.
+	 */
+	public AutoDeleteFileAfterPlayPlugin() {
+		this(loadConfiguration());
+	}
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param pluginConfiguration the loaded plugin configuration
+	 */
+	AutoDeleteFileAfterPlayPlugin(PluginConfiguration pluginConfiguration) {
+		this.pluginConfiguration = pluginConfiguration;
+		playSessions = new PlaySessionTable(pluginConfiguration, new PlaySessionTable.EvictionListener() {
+
+			@Override
+			public void sessionEvicted(PlaySession session) {
+				metrics.recordSessionEvicted();
+				if (session.getFile() != null) {
+					playedFileIndex.setPlaying(session.getFile(), false);
+				}
+				// Deletions held back while files are being played don't have to wait for the next tick
+				deletionScheduler.sessionEnded();
+			}
+		});
+		deletionJournal = new DeletionJournal(Paths.get(pluginConfiguration.getConfigurationFilePath()).resolveSibling(DELETION_JOURNAL_FILE_NAME));
+		deletionStrategySelector = new DeletionStrategySelector(pluginConfiguration, fileUtils);
+		deletionEngine = new DeletionEngine(deletionStrategySelector, deletionJournal, playSessions, metrics, DELETION_WORKER_COUNT,
+				DELETION_QUEUE_CAPACITY, MAX_RETRY_DELETE, RETRY_DELETE_INTERVAL_MILLIS);
+		emptyFolderPruner = new EmptyFolderPruner(pluginConfiguration);
+		libraryRefresher = new LibraryRefresher(pluginConfiguration);
+		deletionEngine.addDeletionListener(new SidecarCleaner(pluginConfiguration, deletionEngine));
+		deletionEngine.addDeletionListener(emptyFolderPruner);
+		deletionEngine.addDeletionListener(libraryRefresher);
+		deletionScheduler = new DeletionScheduler(pluginConfiguration, deletionEngine, deletionJournal, playSessions);
+		playedFileEvictor = new PlayedFileEvictor(pluginConfiguration, playedFileIndex, deletionEngine);
+		deletionEngine.addDeletionListener(playedFileEvictor);
+		configurationWatcher = new ConfigurationFileWatcher(pluginConfiguration);
+		configurationPersister = new ConfigurationPersister(pluginConfiguration);
+		metricsFileWriter = new MetricsFileWriter(pluginConfiguration, metrics);
+		metrics.setGaugeSources(playSessions, deletionScheduler, deletionEngine);
+		metrics.register();
+
+		if (pluginConfiguration.isWatchConfigurationFile()) {
+			try {
+				configurationWatcher.start();
+			} catch (IOException e) {
+				LOGGER.error("Failed to watch the configuration file for changes", e);
+			}
+		}
 
-	static {
-		CONFIGURATION = new PluginConfiguration();
 		try {
-			CONFIGURATION.load();
+			playTimeAccumulator.load(getPlayTimeFilePath(), pluginConfiguration.getPlayTimeRetentionHours() * MILLIS_PER_HOUR,
+					pluginConfiguration.getPlayTimeMaxEntries());
 		} catch (IOException e) {
-			LOGGER.error("Failed to load global configuration", e);
+			LOGGER.error("Failed to load the accumulated play times", e);
 		}
-	}
 
-	private static final int MAX_RETRY_DELETE = 10;
-	private static final int RETRY_DELETE_INTERVAL_MILLIS = 1000;
+		playedFileEvictor.start(getPlayedFilesFilePath());
 
-	/** Cache used to keep track of files being played. */
-	private final Queue<QueueItem> playCache = new LinkedList<QueueItem>();
+		// Complete the deletions which were still pending when UMS stopped, holding back the ones which were held back
+		try {
+			for (DeletionJournal.RecoveredDeletion recoveredDeletion : deletionJournal.open()) {
+				if (recoveredDeletion.isHeld()) {
+					deletionScheduler.restore(recoveredDeletion.getRequest(), recoveredDeletion.getDueTimeMillis(), recoveredDeletion.getDeadlineMillis());
+				} else {
+					deletionEngine.submit(recoveredDeletion.getRequest());
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.error("Failed to open the deletion journal. Pending deletions won't survive a restart of UMS", e);
+		}
+	}
 
-	private ConfigurationComponent configurationComponent;
+	/**
+	 * Loads the global configuration.
+	 *
+	 * @return the configuration
+	 */
+	private static PluginConfiguration loadConfiguration() {
+		PluginConfiguration configuration = new PluginConfiguration();
+		try {
+			configuration.load();
+		} catch (IOException e) {
+			LOGGER.error("Failed to load global configuration", e);
+		}
+		return configuration;
+	}
 
 	/*
 	 * (non-Javadoc)
@@ -59,7 +184,8 @@ public class AutoDeleteFileAfterPlayPlugin implements StartStopListener {
 	public JComponent config() {
 		if (configurationComponent == null) {
 			// Lazy-initialize the configuration panel
-			configurationComponent = new ConfigurationComponent(CONFIGURATION, fileUtils.hasTrash());
+			configurationComponent = new ConfigurationComponent(pluginConfiguration, configurationPersister,
+					deletionStrategySelector.canMoveToRecycleBin());
 		}
 		return configurationComponent;
 	}
@@ -79,7 +205,49 @@ public class AutoDeleteFileAfterPlayPlugin implements StartStopListener {
 	 * @see net.pms.external.ExternalListener#shutdown()
 	 */
 	public void shutdown() {
-		playCache.clear();
+		configurationWatcher.stop();
+		configurationPersister.shutdown();
+		playSessions.shutdown();
+		playSessions.clear();
+		try {
+			playTimeAccumulator.save(getPlayTimeFilePath());
+		} catch (IOException e) {
+			LOGGER.error("Failed to save the accumulated play times", e);
+		}
+		playedFileEvictor.shutdown();
+		if (playedFileIndex.isLoaded()) {
+			// Don't overwrite the saved files with the ones played since UMS started if loading didn't complete
+			try {
+				playedFileIndex.save(getPlayedFilesFilePath());
+			} catch (IOException e) {
+				LOGGER.error("Failed to save the played files kept until their disk runs low on free space or their folder exceeds its quota", e);
+			}
+		}
+		deletionScheduler.shutdown();
+		deletionEngine.shutdown();
+		emptyFolderPruner.shutdown();
+		libraryRefresher.shutdown();
+		deletionJournal.close();
+		metricsFileWriter.shutdown();
+		metrics.unregister();
+	}
+
+	/**
+	 * Gets the path of the file in which the accumulated play times are saved.
+	 *
+	 * @return the play time file path
+	 */
+	private Path getPlayTimeFilePath() {
+		return Paths.get(pluginConfiguration.getConfigurationFilePath()).resolveSibling(PLAY_TIME_FILE_NAME);
+	}
+
+	/**
+	 * Gets the path of the file in which the played files kept until their disk runs low on free space are saved.
+	 *
+	 * @return the played files file path
+	 */
+	private Path getPlayedFilesFilePath() {
+		return Paths.get(pluginConfiguration.getConfigurationFilePath()).resolveSibling(PLAYED_FILES_FILE_NAME);
 	}
 
 	/*
@@ -87,15 +255,45 @@ public class AutoDeleteFileAfterPlayPlugin implements StartStopListener {
 	 * 
 	 * @see net.pms.external.StartStopListener#donePlaying(net.pms.dlna.DLNAMediaInfo , net.pms.dlna.DLNAResource)
 	 */
-	public synchronized void donePlaying(DLNAMediaInfo media, DLNAResource resource) {
-		if ((resource.getMedia().isVideo() && !CONFIGURATION.isDeleteVideo()) ||
-				(resource.getMedia().isAudio() && !CONFIGURATION.isDeleteAudio()) ||
-				(resource.getMedia().isImage() && !CONFIGURATION.isDeleteImage())) {
-			// Only handle plays for configured file types
+	public void donePlaying(DLNAMediaInfo media, DLNAResource resource) {
+		long startNanos = System.nanoTime();
+		try {
+			handleDonePlaying(media, resource);
+		} finally {
+			metrics.recordDonePlaying(System.nanoTime() - startNanos);
+		}
+	}
+
+	/**
+	 * Ends the play session of a resource and deletes the file if it has been played long enough.
+	 *
+	 * @param media the media which finished playing
+	 * @param resource the resource which finished playing
+	 */
+	private void handleDonePlaying(DLNAMediaInfo media, DLNAResource resource) {
+		// Use the same configuration for the whole event, even if it gets reloaded in the meantime
+		ConfigurationSnapshot configuration = pluginConfiguration.getSnapshot();
+		RendererPolicy policy = configuration.getRendererPolicyTable().getPolicy(resource.getDefaultRenderer());
+		MediaType mediaType = MediaType.of(resource.getMedia());
+		if (isFiltered(policy, mediaType)) {
 			return;
 		}
 
-		LOGGER.debug("Done playing " + resource.getName());
+		// Log messages are only built when debug is enabled, so that ignored events don't allocate anything
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug(String.format("Done playing %s", resource.getName()));
+		}
+
+		// Always end the session, even if the resource can't be deleted, to not keep it around
+		PlaySession session = playSessions.stop(resource);
+		if (session == null) {
+			metrics.recordSessionLost();
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug(String.format("No play session has been found for %s", resource.getName()));
+			}
+			return;
+		}
+		deletionScheduler.sessionEnded();
 
 		if (!(resource instanceof RealFile)) {
 			LOGGER.debug("The DLNAResource isn't a real file and can't be deleted");
@@ -103,92 +301,100 @@ public class AutoDeleteFileAfterPlayPlugin implements StartStopListener {
 		}
 
 		RealFile realFile = (RealFile) resource;
+		playedFileIndex.setPlaying(realFile.getFile(), false);
+
+		long playTimeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - session.getStartNanos());
+		String playTimeKey = null;
+		if (configuration.isAccumulatePlayTime()) {
+			// Add up the play time of all sessions, e.g. when a film is watched in several sittings
+			playTimeKey = PlayTimeAccumulator.getKey(realFile.getFile(), resource.getDefaultRenderer(), configuration.isAccumulatePlayTimeAcrossRenderers());
+			playTimeMillis = playTimeAccumulator.add(playTimeKey, playTimeMillis, configuration.getPlayTimeRetentionHours() * MILLIS_PER_HOUR,
+					configuration.getPlayTimeMaxEntries());
+		}
+
+		int playLengthSec = (int) (playTimeMillis / 1000);
+		if (playLengthSec <= 0) {
+			return;
+		}
+
+		String filePath = realFile.getFile().getAbsolutePath();
+		int fullLengthSec = (int) media.getDurationInSeconds();
+
+		// Reject files which haven't been played long enough for any rule before looking at the file system
+		DeletionRuleSet rules = configuration.getDeletionRuleSet();
+		int minPercentPlayedRequired = rules.getMinPercentPlayedRequired(policy.getPercentPlayedRequired());
+		if (playLengthSec <= getMinPlayDeleteLengthSec(fullLengthSec, minPercentPlayedRequired)) {
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug(String.format("Stopped playing file '%s' after %s seconds. Min play length for deleting is %s seconds (%s%% of %s seconds)",
+						filePath, playLengthSec, getMinPlayDeleteLengthSec(fullLengthSec, minPercentPlayedRequired), minPercentPlayedRequired, fullLengthSec));
+			}
+			return;
+		}
 
-		int playLengthSec = 0;
-		while (true) {
-			QueueItem item = playCache.poll();
-			if (item == null) {
-				break;
+		// Delete file if
+		// 1) it is contained in a folder which auto deletes files
+		// 2) no folders have been specified
+		// The file is only resolved once, as it may be on a slow network share
+		FolderMatcher folderMatcher = configuration.getAutoDeleteFolderMatcher();
+		Path resolvedPath = folderMatcher.resolve(realFile.getFile());
+		if (!folderMatcher.matches(resolvedPath)) {
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug(String.format("The file '%s' won't be deleted because it is not part of the defined folders (%s)",
+						filePath, folderMatcher));
 			}
+			return;
+		}
 
-			if (item.getResourceId().equals(resource.getInternalId())) {
-				if (resource instanceof RealFile) {
-					playLengthSec = (int) (new Date().getTime() - item.getStartDate().getTime()) / 1000;
-					break;
+		// Rules only narrow down the files deleted by the folders and the renderer policy
+		int percentPlayedRequired = policy.getPercentPlayedRequired();
+		DeletionRule rule = rules.isEmpty() ? null : rules.findRule(new DeletionRule.Candidate(realFile.getFile(), resolvedPath, mediaType));
+		if (rule != null) {
+			if (rule.getAction() == DeletionRule.Action.KEEP) {
+				if (LOGGER.isDebugEnabled()) {
+					LOGGER.debug(String.format("The file '%s' won't be deleted because of the rule '%s'", filePath, rule));
 				}
+				return;
 			}
+			percentPlayedRequired = rule.getPercentPlayedRequired(percentPlayedRequired);
 		}
 
-		if (playLengthSec > 0) {
-			String filePath = realFile.getFile().getAbsolutePath();
-			int fullLengthSec = (int) media.getDurationInSeconds();
-			int minPlayDeleteLengthSec = (int) (fullLengthSec * ((double) CONFIGURATION.getPercentPlayedRequired() / 100));
+		// Check if the file has been played long enough to delete it
+		int minPlayDeleteLengthSec = getMinPlayDeleteLengthSec(fullLengthSec, percentPlayedRequired);
+		if (LOGGER.isDebugEnabled()) {
 			LOGGER.debug(String.format("Stopped playing file '%s' after %s seconds. Min play length for deleting is %s seconds (%s%% of %s seconds)",
-					filePath, playLengthSec, minPlayDeleteLengthSec, CONFIGURATION.getPercentPlayedRequired(), fullLengthSec));
-
-			// Check if the file has been played long enough to delete it
-			if (playLengthSec > minPlayDeleteLengthSec) {
-				// Delete file if
-				// 1) it is contained in a folder which auto deletes files
-				// 2) no folders have been specified
-				boolean deleteFile = false;
-				String[] autoDeleteFolderPaths = CONFIGURATION.getAutoDeleteFolderPaths();
-				if (autoDeleteFolderPaths.length > 0) {
-					for (String autoDeleteFolderPath : autoDeleteFolderPaths) {
-						if (filePath.startsWith(autoDeleteFolderPath.trim())) {
-							deleteFile = true;
-							break;
-						}
-					}
-					if (!deleteFile) {
-						LOGGER.debug(String.format("The file '%s' won't be deleted because it is not part of the defined folders (%s)",
-								filePath, StringUtils.join(autoDeleteFolderPaths, ";")));
-					}
-				} else {
-					deleteFile = true;
-				}
+					filePath, playLengthSec, minPlayDeleteLengthSec, percentPlayedRequired, fullLengthSec));
+		}
+		if (playLengthSec <= minPlayDeleteLengthSec) {
+			return;
+		}
 
-				if (deleteFile) {
-					boolean deleteSuccess = false;
-					IOException lastDeleteException = null;
-					for (int nbRetries = 0; nbRetries < MAX_RETRY_DELETE; nbRetries++) {
-						try {
-							if (CONFIGURATION.isMoveToRecycleBin() && fileUtils.hasTrash()) {
-								fileUtils.moveToTrash(Arrays.array(new File(filePath)));
-							} else {
-								new File(filePath).delete();
-							}
-							deleteSuccess = true;
-							break;
-						} catch (IOException ex) {
-							lastDeleteException = ex;
-
-							try {
-								Thread.sleep(RETRY_DELETE_INTERVAL_MILLIS);
-							} catch (InterruptedException e) {
-								LOGGER.error("Sleep aborted", e);
-							}
-						}
-					}
-
-					if (deleteSuccess) {
-						if (CONFIGURATION.isMoveToRecycleBin()) {
-							LOGGER.info(String.format("Moved file '%s' to the recycle bin after having played it for %s seconds. Minimum play length for deleting is %s seconds (%s%% of %s seconds)",
-									filePath, playLengthSec, minPlayDeleteLengthSec, CONFIGURATION.getPercentPlayedRequired(), fullLengthSec));
-						} else {
-							LOGGER.info(String.format("Permanently deleted file '%s' after having played it for %s seconds. Minimum play length for deleting is %s seconds (%s%% of %s seconds)",
-									filePath, playLengthSec, minPlayDeleteLengthSec, CONFIGURATION.getPercentPlayedRequired(), fullLengthSec));
-						}
-					} else {
-						if (CONFIGURATION.isMoveToRecycleBin()) {
-							LOGGER.warn(String.format("Failed to move file '%s' to the recycle bin after %s retries", filePath, MAX_RETRY_DELETE), lastDeleteException);
-						} else {
-							LOGGER.warn(String.format("Failed to permanently delete file '%s' after %s retries", filePath, MAX_RETRY_DELETE), lastDeleteException);
-						}
-					}
-				}
-			}
+		if (playTimeKey != null) {
+			playTimeAccumulator.remove(playTimeKey);
 		}
+
+		Path root = folderMatcher.findRoot(resolvedPath);
+		boolean hasQuota = root != null && folderMatcher.getQuotaBytes(root) >= 0;
+		if (hasQuota || configuration.getDeletionMode() == DeletionMode.DISK_PRESSURE) {
+			// Looking up the size and the file store of the file is left to the evictor, not to block UMS
+			playedFileEvictor.keep(realFile.getFile(), System.currentTimeMillis(), root, hasQuota);
+			return;
+		}
+
+		// The deletion itself is done asynchronously to avoid blocking UMS while the file system is busy
+		deletionScheduler.schedule(new DeletionRequest(realFile.getFile(), configuration.isMoveToRecycleBin(), playLengthSec,
+				minPlayDeleteLengthSec, percentPlayedRequired, fullLengthSec, resource),
+				configuration.getDeleteGracePeriodSeconds() * 1000L);
+	}
+
+	/**
+	 * Gets the number of seconds a file has to be played to be deleted.
+	 *
+	 * @param fullLengthSec the full length of the file in seconds
+	 * @param percentPlayedRequired the percent played required
+	 * @return the min play length in seconds
+	 */
+	private static int getMinPlayDeleteLengthSec(int fullLengthSec, int percentPlayedRequired) {
+		return (int) (fullLengthSec * ((double) percentPlayedRequired / 100));
 	}
 
 	/*
@@ -196,52 +402,54 @@ public class AutoDeleteFileAfterPlayPlugin implements StartStopListener {
 	 * 
 	 * @see net.pms.external.StartStopListener#nowPlaying(net.pms.dlna.DLNAMediaInfo, net.pms.dlna.DLNAResource)
 	 */
-	public synchronized void nowPlaying(DLNAMediaInfo media, DLNAResource resource) {
-		if ((resource.getMedia().isVideo() && !CONFIGURATION.isDeleteVideo()) ||
-				(resource.getMedia().isAudio() && !CONFIGURATION.isDeleteAudio()) ||
-				(resource.getMedia().isImage() && !CONFIGURATION.isDeleteImage())) {
-			// Only handle plays for configured file types
+	public void nowPlaying(DLNAMediaInfo media, DLNAResource resource) {
+		long startNanos = System.nanoTime();
+		try {
+			handleNowPlaying(resource);
+		} finally {
+			metrics.recordNowPlaying(System.nanoTime() - startNanos);
+		}
+	}
+
+	/**
+	 * Starts the play session of a resource.
+	 *
+	 * @param resource the resource being played
+	 */
+	private void handleNowPlaying(DLNAResource resource) {
+		ConfigurationSnapshot configuration = pluginConfiguration.getSnapshot();
+		RendererPolicy policy = configuration.getRendererPolicyTable().getPolicy(resource.getDefaultRenderer());
+		MediaType mediaType = MediaType.of(resource.getMedia());
+		if (isFiltered(policy, mediaType)) {
 			return;
 		}
 
-		LOGGER.debug(String.format("Started playing %s", resource.getName()));
-		playCache.add(new QueueItem(resource.getInternalId(), new Date()));
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug(String.format("Started playing %s", resource.getName()));
+		}
+		playSessions.start(resource, System.nanoTime());
+
+		if (resource instanceof RealFile) {
+			// Keep the file if it is being played again before its grace period has elapsed
+			deletionScheduler.cancel(((RealFile) resource).getFile());
+			playedFileIndex.setPlaying(((RealFile) resource).getFile(), true);
+		}
 	}
 
 	/**
-	 * Private class used internally to keep track of played files.
+	 * Checks if the media type of a resource is excluded by the policy of the renderer playing it. Filtered events are
+	 * counted.
+	 *
+	 * @param policy the policy of the renderer
+	 * @param mediaType the type of the media being played
+	 * @return true, if the event should be ignored
 	 */
-	private class QueueItem {
-		private String resourceId;
-		private Date startDate;
-
-		/**
-		 * The Constructor.
-		 *
-		 * @param resourceId the resource id
-		 * @param startDate the start date
-		 */
-		public QueueItem(String resourceId, Date startDate) {
-			this.resourceId = resourceId;
-			this.startDate = startDate;
-		}
-
-		/**
-		 * Gets the resource id.
-		 *
-		 * @return the resource id
-		 */
-		public String getResourceId() {
-			return resourceId;
-		}
-
-		/**
-		 * Gets the start date.
-		 *
-		 * @return the start date
-		 */
-		public Date getStartDate() {
-			return startDate;
+	private boolean isFiltered(RendererPolicy policy, MediaType mediaType) {
+		if (!policy.isDelete(mediaType)) {
+			// Only handle plays for configured file types
+			metrics.recordEventFiltered();
+			return true;
 		}
+		return false;
 	}
 }
@@ -4,7 +4,6 @@ import java.awt.FlowLayout;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.IOException;
 
 import javax.swing.JComponent;
 import javax.swing.JPanel;
@@ -14,8 +13,6 @@ import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 
 import org.apache.commons.lang.StringUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import com.jgoodies.forms.builder.PanelBuilder;
 import com.jgoodies.forms.layout.CellConstraints;
@@ -32,9 +29,9 @@ import net.pms.newgui.components.SpinnerIntModel;
  */
 public class ConfigurationComponent extends JComponent {
 	private static final long serialVersionUID = -404029004613557444L;
-	private static final Logger LOGGER = LoggerFactory.getLogger(ConfigurationComponent.class);
 
 	private PluginConfiguration configuration;
+	private ConfigurationPersister persister;
 
 	private CustomJSpinner sPercentPlayedRequired;
 	private CustomJTextField tfAutoDeleteFolderPaths;
@@ -47,10 +44,12 @@ public class ConfigurationComponent extends JComponent {
 	 * The Constructor.
 	 *
 	 * @param configuration the plugin configuration
+	 * @param persister the persister used to save the configuration when it has been changed
 	 * @param canMoveToRecycleBin specifies if files can be moved to the recycle bin
 	 */
-	public ConfigurationComponent(PluginConfiguration configuration, boolean canMoveToRecycleBin) {
+	public ConfigurationComponent(PluginConfiguration configuration, ConfigurationPersister persister, boolean canMoveToRecycleBin) {
 		this.configuration = configuration;
+		this.persister = persister;
 
 		initialize(canMoveToRecycleBin);
 		build();
@@ -104,7 +103,7 @@ public class ConfigurationComponent extends JComponent {
 				@Override
 				public void actionPerformed(ActionEvent e) {
 					configuration.setMoveToRecycleBin(cbMoveToRecycleBin.isSelected());
-					trySaveConfiguration();
+					scheduleSaveConfiguration();
 				}
 			});
 			cbMoveToRecycleBin.setToolTipText(AutoDeleteFileAfterPlayPlugin.MESSAGES.getString("ConfigurationComponent.cbMoveToRecycleBin.ToolTip"));
@@ -127,7 +126,7 @@ public class ConfigurationComponent extends JComponent {
 			@Override
 			public void actionPerformed(ActionEvent e) {
 				configuration.setDeleteVideo(cbDeleteVideo.isSelected());
-				trySaveConfiguration();
+				scheduleSaveConfiguration();
 			}
 		});
 
@@ -139,7 +138,7 @@ public class ConfigurationComponent extends JComponent {
 			@Override
 			public void actionPerformed(ActionEvent e) {
 				configuration.setDeleteAudio(cbDeleteAudio.isSelected());
-				trySaveConfiguration();
+				scheduleSaveConfiguration();
 			}
 		});
 
@@ -151,7 +150,7 @@ public class ConfigurationComponent extends JComponent {
 			@Override
 			public void actionPerformed(ActionEvent e) {
 				configuration.setDeleteImage(cbDeleteImage.isSelected());
-				trySaveConfiguration();
+				scheduleSaveConfiguration();
 			}
 		});
 	}
@@ -196,7 +195,7 @@ public class ConfigurationComponent extends JComponent {
 	private void updateAndSaveAutoDeleteFolderPaths() {
 		String[] autoDeleteFolderPaths = tfAutoDeleteFolderPaths.getText().split(";");
 		configuration.setAutoDeleteFolderPaths(autoDeleteFolderPaths);
-		trySaveConfiguration();
+		scheduleSaveConfiguration();
 	}
 
 	/**
@@ -205,21 +204,13 @@ public class ConfigurationComponent extends JComponent {
 	private void updateAndSaveMinPlayPercent() {
 		int percentPlayedRequired = (int) sPercentPlayedRequired.getValue();
 		configuration.setPercentPlayedRequired(percentPlayedRequired);
-		trySaveConfiguration();
+		scheduleSaveConfiguration();
 	}
 
 	/**
-	 * Tries to save the configuration.
-	 *
-	 * @return true, if the configuration could be saved; otherwise false
+	 * Schedules a save of the configuration. Changes made shortly after each other are saved at once, in the background.
 	 */
-	private boolean trySaveConfiguration() {
-		try {
-			configuration.save();
-			return true;
-		} catch (IOException ex) {
-			LOGGER.error("Failed to save configuration", ex);
-			return false;
-		}
+	private void scheduleSaveConfiguration() {
+		persister.scheduleSave();
 	}
 }
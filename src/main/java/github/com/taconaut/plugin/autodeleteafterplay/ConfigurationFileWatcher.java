@@ -0,0 +1,140 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the configuration file and reloads the configuration when it has been changed, e.g. by hand when UMS runs
+ * in headless mode.
+ */
+public class ConfigurationFileWatcher {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ConfigurationFileWatcher.class);
+
+	/** Time to wait for further changes before reloading, as editors often write a file in several steps. */
+	private static final long DEBOUNCE_MILLIS = 500;
+
+	private final PluginConfiguration configuration;
+	private final Path configurationFile;
+	private WatchService watchService;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param configuration the configuration to reload
+	 */
+	public ConfigurationFileWatcher(PluginConfiguration configuration) {
+		this.configuration = configuration;
+		this.configurationFile = Paths.get(configuration.getConfigurationFilePath());
+	}
+
+	/**
+	 * Starts watching the configuration file in a background thread.
+	 *
+	 * @throws IOException Signals that the configuration directory can't be watched.
+	 */
+	public synchronized void start() throws IOException {
+		if (watchService != null) {
+			return;
+		}
+
+		Path configurationDirectory = configurationFile.getParent();
+		Files.createDirectories(configurationDirectory);
+		watchService = FileSystems.getDefault().newWatchService();
+		configurationDirectory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+		final WatchService service = watchService;
+		new NamedThreadFactory("AutoDeleteFileAfterPlay-config-watcher").newThread(new Runnable() {
+
+			@Override
+			public void run() {
+				watch(service);
+			}
+		}).start();
+		LOGGER.debug(String.format("Watching configuration file '%s' for changes", configurationFile));
+	}
+
+	/**
+	 * Stops watching the configuration file.
+	 */
+	public synchronized void stop() {
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException ex) {
+				LOGGER.warn("Failed to stop watching the configuration file", ex);
+			}
+			watchService = null;
+		}
+	}
+
+	/**
+	 * Waits for changes of the configuration file until the watch service gets closed.
+	 *
+	 * @param service the watch service
+	 */
+	private void watch(WatchService service) {
+		try {
+			while (true) {
+				WatchKey key = service.take();
+				boolean changed = hasConfigurationFileChanged(key);
+
+				if (changed) {
+					// Wait for the file to be completely written
+					while ((key = service.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+						hasConfigurationFileChanged(key);
+					}
+					reload();
+				}
+			}
+		} catch (ClosedWatchServiceException ex) {
+			LOGGER.debug("Stopped watching the configuration file");
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Consumes the events of the key and resets it.
+	 *
+	 * @param key the watch key
+	 * @return true, if one of the events concerns the configuration file
+	 */
+	private boolean hasConfigurationFileChanged(WatchKey key) {
+		boolean changed = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (configurationFile.getFileName().equals(event.context()) || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				changed = true;
+			}
+		}
+		key.reset();
+		return changed;
+	}
+
+	/**
+	 * Reloads the configuration if the file still exists.
+	 */
+	private void reload() {
+		if (!Files.exists(configurationFile)) {
+			LOGGER.debug(String.format("The configuration file '%s' doesn't exist anymore and won't be reloaded", configurationFile));
+			return;
+		}
+
+		try {
+			configuration.reload();
+		} catch (IOException ex) {
+			LOGGER.error(String.format("Failed to reload configuration from '%s'", configurationFile), ex);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Saves the configuration in a background thread.<br>
+ * Changes made within a short window (e.g. typing a folder path) are coalesced into a single save, so that the
+ * configuration file isn't rewritten on every keystroke and the Swing thread never waits for the disk.
+ */
+public class ConfigurationPersister {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ConfigurationPersister.class);
+
+	/** Time to wait for further changes before saving. */
+	private static final long SAVE_DELAY_MILLIS = 1000;
+
+	private final PluginConfiguration configuration;
+	private final ScheduledThreadPoolExecutor saveScheduler;
+	private ScheduledFuture<?> pendingSave;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param configuration the configuration to save
+	 */
+	public ConfigurationPersister(PluginConfiguration configuration) {
+		this.configuration = configuration;
+		saveScheduler = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("AutoDeleteFileAfterPlay-config-save"));
+		saveScheduler.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * Schedules a save of the configuration. A save which has been scheduled but hasn't started yet is postponed.
+	 */
+	public synchronized void scheduleSave() {
+		if (saveScheduler.isShutdown()) {
+			trySave();
+			return;
+		}
+
+		if (pendingSave != null) {
+			pendingSave.cancel(false);
+		}
+		pendingSave = saveScheduler.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				trySave();
+			}
+		}, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Saves the pending changes right away and stops the background thread.
+	 */
+	public synchronized void shutdown() {
+		saveScheduler.shutdown();
+		if (pendingSave != null && pendingSave.cancel(false)) {
+			trySave();
+		}
+		pendingSave = null;
+		try {
+			saveScheduler.awaitTermination(SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Tries to save the configuration.
+	 *
+	 * @return true, if the configuration could be saved; otherwise false
+	 */
+	private boolean trySave() {
+		try {
+			configuration.save();
+			return true;
+		} catch (IOException ex) {
+			LOGGER.error("Failed to save configuration", ex);
+			return false;
+		}
+	}
+}
@@ -0,0 +1,570 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Immutable, parsed view of the plugin configuration.<br>
+ * The values are parsed once when the snapshot is created, so reading them costs no more than reading a field. A new
+ * snapshot is published by {@link PluginConfiguration} every time the configuration changes.<br>
+ * Compiling the auto delete folders and the deletion rules resolves the configured folders on the file system. When
+ * the configuration is loaded or reloaded from its file, they are compiled by {@link #compile()} before the snapshot
+ * is published, so the first play event doesn't pay for it. The snapshots created for the changes made in the
+ * configuration panel compile them the first time they are used instead, as a slow or unreachable network share
+ * mustn't freeze the panel.
+ */
+public class ConfigurationSnapshot {
+	private final int percentPlayedRequired;
+	private final String autoDeleteFolderPathsString;
+	private final String[] autoDeleteFolderPaths;
+	private volatile FolderMatcher autoDeleteFolderMatcher;
+	private final boolean moveToRecycleBin;
+	private final boolean deleteVideo;
+	private final boolean deleteAudio;
+	private final boolean deleteImage;
+	private final boolean watchConfigurationFile;
+	private final int deleteGracePeriodSeconds;
+	private final boolean accumulatePlayTime;
+	private final boolean accumulatePlayTimeAcrossRenderers;
+	private final int playTimeRetentionHours;
+	private final int playTimeMaxEntries;
+	private final String metricsFilePath;
+	private final DeletionStrategyType deletionStrategy;
+	private final boolean deleteSidecars;
+	private final Set<String> sidecarExtensions;
+	private final boolean pruneEmptyFolders;
+	private final DeletionMode deletionMode;
+	private final EvictionPriority evictionPriority;
+	private final int evictionMinFreePercent;
+	private final int evictionTargetFreePercent;
+	private final boolean throttleLargeDeletions;
+	private final int throttleThresholdMB;
+	private final int throttleChunkMB;
+	private final int throttleMBPerSecond;
+	private final int throttleOpsPerSecond;
+	private final String rendererPolicies;
+	private final RendererPolicyTable rendererPolicyTable;
+	private final String deletionRules;
+	private volatile DeletionRuleSet deletionRuleSet;
+	private final DeletionDeferral deletionDeferral;
+	private final String deletionWindow;
+	private final MaintenanceWindow maintenanceWindow;
+	private final int maxDeletionDelayHours;
+	private final int sessionTimeoutHours;
+	private final int maxSessions;
+	private final boolean secureErase;
+	private final int secureErasePasses;
+	private final int secureEraseMBPerSecond;
+	private final int secureEraseBufferMB;
+	private final boolean refreshFoldersAfterDelete;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param configuration the configuration to parse
+	 * @param previous the previously published snapshot, used to reuse compiled values which didn't change. Can be null.
+	 */
+	ConfigurationSnapshot(PluginConfiguration configuration, ConfigurationSnapshot previous) {
+		percentPlayedRequired = configuration.getValue(PluginConfiguration.KEY_PERCENT_PLAY_REQUIRED, PluginConfiguration.DEFAULT_PERCENT_PLAY_REQUIRED);
+		autoDeleteFolderPathsString = configuration.getValue(PluginConfiguration.KEY_AUTO_DELETE_FOLDER_PATHS,
+				PluginConfiguration.DEFAULT_AUTO_DELETE_FOLDER_PATHS);
+		autoDeleteFolderPaths = autoDeleteFolderPathsString.split(";");
+		if (previous != null && previous.autoDeleteFolderPathsString.equals(autoDeleteFolderPathsString)) {
+			autoDeleteFolderMatcher = previous.autoDeleteFolderMatcher;
+		}
+		moveToRecycleBin = configuration.getValue(PluginConfiguration.KEY_MOVE_TO_RECYCLEBIN, PluginConfiguration.DEFAULT_MOVE_TO_RECYCLEBIN);
+		deleteVideo = configuration.getValue(PluginConfiguration.KEY_DELETE_VIDEO, PluginConfiguration.DEFAULT_DELETE_VIDEO);
+		deleteAudio = configuration.getValue(PluginConfiguration.KEY_DELETE_AUDIO, PluginConfiguration.DEFAULT_DELETE_AUDIO);
+		deleteImage = configuration.getValue(PluginConfiguration.KEY_DELETE_IMAGE, PluginConfiguration.DEFAULT_DELETE_IMAGE);
+		watchConfigurationFile = configuration.getValue(PluginConfiguration.KEY_WATCH_CONFIGURATION_FILE,
+				PluginConfiguration.DEFAULT_WATCH_CONFIGURATION_FILE);
+		deleteGracePeriodSeconds = configuration.getValue(PluginConfiguration.KEY_DELETE_GRACE_PERIOD_SECONDS,
+				PluginConfiguration.DEFAULT_DELETE_GRACE_PERIOD_SECONDS);
+		accumulatePlayTime = configuration.getValue(PluginConfiguration.KEY_ACCUMULATE_PLAY_TIME, PluginConfiguration.DEFAULT_ACCUMULATE_PLAY_TIME);
+		accumulatePlayTimeAcrossRenderers = configuration.getValue(PluginConfiguration.KEY_ACCUMULATE_PLAY_TIME_ACROSS_RENDERERS,
+				PluginConfiguration.DEFAULT_ACCUMULATE_PLAY_TIME_ACROSS_RENDERERS);
+		playTimeRetentionHours = configuration.getValue(PluginConfiguration.KEY_PLAY_TIME_RETENTION_HOURS,
+				PluginConfiguration.DEFAULT_PLAY_TIME_RETENTION_HOURS);
+		playTimeMaxEntries = configuration.getValue(PluginConfiguration.KEY_PLAY_TIME_MAX_ENTRIES, PluginConfiguration.DEFAULT_PLAY_TIME_MAX_ENTRIES);
+		metricsFilePath = configuration.getValue(PluginConfiguration.KEY_METRICS_FILE_PATH, PluginConfiguration.DEFAULT_METRICS_FILE_PATH);
+		deletionStrategy = configuration.getValue(PluginConfiguration.KEY_DELETION_STRATEGY, PluginConfiguration.DEFAULT_DELETION_STRATEGY);
+		deleteSidecars = configuration.getValue(PluginConfiguration.KEY_DELETE_SIDECARS, PluginConfiguration.DEFAULT_DELETE_SIDECARS);
+		sidecarExtensions = parseExtensions(configuration.getValue(PluginConfiguration.KEY_SIDECAR_EXTENSIONS,
+				PluginConfiguration.DEFAULT_SIDECAR_EXTENSIONS));
+		pruneEmptyFolders = configuration.getValue(PluginConfiguration.KEY_PRUNE_EMPTY_FOLDERS, PluginConfiguration.DEFAULT_PRUNE_EMPTY_FOLDERS);
+		deletionMode = configuration.getValue(PluginConfiguration.KEY_DELETION_MODE, PluginConfiguration.DEFAULT_DELETION_MODE);
+		evictionPriority = configuration.getValue(PluginConfiguration.KEY_EVICTION_PRIORITY, PluginConfiguration.DEFAULT_EVICTION_PRIORITY);
+		evictionMinFreePercent = configuration.getValue(PluginConfiguration.KEY_EVICTION_MIN_FREE_PERCENT,
+				PluginConfiguration.DEFAULT_EVICTION_MIN_FREE_PERCENT);
+		evictionTargetFreePercent = configuration.getValue(PluginConfiguration.KEY_EVICTION_TARGET_FREE_PERCENT,
+				PluginConfiguration.DEFAULT_EVICTION_TARGET_FREE_PERCENT);
+		throttleLargeDeletions = configuration.getValue(PluginConfiguration.KEY_THROTTLE_LARGE_DELETIONS,
+				PluginConfiguration.DEFAULT_THROTTLE_LARGE_DELETIONS);
+		throttleThresholdMB = configuration.getValue(PluginConfiguration.KEY_THROTTLE_THRESHOLD_MB,
+				PluginConfiguration.DEFAULT_THROTTLE_THRESHOLD_MB);
+		throttleChunkMB = configuration.getValue(PluginConfiguration.KEY_THROTTLE_CHUNK_MB, PluginConfiguration.DEFAULT_THROTTLE_CHUNK_MB);
+		throttleMBPerSecond = configuration.getValue(PluginConfiguration.KEY_THROTTLE_MB_PER_SECOND,
+				PluginConfiguration.DEFAULT_THROTTLE_MB_PER_SECOND);
+		throttleOpsPerSecond = configuration.getValue(PluginConfiguration.KEY_THROTTLE_OPS_PER_SECOND,
+				PluginConfiguration.DEFAULT_THROTTLE_OPS_PER_SECOND);
+		rendererPolicies = configuration.getValue(PluginConfiguration.KEY_RENDERER_POLICIES, PluginConfiguration.DEFAULT_RENDERER_POLICIES);
+		rendererPolicyTable = new RendererPolicyTable(rendererPolicies, new RendererPolicy(percentPlayedRequired, deleteVideo, deleteAudio, deleteImage));
+		deletionRules = configuration.getValue(PluginConfiguration.KEY_DELETION_RULES, PluginConfiguration.DEFAULT_DELETION_RULES);
+		if (previous != null && previous.deletionRules.equals(deletionRules)) {
+			deletionRuleSet = previous.deletionRuleSet;
+		}
+		deletionDeferral = configuration.getValue(PluginConfiguration.KEY_DEFER_DELETIONS, PluginConfiguration.DEFAULT_DEFER_DELETIONS);
+		deletionWindow = configuration.getValue(PluginConfiguration.KEY_DELETION_WINDOW, PluginConfiguration.DEFAULT_DELETION_WINDOW);
+		if (previous != null && previous.deletionWindow.equals(deletionWindow)) {
+			maintenanceWindow = previous.maintenanceWindow;
+		} else {
+			maintenanceWindow = MaintenanceWindow.parse(deletionWindow);
+		}
+		maxDeletionDelayHours = configuration.getValue(PluginConfiguration.KEY_MAX_DELETION_DELAY_HOURS,
+				PluginConfiguration.DEFAULT_MAX_DELETION_DELAY_HOURS);
+		sessionTimeoutHours = configuration.getValue(PluginConfiguration.KEY_SESSION_TIMEOUT_HOURS,
+				PluginConfiguration.DEFAULT_SESSION_TIMEOUT_HOURS);
+		maxSessions = configuration.getValue(PluginConfiguration.KEY_MAX_SESSIONS, PluginConfiguration.DEFAULT_MAX_SESSIONS);
+		secureErase = configuration.getValue(PluginConfiguration.KEY_SECURE_ERASE, PluginConfiguration.DEFAULT_SECURE_ERASE);
+		secureErasePasses = configuration.getValue(PluginConfiguration.KEY_SECURE_ERASE_PASSES, PluginConfiguration.DEFAULT_SECURE_ERASE_PASSES);
+		secureEraseMBPerSecond = configuration.getValue(PluginConfiguration.KEY_SECURE_ERASE_MB_PER_SECOND,
+				PluginConfiguration.DEFAULT_SECURE_ERASE_MB_PER_SECOND);
+		secureEraseBufferMB = Math.max(1, Math.min(PluginConfiguration.MAX_SECURE_ERASE_BUFFER_MB,
+				configuration.getValue(PluginConfiguration.KEY_SECURE_ERASE_BUFFER_MB, PluginConfiguration.DEFAULT_SECURE_ERASE_BUFFER_MB)));
+		refreshFoldersAfterDelete = configuration.getValue(PluginConfiguration.KEY_REFRESH_FOLDERS_AFTER_DELETE,
+				PluginConfiguration.DEFAULT_REFRESH_FOLDERS_AFTER_DELETE);
+	}
+
+	/**
+	 * Gets the percent played required before a file gets automatically deleted.
+	 *
+	 * @return the percent played required
+	 */
+	public int getPercentPlayedRequired() {
+		return percentPlayedRequired;
+	}
+
+	/**
+	 * Gets an array of folders in which files get automatically deleted.
+	 *
+	 * @return a copy of the auto delete folder paths
+	 */
+	public String[] getAutoDeleteFolderPaths() {
+		return Arrays.copyOf(autoDeleteFolderPaths, autoDeleteFolderPaths.length);
+	}
+
+	/**
+	 * Compiles the auto delete folders and the deletion rules, if they haven't been yet. To be called before the
+	 * snapshot is published, on a thread which may block on the file system.
+	 */
+	void compile() {
+		getAutoDeleteFolderMatcher();
+		getDeletionRuleSet();
+	}
+
+	/**
+	 * Gets the matcher used to check if a file is part of the folders in which files get automatically deleted.
+	 * Compiled on first use if {@link #compile()} hasn't been called.
+	 *
+	 * @return the auto delete folder matcher
+	 */
+	public FolderMatcher getAutoDeleteFolderMatcher() {
+		FolderMatcher folderMatcher = autoDeleteFolderMatcher;
+		if (folderMatcher == null) {
+			synchronized (this) {
+				folderMatcher = autoDeleteFolderMatcher;
+				if (folderMatcher == null) {
+					folderMatcher = new FolderMatcher(autoDeleteFolderPaths);
+					autoDeleteFolderMatcher = folderMatcher;
+				}
+			}
+		}
+		return folderMatcher;
+	}
+
+	/**
+	 * Gets a value indicating if the file should be moved to the recycle bin.
+	 *
+	 * @return true, if a deleted file should be moved to the recycle bin
+	 */
+	public boolean isMoveToRecycleBin() {
+		return moveToRecycleBin;
+	}
+
+	/**
+	 * Gets a value indicating if video files should be deleted.
+	 *
+	 * @return true, if video files should be deleted
+	 */
+	public boolean isDeleteVideo() {
+		return deleteVideo;
+	}
+
+	/**
+	 * Gets a value indicating if audio files should be deleted.
+	 *
+	 * @return true, if audio files should be deleted
+	 */
+	public boolean isDeleteAudio() {
+		return deleteAudio;
+	}
+
+	/**
+	 * Gets a value indicating if image files should be deleted.
+	 *
+	 * @return true, if image files should be deleted
+	 */
+	public boolean isDeleteImage() {
+		return deleteImage;
+	}
+
+	/**
+	 * Gets a value indicating if the configuration file should be watched for changes and reloaded automatically.
+	 *
+	 * @return true, if the configuration file should be watched
+	 */
+	public boolean isWatchConfigurationFile() {
+		return watchConfigurationFile;
+	}
+
+	/**
+	 * Gets the number of seconds to wait before deleting a file which has been played long enough.
+	 *
+	 * @return the delete grace period in seconds
+	 */
+	public int getDeleteGracePeriodSeconds() {
+		return deleteGracePeriodSeconds;
+	}
+
+	/**
+	 * Gets a value indicating if the play time of all sessions of a file should be added up.
+	 *
+	 * @return true, if the play time should be accumulated
+	 */
+	public boolean isAccumulatePlayTime() {
+		return accumulatePlayTime;
+	}
+
+	/**
+	 * Gets a value indicating if the play time of a file should be added up across all renderers.
+	 *
+	 * @return true, if the play time should be accumulated across renderers
+	 */
+	public boolean isAccumulatePlayTimeAcrossRenderers() {
+		return accumulatePlayTimeAcrossRenderers;
+	}
+
+	/**
+	 * Gets the number of hours after which the accumulated play time of a file which hasn't been played is forgotten.
+	 *
+	 * @return the play time retention in hours
+	 */
+	public int getPlayTimeRetentionHours() {
+		return playTimeRetentionHours;
+	}
+
+	/**
+	 * Gets the maximum number of files whose play time is accumulated.
+	 *
+	 * @return the maximum number of entries
+	 */
+	public int getPlayTimeMaxEntries() {
+		return playTimeMaxEntries;
+	}
+
+	/**
+	 * Gets the path of the file to which the metrics are written in the Prometheus text format.
+	 *
+	 * @return the metrics file path, or an empty string if the metrics aren't written to a file
+	 */
+	public String getMetricsFilePath() {
+		return metricsFilePath;
+	}
+
+	/**
+	 * Gets the strategy used to permanently delete files.
+	 *
+	 * @return the deletion strategy
+	 */
+	public DeletionStrategyType getDeletionStrategy() {
+		return deletionStrategy;
+	}
+
+	/**
+	 * Gets a value indicating if the sidecar files of a deleted file (subtitles, thumbnails, ...) should be deleted as well.
+	 *
+	 * @return true, if sidecar files should be deleted
+	 */
+	public boolean isDeleteSidecars() {
+		return deleteSidecars;
+	}
+
+	/**
+	 * Gets the extensions of the sidecar files.
+	 *
+	 * @return the lower case sidecar extensions, without leading dot
+	 */
+	public Set<String> getSidecarExtensions() {
+		return sidecarExtensions;
+	}
+
+	/**
+	 * Parses a list of file extensions separated by a semicolon.
+	 *
+	 * @param extensions the extensions
+	 * @return the lower case extensions, without leading dot
+	 */
+	private static Set<String> parseExtensions(String extensions) {
+		Set<String> parsedExtensions = new HashSet<String>();
+		for (String extension : extensions.split(";")) {
+			String parsedExtension = extension.trim().toLowerCase(Locale.ROOT);
+			if (parsedExtension.startsWith(".")) {
+				parsedExtension = parsedExtension.substring(1);
+			}
+			if (!parsedExtension.isEmpty()) {
+				parsedExtensions.add(parsedExtension);
+			}
+		}
+		return Collections.unmodifiableSet(parsedExtensions);
+	}
+
+	/**
+	 * Gets a value indicating if folders emptied by deletions should be removed.
+	 *
+	 * @return true, if empty folders should be removed
+	 */
+	public boolean isPruneEmptyFolders() {
+		return pruneEmptyFolders;
+	}
+
+	/**
+	 * Gets when the files which have been played long enough are deleted.
+	 *
+	 * @return the deletion mode
+	 */
+	public DeletionMode getDeletionMode() {
+		return deletionMode;
+	}
+
+	/**
+	 * Gets the order in which played files are deleted when a disk runs low on free space.
+	 *
+	 * @return the eviction priority
+	 */
+	public EvictionPriority getEvictionPriority() {
+		return evictionPriority;
+	}
+
+	/**
+	 * Gets the free space in percent below which played files are deleted in disk pressure mode.
+	 *
+	 * @return the min free space in percent
+	 */
+	public int getEvictionMinFreePercent() {
+		return evictionMinFreePercent;
+	}
+
+	/**
+	 * Gets the free space in percent up to which played files are deleted once a disk runs low.
+	 *
+	 * @return the target free space in percent
+	 */
+	public int getEvictionTargetFreePercent() {
+		return evictionTargetFreePercent;
+	}
+
+	/**
+	 * Gets a value indicating if large files should be truncated in throttled chunks before being unlinked, not to stall the streams reading from the same disk.
+	 *
+	 * @return true, if the deletion of large files should be throttled
+	 */
+	public boolean isThrottleLargeDeletions() {
+		return throttleLargeDeletions;
+	}
+
+	/**
+	 * Gets the size in MB from which the deletion of a file is throttled.
+	 *
+	 * @return the throttle threshold in MB
+	 */
+	public int getThrottleThresholdMB() {
+		return throttleThresholdMB;
+	}
+
+	/**
+	 * Gets the size in MB by which a large file is truncated in each step of a throttled deletion.
+	 *
+	 * @return the throttle chunk size in MB
+	 */
+	public int getThrottleChunkMB() {
+		return throttleChunkMB;
+	}
+
+	/**
+	 * Gets the maximum number of MB freed per second by throttled deletions.
+	 *
+	 * @return the throttle rate in MB per second
+	 */
+	public int getThrottleMBPerSecond() {
+		return throttleMBPerSecond;
+	}
+
+	/**
+	 * Gets the maximum number of truncate and unlink operations per second done by throttled deletions.
+	 *
+	 * @return the throttle rate in operations per second
+	 */
+	public int getThrottleOpsPerSecond() {
+		return throttleOpsPerSecond;
+	}
+
+	/**
+	 * Gets the deletion settings overridden per renderer.
+	 *
+	 * @return the renderer policies
+	 */
+	public String getRendererPolicies() {
+		return rendererPolicies;
+	}
+
+	/**
+	 * Gets the table resolving the deletion policy of each renderer, compiled from the global settings and the
+	 * renderer policies.
+	 *
+	 * @return the renderer policy table
+	 */
+	public RendererPolicyTable getRendererPolicyTable() {
+		return rendererPolicyTable;
+	}
+
+	/**
+	 * Gets the ordered rules deciding if a played file is kept or deleted.
+	 *
+	 * @return the deletion rules
+	 */
+	public String getDeletionRules() {
+		return deletionRules;
+	}
+
+	/**
+	 * Gets the compiled deletion rules. Compiled on first use if {@link #compile()} hasn't been called.
+	 *
+	 * @return the deletion rule set
+	 */
+	public DeletionRuleSet getDeletionRuleSet() {
+		DeletionRuleSet ruleSet = deletionRuleSet;
+		if (ruleSet == null) {
+			synchronized (this) {
+				ruleSet = deletionRuleSet;
+				if (ruleSet == null) {
+					ruleSet = new DeletionRuleSet(deletionRules);
+					deletionRuleSet = ruleSet;
+				}
+			}
+		}
+		return ruleSet;
+	}
+
+	/**
+	 * Gets the deletion deferral, defining until when deletions are held back to not slow down the files being played.
+	 *
+	 * @return the deletion deferral
+	 */
+	public DeletionDeferral getDeletionDeferral() {
+		return deletionDeferral;
+	}
+
+	/**
+	 * Gets the daily window, of the form HH:mm-HH:mm, during which held back deletions are carried out.
+	 *
+	 * @return the deletion window, or an empty string
+	 */
+	public String getDeletionWindow() {
+		return deletionWindow;
+	}
+
+	/**
+	 * Gets the longest time a deletion can be held back, after which it is carried out even if files are being played.
+	 *
+	 * @return the max deletion delay in hours
+	 */
+	public int getMaxDeletionDelayHours() {
+		return maxDeletionDelayHours;
+	}
+
+	/**
+	 * Gets the compiled deletion window.
+	 *
+	 * @return the deletion window, or null if none has been configured or it is invalid
+	 */
+	public MaintenanceWindow getMaintenanceWindow() {
+		return maintenanceWindow;
+	}
+
+	/**
+	 * Gets the time after which a play session which hasn't been stopped is considered lost, e.g. because its renderer disappeared.
+	 *
+	 * @return the session timeout in hours
+	 */
+	public int getSessionTimeoutHours() {
+		return sessionTimeoutHours;
+	}
+
+	/**
+	 * Gets the maximum number of play sessions tracked at the same time.
+	 *
+	 * @return the max number of sessions
+	 */
+	public int getMaxSessions() {
+		return maxSessions;
+	}
+
+	/**
+	 * Gets a value indicating if permanently deleted files should be overwritten before being unlinked, for them not to be recoverable.
+	 *
+	 * @return true, if files should be securely erased
+	 */
+	public boolean isSecureErase() {
+		return secureErase;
+	}
+
+	/**
+	 * Gets the number of times a securely erased file is overwritten.
+	 *
+	 * @return the number of passes
+	 */
+	public int getSecureErasePasses() {
+		return secureErasePasses;
+	}
+
+	/**
+	 * Gets the maximum number of MB written per second by all secure erasures, 0 for no limit.
+	 *
+	 * @return the secure erase bandwidth in MB/s
+	 */
+	public int getSecureEraseMBPerSecond() {
+		return secureEraseMBPerSecond;
+	}
+
+	/**
+	 * Gets the size in MB of the buffer written at once by a secure erasure, between 1 and
+	 * {@value PluginConfiguration#MAX_SECURE_ERASE_BUFFER_MB}.
+	 *
+	 * @return the secure erase buffer size in MB
+	 */
+	public int getSecureEraseBufferMB() {
+		return secureEraseBufferMB;
+	}
+
+	/**
+	 * Gets a value indicating if the folder of a deleted file should be refreshed in the library of UMS, for renderers not to browse the deleted file.
+	 *
+	 * @return true, if folders should be refreshed
+	 */
+	public boolean isRefreshFoldersAfterDelete() {
+		return refreshFoldersAfterDelete;
+	}
+}
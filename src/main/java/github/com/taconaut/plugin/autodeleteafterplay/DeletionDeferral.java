@@ -0,0 +1,38 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+/**
+ * Defines if deletions are held back to not compete for disk I/O with the files being streamed, see
+ * {@link DeletionScheduler}.
+ */
+public enum DeletionDeferral {
+
+	/** Files are deleted as soon as they qualify, after the grace period. */
+	NONE,
+
+	/** Deletions are held until no file is being played. */
+	UNTIL_IDLE,
+
+	/** Deletions are held until the deletion window is open. */
+	UNTIL_WINDOW,
+
+	/** Deletions are held until no file is being played or the deletion window is open, whichever comes first. */
+	UNTIL_IDLE_OR_WINDOW;
+
+	/**
+	 * Gets a value indicating if deletions are released once no file is being played.
+	 *
+	 * @return true, if deletions are released when idle
+	 */
+	public boolean isReleasedWhenIdle() {
+		return this == UNTIL_IDLE || this == UNTIL_IDLE_OR_WINDOW;
+	}
+
+	/**
+	 * Gets a value indicating if deletions are released while the deletion window is open.
+	 *
+	 * @return true, if deletions are released in the window
+	 */
+	public boolean isReleasedInWindow() {
+		return this == UNTIL_WINDOW || this == UNTIL_IDLE_OR_WINDOW;
+	}
+}
@@ -0,0 +1,375 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes files asynchronously.<br>
+ * Deletion requests are put in a bounded queue which is drained by a pool of worker threads. Failed deletions are
+ * rescheduled on a timer instead of blocking a worker while waiting for the next attempt. A file which would be
+ * truncated or overwritten while a renderer is still playing it is rescheduled the same way, until it isn't played
+ * anymore; this doesn't count as an attempt.
+ */
+public class DeletionEngine {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DeletionEngine.class);
+
+	private static final long SHUTDOWN_TIMEOUT_MILLIS = 30000;
+
+	/** Delay before checking again if a file whose content would be destroyed is still being played. */
+	private static final long PLAYING_RECHECK_INTERVAL_MILLIS = 30000;
+
+	private final DeletionStrategySelector strategySelector;
+	private final DeletionJournal journal;
+	private final PlaySessionTable playSessions;
+	private final PluginMetrics metrics;
+	private final int maxRetries;
+	private final long retryIntervalMillis;
+
+	private final ThreadPoolExecutor workers;
+	private final ScheduledThreadPoolExecutor retryScheduler;
+	private final Set<DeletionJob> pendingRetries = Collections.newSetFromMap(new ConcurrentHashMap<DeletionJob, Boolean>());
+	private final List<DeletionListener> listeners = new CopyOnWriteArrayList<DeletionListener>();
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param strategySelector the selector picking the strategy used to delete each file
+	 * @param journal the journal recording the pending deletions
+	 * @param playSessions the sessions in progress, checked before destroying the content of a file
+	 * @param metrics the metrics recording the outcome of the deletions
+	 * @param workerCount the number of threads deleting files
+	 * @param queueCapacity the maximum number of deletions waiting to be processed
+	 * @param maxRetries the maximum number of times a deletion will be attempted
+	 * @param retryIntervalMillis the delay between two attempts to delete a file
+	 */
+	public DeletionEngine(DeletionStrategySelector strategySelector, DeletionJournal journal, PlaySessionTable playSessions,
+			PluginMetrics metrics, int workerCount, int queueCapacity, int maxRetries, long retryIntervalMillis) {
+		this.strategySelector = strategySelector;
+		this.journal = journal;
+		this.playSessions = playSessions;
+		this.metrics = metrics;
+		this.maxRetries = maxRetries;
+		this.retryIntervalMillis = retryIntervalMillis;
+
+		workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity),
+				new NamedThreadFactory("AutoDeleteFileAfterPlay-delete"), new ThreadPoolExecutor.AbortPolicy());
+		retryScheduler = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("AutoDeleteFileAfterPlay-retry"));
+	}
+
+	/**
+	 * Queues the deletion of a file. This method never blocks.<br>
+	 * The deletion is recorded in the journal first, so that a rejected deletion will be retried when UMS restarts.
+	 *
+	 * @param request the deletion request
+	 * @return true, if the request has been queued; false if it has been rejected because the queue is full or the
+	 *         engine has been shut down
+	 */
+	public boolean submit(DeletionRequest request) {
+		journal.recordPending(request, request.getPreviousFailedAttempts());
+		try {
+			workers.execute(new DeletionJob(request, 1, System.nanoTime()));
+			return true;
+		} catch (RejectedExecutionException ex) {
+			metrics.recordDeletionsRejected(1);
+			LOGGER.warn(String.format("The deletion of file '%s' has been rejected because %s. It will be retried when UMS restarts",
+					request.getFile().getAbsolutePath(), workers.isShutdown() ? "the plugin is shutting down" : "too many deletions are pending"));
+			return false;
+		}
+	}
+
+	/**
+	 * Queues the deletion of several files which will be deleted one after the other by the same worker, e.g. files of
+	 * the same directory. This method never blocks.
+	 *
+	 * @param requests the deletion requests
+	 * @return true, if the requests have been queued; false if they have been rejected because the queue is full or the
+	 *         engine has been shut down
+	 */
+	public boolean submit(final List<DeletionRequest> requests) {
+		if (requests.size() == 1) {
+			return submit(requests.get(0));
+		}
+
+		for (DeletionRequest request : requests) {
+			journal.recordPending(request, request.getPreviousFailedAttempts());
+		}
+		final long submitTimeNanos = System.nanoTime();
+		try {
+			workers.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					for (DeletionRequest request : requests) {
+						new DeletionJob(request, 1, submitTimeNanos).run();
+					}
+				}
+			});
+			return true;
+		} catch (RejectedExecutionException ex) {
+			metrics.recordDeletionsRejected(requests.size());
+			LOGGER.warn(String.format("The deletion of %s files in '%s' has been rejected because %s. They will be retried when UMS restarts",
+					requests.size(), requests.get(0).getFile().getParent(),
+					workers.isShutdown() ? "the plugin is shutting down" : "too many deletions are pending"));
+			return false;
+		}
+	}
+
+	/**
+	 * Adds a listener notified once a file has been deleted.
+	 *
+	 * @param listener the listener
+	 */
+	public void addDeletionListener(DeletionListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Gets the number of deletions waiting to be processed, excluding the ones waiting for a retry.
+	 *
+	 * @return the number of queued deletions
+	 */
+	public int getQueuedCount() {
+		return workers.getQueue().size();
+	}
+
+	/**
+	 * Gets the number of deletions which can still be queued before new ones get rejected.
+	 *
+	 * @return the remaining capacity of the queue
+	 */
+	public int getRemainingCapacity() {
+		return workers.getQueue().remainingCapacity();
+	}
+
+	/**
+	 * Stops accepting new deletions and processes the pending ones. Deletions waiting for a retry get one last attempt.
+	 */
+	public void shutdown() {
+		retryScheduler.shutdownNow();
+		for (DeletionJob pendingRetry : pendingRetries) {
+			if (pendingRetries.remove(pendingRetry)) {
+				try {
+					workers.execute(pendingRetry);
+				} catch (RejectedExecutionException ex) {
+					LOGGER.warn(String.format("Failed to queue the last deletion attempt of file '%s' while shutting down",
+							pendingRetry.request.getFile().getAbsolutePath()));
+					notifyFailure(pendingRetry.request);
+				}
+			}
+		}
+
+		workers.shutdown();
+		try {
+			if (!workers.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				LOGGER.warn(String.format("%s deletions were still pending after waiting %s ms for them to complete", workers.getQueue().size(),
+						SHUTDOWN_TIMEOUT_MILLIS));
+				workers.shutdownNow();
+			}
+		} catch (InterruptedException ex) {
+			workers.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Notifies the listeners that the file has been deleted. A failing listener doesn't prevent the others from
+	 * being notified.
+	 *
+	 * @param request the deletion request
+	 */
+	private void notifyListeners(DeletionRequest request) {
+		for (DeletionListener listener : listeners) {
+			try {
+				listener.fileDeleted(request);
+			} catch (RuntimeException ex) {
+				LOGGER.error(String.format("Failed to clean up after the deletion of file '%s'", request.getFile().getAbsolutePath()), ex);
+			}
+		}
+	}
+
+	/**
+	 * Notifies the listeners that the engine gave up deleting the file until UMS restarts. A failing listener doesn't
+	 * prevent the others from being notified.
+	 *
+	 * @param request the deletion request
+	 */
+	private void notifyFailure(DeletionRequest request) {
+		for (DeletionListener listener : listeners) {
+			try {
+				listener.deletionFailed(request);
+			} catch (RuntimeException ex) {
+				LOGGER.error(String.format("Failed to clean up after the failed deletion of file '%s'", request.getFile().getAbsolutePath()), ex);
+			}
+		}
+	}
+
+	/**
+	 * Logs the successful deletion of a file.
+	 *
+	 * @param request the deletion request
+	 * @param movedToRecycleBin true, if the file has been moved to the recycle bin
+	 */
+	private void logSuccess(DeletionRequest request, boolean movedToRecycleBin) {
+		String filePath = request.getFile().getAbsolutePath();
+		if (request.getMainFile() != null) {
+			LOGGER.info(String.format("%s sidecar file '%s' of '%s'", movedToRecycleBin ? "Moved to the recycle bin" : "Permanently deleted",
+					filePath, request.getMainFile().getAbsolutePath()));
+		} else if (request.isEvicted()) {
+			LOGGER.info(String.format("Permanently deleted played file '%s' to free space", filePath));
+		} else if (request.isRecovered()) {
+			LOGGER.info(String.format("%s file '%s' whose deletion was still pending when UMS stopped",
+					movedToRecycleBin ? "Moved to the recycle bin" : "Permanently deleted", filePath));
+		} else if (movedToRecycleBin) {
+			LOGGER.info(String.format("Moved file '%s' to the recycle bin after having played it for %s seconds. Minimum play length for deleting is %s seconds (%s%% of %s seconds)",
+					filePath, request.getPlayLengthSec(), request.getMinPlayDeleteLengthSec(), request.getPercentPlayedRequired(), request.getFullLengthSec()));
+		} else {
+			LOGGER.info(String.format("Permanently deleted file '%s' after having played it for %s seconds. Minimum play length for deleting is %s seconds (%s%% of %s seconds)",
+					filePath, request.getPlayLengthSec(), request.getMinPlayDeleteLengthSec(), request.getPercentPlayedRequired(), request.getFullLengthSec()));
+		}
+	}
+
+	/**
+	 * Logs the failed deletion of a file.
+	 *
+	 * @param request the deletion request
+	 * @param attempt the number of attempts which have been made
+	 * @param lastDeleteException the exception raised by the last attempt
+	 */
+	private void logFailure(DeletionRequest request, int attempt, IOException lastDeleteException) {
+		String filePath = request.getFile().getAbsolutePath();
+		if (request.isMoveToRecycleBin()) {
+			LOGGER.warn(String.format("Failed to move file '%s' to the recycle bin after %s retries. It will be retried when UMS restarts", filePath,
+					attempt), lastDeleteException);
+		} else {
+			LOGGER.warn(String.format("Failed to permanently delete file '%s' after %s retries. It will be retried when UMS restarts", filePath,
+					attempt), lastDeleteException);
+		}
+	}
+
+	/**
+	 * Job executed by a worker thread to make one attempt at deleting a file.
+	 */
+	private class DeletionJob implements Runnable {
+		private final DeletionRequest request;
+		private final int attempt;
+		private final long submitTimeNanos;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param request the deletion request
+		 * @param attempt the number of this attempt, starting at 1
+		 * @param submitTimeNanos the {@link System#nanoTime()} at which the deletion has been submitted
+		 */
+		public DeletionJob(DeletionRequest request, int attempt, long submitTimeNanos) {
+			this.request = request;
+			this.attempt = attempt;
+			this.submitTimeNanos = submitTimeNanos;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			// A file staged by a failed attempt of the staging strategy isn't at its path anymore, but still has to be deleted
+			if (!request.getFile().exists() && !StagingDeletionStrategy.getStagedFile(request.getFile()).exists()) {
+				LOGGER.info(String.format("The file '%s' doesn't exist anymore and won't be deleted", request.getFile().getAbsolutePath()));
+				journal.recordDone(request);
+				return;
+			}
+
+			DeletionStrategy strategy = strategySelector.select(request);
+			if (strategy.isContentDestroyed() && playSessions.isPlaying(request.getFile())) {
+				// Unlinking would let the renderer finish playing the file, truncating or overwriting it would not
+				if (reschedule(new DeletionJob(request, attempt, submitTimeNanos), PLAYING_RECHECK_INTERVAL_MILLIS)) {
+					LOGGER.debug(String.format("The file '%s' is still being played and won't be deleted with the %s strategy yet. Check again in %s ms",
+							request.getFile().getAbsolutePath(), strategy.getName(), PLAYING_RECHECK_INTERVAL_MILLIS));
+				} else {
+					LOGGER.info(String.format("The file '%s' is still being played and will be deleted when UMS restarts", request.getFile().getAbsolutePath()));
+					notifyFailure(request);
+				}
+				return;
+			}
+
+			try {
+				long fileSize = request.getFile().length();
+				long startNanos = System.nanoTime();
+				strategy.delete(request.getFile());
+				long endNanos = System.nanoTime();
+				journal.recordDone(request);
+				metrics.recordDeletionSucceeded(TimeUnit.NANOSECONDS.toMillis(endNanos - submitTimeNanos), fileSize, strategy.isRecoverable());
+				metrics.recordDeletionStrategyTime(strategy.getName(), endNanos - startNanos);
+				LOGGER.debug(String.format("Deleted file '%s' with the %s strategy in %s ms", request.getFile().getAbsolutePath(), strategy.getName(),
+						TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos)));
+				logSuccess(request, strategy.isRecoverable());
+				notifyListeners(request);
+			} catch (IOException ex) {
+				journal.recordPending(request, request.getPreviousFailedAttempts() + attempt);
+				if (attempt >= maxRetries || !reschedule(new DeletionJob(request, attempt + 1, submitTimeNanos), retryIntervalMillis)) {
+					metrics.recordDeletionFailed();
+					logFailure(request, attempt, ex);
+					notifyFailure(request);
+				} else {
+					metrics.recordDeletionRetry();
+					LOGGER.debug(String.format("Failed to delete file '%s' (attempt %s of %s). Retry in %s ms", request.getFile().getAbsolutePath(),
+							attempt, maxRetries, retryIntervalMillis));
+				}
+			} catch (RuntimeException ex) {
+				// Retrying wouldn't help, the deletion is left in the journal
+				journal.recordPending(request, request.getPreviousFailedAttempts() + attempt);
+				metrics.recordDeletionFailed();
+				LOGGER.error(String.format("Failed to delete file '%s' with the %s strategy. It will be retried when UMS restarts",
+						request.getFile().getAbsolutePath(), strategy.getName()), ex);
+				notifyFailure(request);
+			}
+		}
+
+		/**
+		 * Schedules another job for the deletion. Once the delay has elapsed, the job is queued like any other deletion.
+		 *
+		 * @param retryJob the job to run
+		 * @param delayMillis the delay before queuing the job
+		 * @return true, if the job has been scheduled
+		 */
+		private boolean reschedule(final DeletionJob retryJob, long delayMillis) {
+			pendingRetries.add(retryJob);
+			try {
+				retryScheduler.schedule(new Runnable() {
+
+					@Override
+					public void run() {
+						// The job might have been taken over by shutdown() in the meantime
+						if (pendingRetries.remove(retryJob)) {
+							try {
+								workers.execute(retryJob);
+							} catch (RejectedExecutionException ex) {
+								metrics.recordDeletionFailed();
+								logFailure(request, attempt, new IOException("The retry could not be queued", ex));
+								notifyFailure(request);
+							}
+						}
+					}
+				}, delayMillis, TimeUnit.MILLISECONDS);
+				return true;
+			} catch (RejectedExecutionException ex) {
+				pendingRetries.remove(retryJob);
+				return false;
+			}
+		}
+	}
+}
@@ -0,0 +1,454 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of the files waiting to be deleted, so that deletions survive a restart or crash of UMS.<br>
+ * Deletions held back by the {@link DeletionScheduler} are recorded with the time from which they may be deleted and
+ * the time after which they aren't held back anymore, so that they are held back as long after a restart. Records are
+ * buffered in memory and written with a single fsync per batch. On startup the journal is replayed to get the pending
+ * deletions back; it is compacted in the background once most of its records are obsolete.
+ */
+public class DeletionJournal {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DeletionJournal.class);
+
+	private static final byte RECORD_PENDING = 'P';
+	private static final byte RECORD_DONE = 'D';
+	private static final byte RECORD_HELD = 'H';
+
+	/** Interval at which the buffered records are written and synced to the disk. */
+	private static final long FLUSH_INTERVAL_MILLIS = 200;
+
+	/** The journal is compacted when it holds more than this number of records ... */
+	private static final int COMPACT_MIN_RECORDS = 1000;
+	/** ... and more than this number of records per pending deletion. */
+	private static final int COMPACT_RECORDS_PER_ENTRY = 4;
+
+	private final Path journalFile;
+	private final ScheduledThreadPoolExecutor flusher;
+
+	/** Pending deletions by file path, as they would be rebuilt by replaying the journal. */
+	private final Map<String, PendingEntry> pendingEntries = new LinkedHashMap<String, PendingEntry>();
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+	private final DataOutputStream bufferOutput = new DataOutputStream(buffer);
+	private int recordCount;
+	private boolean damaged;
+	private boolean opened;
+
+	/** Channel of the journal file. Only used by the thread opening the journal, then by the flusher thread. */
+	private FileChannel channel;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param journalFile the journal file
+	 */
+	public DeletionJournal(Path journalFile) {
+		this.journalFile = journalFile;
+		flusher = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("AutoDeleteFileAfterPlay-journal"));
+	}
+
+	/**
+	 * Opens the journal and replays it. Records are only written once the journal has been opened successfully.
+	 *
+	 * @return the deletions which were pending when UMS stopped, queued or held back
+	 * @throws IOException Signals that the journal can't be read or written.
+	 */
+	public List<RecoveredDeletion> open() throws IOException {
+		List<RecoveredDeletion> pendingRequests = new ArrayList<RecoveredDeletion>();
+		synchronized (this) {
+			Files.createDirectories(journalFile.getParent());
+			if (Files.exists(journalFile)) {
+				replay();
+			}
+			channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			opened = true;
+
+			for (Map.Entry<String, PendingEntry> entry : pendingEntries.entrySet()) {
+				PendingEntry pendingEntry = entry.getValue();
+				DeletionRequest request = new DeletionRequest(new File(entry.getKey()), pendingEntry.moveToRecycleBin, pendingEntry.failedAttempts);
+				pendingRequests.add(new RecoveredDeletion(request, pendingEntry.held, pendingEntry.dueTimeMillis, pendingEntry.deadlineMillis));
+			}
+		}
+
+		if (damaged) {
+			// Don't append records after the damaged ones
+			compact();
+		}
+
+		flusher.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				flushAndCompact();
+			}
+		}, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+		LOGGER.debug(String.format("Replayed deletion journal '%s', %s deletions are pending", journalFile, pendingRequests.size()));
+		return pendingRequests;
+	}
+
+	/**
+	 * Records that a file is waiting to be deleted.
+	 *
+	 * @param request the deletion request
+	 * @param failedAttempts the number of attempts to delete the file which failed so far
+	 */
+	public synchronized void recordPending(DeletionRequest request, int failedAttempts) {
+		String filePath = request.getFile().getAbsolutePath();
+		pendingEntries.put(filePath, new PendingEntry(request.isMoveToRecycleBin(), failedAttempts, false, 0, 0));
+		append(RECORD_PENDING, filePath, request.isMoveToRecycleBin(), failedAttempts, 0, 0);
+	}
+
+	/**
+	 * Records that the deletion of a file is held back by the {@link DeletionScheduler}.
+	 *
+	 * @param request the deletion request
+	 * @param dueTimeMillis the time from which the file may be deleted
+	 * @param deadlineMillis the time after which the deletion isn't held back anymore
+	 */
+	public synchronized void recordHeld(DeletionRequest request, long dueTimeMillis, long deadlineMillis) {
+		String filePath = request.getFile().getAbsolutePath();
+		pendingEntries.put(filePath, new PendingEntry(request.isMoveToRecycleBin(), request.getPreviousFailedAttempts(), true, dueTimeMillis, deadlineMillis));
+		append(RECORD_HELD, filePath, request.isMoveToRecycleBin(), request.getPreviousFailedAttempts(), dueTimeMillis, deadlineMillis);
+	}
+
+	/**
+	 * Records that a file doesn't have to be deleted anymore, either because it has been deleted, because it doesn't
+	 * exist anymore or because its held back deletion has been cancelled.
+	 *
+	 * @param request the deletion request
+	 */
+	public synchronized void recordDone(DeletionRequest request) {
+		String filePath = request.getFile().getAbsolutePath();
+		if (pendingEntries.remove(filePath) != null) {
+			append(RECORD_DONE, filePath, false, 0, 0, 0);
+		}
+	}
+
+	/**
+	 * Writes the buffered records and closes the journal.
+	 */
+	public void close() {
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(FLUSH_INTERVAL_MILLIS * 10, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+
+		synchronized (this) {
+			if (!opened) {
+				return;
+			}
+			opened = false;
+		}
+
+		try {
+			flush();
+			channel.close();
+		} catch (IOException ex) {
+			LOGGER.error(String.format("Failed to close deletion journal '%s'", journalFile), ex);
+		}
+	}
+
+	/**
+	 * Appends a record to the buffer.
+	 *
+	 * @param type the record type
+	 * @param filePath the path of the file
+	 * @param moveToRecycleBin true, if the file should be moved to the recycle bin
+	 * @param failedAttempts the number of attempts to delete the file which failed so far
+	 * @param dueTimeMillis the time from which a held back file may be deleted
+	 * @param deadlineMillis the time after which a held back deletion isn't held back anymore
+	 */
+	private void append(byte type, String filePath, boolean moveToRecycleBin, int failedAttempts, long dueTimeMillis, long deadlineMillis) {
+		if (!opened) {
+			// Not opened or already closed
+			return;
+		}
+
+		try {
+			writeRecord(bufferOutput, type, filePath, moveToRecycleBin, failedAttempts, dueTimeMillis, deadlineMillis);
+			recordCount++;
+		} catch (IOException ex) {
+			// Can't happen when writing to memory
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Writes the buffered records to the disk and compacts the journal if it holds too many obsolete records.
+	 */
+	private void flushAndCompact() {
+		try {
+			flush();
+
+			boolean compact;
+			synchronized (this) {
+				compact = recordCount > COMPACT_MIN_RECORDS && recordCount > COMPACT_RECORDS_PER_ENTRY * pendingEntries.size();
+			}
+			if (compact) {
+				compact();
+			}
+		} catch (IOException ex) {
+			LOGGER.error(String.format("Failed to write deletion journal '%s'", journalFile), ex);
+		}
+	}
+
+	/**
+	 * Writes the buffered records to the disk and syncs them. The records are taken out of the buffer while holding the
+	 * lock, but written without it, so that recording a deletion never waits for the disk.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void flush() throws IOException {
+		byte[] records;
+		synchronized (this) {
+			if (buffer.size() == 0) {
+				return;
+			}
+			records = buffer.toByteArray();
+			buffer.reset();
+		}
+
+		ByteBuffer bytes = ByteBuffer.wrap(records);
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		channel.force(false);
+	}
+
+	/**
+	 * Rewrites the journal with one record per pending deletion.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void compact() throws IOException {
+		// Records added after this point are still in the buffer and will be written to the compacted journal
+		int previousRecordCount;
+		int compactedRecordCount;
+		ByteArrayOutputStream compacted = new ByteArrayOutputStream();
+		synchronized (this) {
+			previousRecordCount = recordCount;
+			compactedRecordCount = pendingEntries.size();
+			DataOutputStream out = new DataOutputStream(compacted);
+			for (Map.Entry<String, PendingEntry> entry : pendingEntries.entrySet()) {
+				PendingEntry pendingEntry = entry.getValue();
+				writeRecord(out, pendingEntry.held ? RECORD_HELD : RECORD_PENDING, entry.getKey(), pendingEntry.moveToRecycleBin, pendingEntry.failedAttempts,
+						pendingEntry.dueTimeMillis, pendingEntry.deadlineMillis);
+			}
+			recordCount = compactedRecordCount;
+		}
+
+		Path tempFile = AtomicFiles.createTempFile(journalFile);
+		try {
+			try (FileChannel tempChannel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+				ByteBuffer bytes = ByteBuffer.wrap(compacted.toByteArray());
+				while (bytes.hasRemaining()) {
+					tempChannel.write(bytes);
+				}
+				tempChannel.force(false);
+			}
+
+			channel.close();
+			AtomicFiles.commit(tempFile, journalFile);
+		} finally {
+			Files.deleteIfExists(tempFile);
+			if (!channel.isOpen()) {
+				channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			}
+		}
+
+		LOGGER.debug(String.format("Compacted deletion journal '%s' from %s to %s records", journalFile, previousRecordCount, compactedRecordCount));
+	}
+
+	/**
+	 * Reads the journal to rebuild the pending deletions. A record which has only partly been written, because UMS
+	 * stopped while writing it, is ignored. A record which can't be read, e.g. because it has been corrupted, is ignored
+	 * along with the following ones, so that the journal keeps working; the records read so far are kept.
+	 *
+	 * @throws IOException Signals that the journal can't be opened.
+	 */
+	private void replay() throws IOException {
+		try (InputStream fileStream = Files.newInputStream(journalFile);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(fileStream))) {
+			readRecords(in);
+		}
+	}
+
+	/**
+	 * Reads the records of the journal until its end or the first record which can't be read.
+	 *
+	 * @param in the input to read from
+	 */
+	private void readRecords(DataInputStream in) {
+		try {
+			while (true) {
+				int type = in.read();
+				if (type == -1) {
+					break;
+				}
+				boolean moveToRecycleBin = in.readBoolean();
+				int failedAttempts = in.readInt();
+				String filePath = in.readUTF();
+				if (type == RECORD_PENDING) {
+					pendingEntries.put(filePath, new PendingEntry(moveToRecycleBin, failedAttempts, false, 0, 0));
+				} else if (type == RECORD_HELD) {
+					long dueTimeMillis = in.readLong();
+					long deadlineMillis = in.readLong();
+					pendingEntries.put(filePath, new PendingEntry(moveToRecycleBin, failedAttempts, true, dueTimeMillis, deadlineMillis));
+				} else if (type == RECORD_DONE) {
+					pendingEntries.remove(filePath);
+				} else {
+					LOGGER.warn(String.format("The deletion journal '%s' is corrupted, the remaining records will be ignored", journalFile));
+					damaged = true;
+					break;
+				}
+				recordCount++;
+			}
+		} catch (EOFException ex) {
+			LOGGER.debug(String.format("Ignored the incomplete last record of the deletion journal '%s'", journalFile));
+			damaged = true;
+		} catch (IOException ex) {
+			LOGGER.warn(String.format("Failed to read the deletion journal '%s', the remaining records will be ignored", journalFile), ex);
+			damaged = true;
+		}
+	}
+
+	/**
+	 * Writes a record.
+	 *
+	 * @param out the output to write to
+	 * @param type the record type
+	 * @param filePath the path of the file
+	 * @param moveToRecycleBin true, if the file should be moved to the recycle bin
+	 * @param failedAttempts the number of attempts to delete the file which failed so far
+	 * @param dueTimeMillis the time from which a held back file may be deleted, only written for held back deletions
+	 * @param deadlineMillis the time after which a held back deletion isn't held back anymore, only written for held
+	 *            back deletions
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void writeRecord(DataOutputStream out, byte type, String filePath, boolean moveToRecycleBin, int failedAttempts, long dueTimeMillis,
+			long deadlineMillis) throws IOException {
+		out.writeByte(type);
+		out.writeBoolean(moveToRecycleBin);
+		out.writeInt(failedAttempts);
+		out.writeUTF(filePath);
+		if (type == RECORD_HELD) {
+			out.writeLong(dueTimeMillis);
+			out.writeLong(deadlineMillis);
+		}
+		out.flush();
+	}
+
+	/**
+	 * State of a pending deletion.
+	 */
+	private static class PendingEntry {
+		private final boolean moveToRecycleBin;
+		private final int failedAttempts;
+		private final boolean held;
+		private final long dueTimeMillis;
+		private final long deadlineMillis;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param moveToRecycleBin true, if the file should be moved to the recycle bin
+		 * @param failedAttempts the number of attempts to delete the file which failed so far
+		 * @param held true, if the deletion is held back by the scheduler
+		 * @param dueTimeMillis the time from which a held back file may be deleted
+		 * @param deadlineMillis the time after which a held back deletion isn't held back anymore
+		 */
+		public PendingEntry(boolean moveToRecycleBin, int failedAttempts, boolean held, long dueTimeMillis, long deadlineMillis) {
+			this.moveToRecycleBin = moveToRecycleBin;
+			this.failedAttempts = failedAttempts;
+			this.held = held;
+			this.dueTimeMillis = dueTimeMillis;
+			this.deadlineMillis = deadlineMillis;
+		}
+	}
+
+	/**
+	 * Deletion which was pending when UMS stopped.
+	 */
+	public static class RecoveredDeletion {
+		private final DeletionRequest request;
+		private final boolean held;
+		private final long dueTimeMillis;
+		private final long deadlineMillis;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param request the deletion request
+		 * @param held true, if the deletion was held back by the scheduler
+		 * @param dueTimeMillis the time from which a held back file may be deleted
+		 * @param deadlineMillis the time after which a held back deletion isn't held back anymore
+		 */
+		RecoveredDeletion(DeletionRequest request, boolean held, long dueTimeMillis, long deadlineMillis) {
+			this.request = request;
+			this.held = held;
+			this.dueTimeMillis = dueTimeMillis;
+			this.deadlineMillis = deadlineMillis;
+		}
+
+		/**
+		 * Gets the deletion request.
+		 *
+		 * @return the request
+		 */
+		public DeletionRequest getRequest() {
+			return request;
+		}
+
+		/**
+		 * Gets a value indicating if the deletion was held back by the scheduler rather than queued for deletion.
+		 *
+		 * @return true, if the deletion was held back
+		 */
+		public boolean isHeld() {
+			return held;
+		}
+
+		/**
+		 * Gets the time from which a held back file may be deleted.
+		 *
+		 * @return the due time in milliseconds since the epoch
+		 */
+		public long getDueTimeMillis() {
+			return dueTimeMillis;
+		}
+
+		/**
+		 * Gets the time after which a held back deletion isn't held back anymore.
+		 *
+		 * @return the deadline in milliseconds since the epoch
+		 */
+		public long getDeadlineMillis() {
+			return deadlineMillis;
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+/**
+ * Gets notified by the {@link DeletionEngine} once a file has been deleted, to clean up after it, or once the engine
+ * gave up deleting it until UMS restarts.
+ */
+public interface DeletionListener {
+
+	/**
+	 * Called by the worker thread which deleted the file. Implementations should not block for long, as the worker
+	 * can't delete other files in the meantime.
+	 *
+	 * @param request the deletion request of the file which has been deleted
+	 */
+	void fileDeleted(DeletionRequest request);
+
+	/**
+	 * Called once all attempts to delete the file failed, or the deletion couldn't be scheduled anymore. The file is
+	 * still in the journal and will be deleted when UMS restarts.
+	 *
+	 * @param request the deletion request of the file which hasn't been deleted
+	 */
+	void deletionFailed(DeletionRequest request);
+}
@@ -0,0 +1,16 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+/**
+ * Defines when the files which have been played long enough are deleted.
+ */
+public enum DeletionMode {
+
+	/** Files are deleted once they have been played, after the grace period. */
+	IMMEDIATE,
+
+	/**
+	 * Files are kept like in a cache and only deleted when the disk holding them runs low on free space, see
+	 * {@link PlayedFileEvictor}.
+	 */
+	DISK_PRESSURE
+}
@@ -0,0 +1,205 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.File;
+
+import net.pms.dlna.DLNAResource;
+
+/**
+ * Describes a file which qualified for deletion, together with the play information which led to the decision.
+ */
+public class DeletionRequest {
+	private final File file;
+	private final boolean moveToRecycleBin;
+	private final int playLengthSec;
+	private final int minPlayDeleteLengthSec;
+	private final int percentPlayedRequired;
+	private final int fullLengthSec;
+	private final int previousFailedAttempts;
+	private final File mainFile;
+	private final boolean evicted;
+	private final DLNAResource resource;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param file the file to delete
+	 * @param moveToRecycleBin true, if the file should be moved to the recycle bin; otherwise it will be permanently deleted
+	 * @param playLengthSec the number of seconds the file has been played
+	 * @param minPlayDeleteLengthSec the minimum number of seconds the file had to be played to be deleted
+	 * @param percentPlayedRequired the percent played required which was configured when the decision was taken
+	 * @param fullLengthSec the full length of the file in seconds
+	 * @param resource the resource of the file in the library of UMS, or null if it isn't known
+	 */
+	public DeletionRequest(File file, boolean moveToRecycleBin, int playLengthSec, int minPlayDeleteLengthSec, int percentPlayedRequired, int fullLengthSec,
+			DLNAResource resource) {
+		this.file = file;
+		this.moveToRecycleBin = moveToRecycleBin;
+		this.playLengthSec = playLengthSec;
+		this.minPlayDeleteLengthSec = minPlayDeleteLengthSec;
+		this.percentPlayedRequired = percentPlayedRequired;
+		this.fullLengthSec = fullLengthSec;
+		this.previousFailedAttempts = 0;
+		this.mainFile = null;
+		this.evicted = false;
+		this.resource = resource;
+	}
+
+	/**
+	 * The Constructor used for deletions which were still pending when UMS stopped. The play information isn't known
+	 * anymore.
+	 *
+	 * @param file the file to delete
+	 * @param moveToRecycleBin true, if the file should be moved to the recycle bin; otherwise it will be permanently deleted
+	 * @param previousFailedAttempts the number of attempts to delete the file which failed before UMS stopped
+	 */
+	public DeletionRequest(File file, boolean moveToRecycleBin, int previousFailedAttempts) {
+		this.file = file;
+		this.moveToRecycleBin = moveToRecycleBin;
+		this.playLengthSec = -1;
+		this.minPlayDeleteLengthSec = -1;
+		this.percentPlayedRequired = -1;
+		this.fullLengthSec = -1;
+		this.previousFailedAttempts = previousFailedAttempts;
+		this.mainFile = null;
+		this.evicted = false;
+		this.resource = null;
+	}
+
+	/**
+	 * The Constructor used for the sidecar files (subtitles, thumbnails, ...) of a deleted file.
+	 *
+	 * @param file the sidecar file to delete
+	 * @param mainRequest the deletion request of the file the sidecar belongs to
+	 */
+	public DeletionRequest(File file, DeletionRequest mainRequest) {
+		this.file = file;
+		this.moveToRecycleBin = mainRequest.isMoveToRecycleBin();
+		this.playLengthSec = mainRequest.getPlayLengthSec();
+		this.minPlayDeleteLengthSec = mainRequest.getMinPlayDeleteLengthSec();
+		this.percentPlayedRequired = mainRequest.getPercentPlayedRequired();
+		this.fullLengthSec = mainRequest.getFullLengthSec();
+		this.previousFailedAttempts = 0;
+		this.mainFile = mainRequest.getFile();
+		this.evicted = false;
+		this.resource = null;
+	}
+
+	/**
+	 * The Constructor used for played files which are deleted because the disk holding them runs low on free space. They
+	 * are always permanently deleted, as moving them to the recycle bin wouldn't free any space.
+	 *
+	 * @param file the file to delete
+	 */
+	public DeletionRequest(File file) {
+		this.file = file;
+		this.moveToRecycleBin = false;
+		this.playLengthSec = -1;
+		this.minPlayDeleteLengthSec = -1;
+		this.percentPlayedRequired = -1;
+		this.fullLengthSec = -1;
+		this.previousFailedAttempts = 0;
+		this.mainFile = null;
+		this.evicted = true;
+		this.resource = null;
+	}
+
+	/**
+	 * Gets the file to delete.
+	 *
+	 * @return the file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Gets a value indicating if the file should be moved to the recycle bin.
+	 *
+	 * @return true, if the file should be moved to the recycle bin
+	 */
+	public boolean isMoveToRecycleBin() {
+		return moveToRecycleBin;
+	}
+
+	/**
+	 * Gets the number of seconds the file has been played.
+	 *
+	 * @return the play length in seconds
+	 */
+	public int getPlayLengthSec() {
+		return playLengthSec;
+	}
+
+	/**
+	 * Gets the minimum number of seconds the file had to be played to be deleted.
+	 *
+	 * @return the min play delete length in seconds
+	 */
+	public int getMinPlayDeleteLengthSec() {
+		return minPlayDeleteLengthSec;
+	}
+
+	/**
+	 * Gets the percent played required which was configured when the decision was taken.
+	 *
+	 * @return the percent played required
+	 */
+	public int getPercentPlayedRequired() {
+		return percentPlayedRequired;
+	}
+
+	/**
+	 * Gets the full length of the file in seconds.
+	 *
+	 * @return the full length in seconds
+	 */
+	public int getFullLengthSec() {
+		return fullLengthSec;
+	}
+
+	/**
+	 * Gets a value indicating if the deletion was still pending when UMS stopped and has been recovered from the
+	 * deletion journal.
+	 *
+	 * @return true, if the deletion has been recovered
+	 */
+	public boolean isRecovered() {
+		return playLengthSec < 0 && mainFile == null && !evicted;
+	}
+
+	/**
+	 * Gets a value indicating if the file is deleted because the disk holding it runs low on free space.
+	 *
+	 * @return true, if the file has been evicted
+	 */
+	public boolean isEvicted() {
+		return evicted;
+	}
+
+	/**
+	 * Gets the file the sidecar file to delete belongs to.
+	 *
+	 * @return the main file, or null if the file to delete isn't a sidecar
+	 */
+	public File getMainFile() {
+		return mainFile;
+	}
+
+	/**
+	 * Gets the number of attempts to delete the file which failed before UMS stopped.
+	 *
+	 * @return the previous failed attempts
+	 */
+	public int getPreviousFailedAttempts() {
+		return previousFailedAttempts;
+	}
+
+	/**
+	 * Gets the resource of the file in the library of UMS.
+	 *
+	 * @return the resource, or null if it isn't known, e.g. for deletions recovered from the deletion journal
+	 */
+	public DLNAResource getResource() {
+		return resource;
+	}
+}
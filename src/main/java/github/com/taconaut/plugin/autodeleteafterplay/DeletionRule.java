@@ -0,0 +1,389 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Compiled rule deciding if the files it matches are kept or deleted, see {@link DeletionRuleSet}.<br>
+ * The conditions of a rule are evaluated cheapest first: the ones only looking at the play event before the ones
+ * looking at the path, before the ones reading the file attributes. Evaluation stops at the first condition which
+ * doesn't match, so the file system is only accessed for files which passed the cheaper conditions.
+ */
+public class DeletionRule {
+
+	/**
+	 * What happens to the files matched by a rule.
+	 */
+	public enum Action {
+
+		/** The files are deleted once they have been played long enough. */
+		DELETE,
+
+		/** The files are never deleted. */
+		KEEP
+	}
+
+	private final Action action;
+	private final int percentPlayedRequired;
+	private final List<Condition> conditions;
+	private final String definition;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param action the action applied to the matched files
+	 * @param percentPlayedRequired the percent played required before a matched file is deleted, or -1 to use the one of the renderer policy
+	 * @param conditions the conditions a file has to match
+	 * @param definition the definition of the rule, as configured
+	 */
+	DeletionRule(Action action, int percentPlayedRequired, List<Condition> conditions, String definition) {
+		this.action = action;
+		this.percentPlayedRequired = percentPlayedRequired;
+		this.definition = definition;
+
+		List<Condition> sortedConditions = new ArrayList<Condition>(conditions);
+		Collections.sort(sortedConditions, new Comparator<Condition>() {
+
+			@Override
+			public int compare(Condition condition1, Condition condition2) {
+				return Integer.compare(condition1.getCost(), condition2.getCost());
+			}
+		});
+		this.conditions = Collections.unmodifiableList(sortedConditions);
+	}
+
+	/**
+	 * Gets the action applied to the matched files.
+	 *
+	 * @return the action
+	 */
+	public Action getAction() {
+		return action;
+	}
+
+	/**
+	 * Gets the percent played required before a matched file is deleted.
+	 *
+	 * @param defaultPercentPlayedRequired the percent played required by the renderer policy
+	 * @return the percent played required
+	 */
+	public int getPercentPlayedRequired(int defaultPercentPlayedRequired) {
+		return percentPlayedRequired < 0 ? defaultPercentPlayedRequired : percentPlayedRequired;
+	}
+
+	/**
+	 * Checks if a file matches all the conditions of the rule.
+	 *
+	 * @param candidate the file
+	 * @return true, if the file matches
+	 */
+	public boolean matches(Candidate candidate) {
+		for (Condition condition : conditions) {
+			if (!condition.matches(candidate)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return definition;
+	}
+
+	/**
+	 * File a rule is evaluated against. The attributes of the file are only read when a condition needs them, and at
+	 * most once for all rules.
+	 */
+	public static class Candidate {
+		private final File file;
+		private final Path resolvedPath;
+		private final MediaType mediaType;
+		private String extension;
+		private BasicFileAttributes attributes;
+		private boolean attributesRead;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param file the played file
+		 * @param resolvedPath the path of the file, as returned by {@link FolderMatcher#resolve(File)}
+		 * @param mediaType the type of the played media
+		 */
+		public Candidate(File file, Path resolvedPath, MediaType mediaType) {
+			this.file = file;
+			this.resolvedPath = resolvedPath;
+			this.mediaType = mediaType;
+		}
+
+		/**
+		 * Gets the lower case extension of the file.
+		 *
+		 * @return the extension, without leading dot
+		 */
+		private String getExtension() {
+			if (extension == null) {
+				String name = file.getName();
+				int dotIndex = name.lastIndexOf('.');
+				extension = dotIndex < 0 ? "" : name.substring(dotIndex + 1).toLowerCase(Locale.ROOT);
+			}
+			return extension;
+		}
+
+		/**
+		 * Gets the attributes of the file.
+		 *
+		 * @return the attributes, or null if they couldn't be read
+		 */
+		private BasicFileAttributes getAttributes() {
+			if (!attributesRead) {
+				attributesRead = true;
+				try {
+					attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+				} catch (IOException ex) {
+					// Conditions on the attributes won't match
+				}
+			}
+			return attributes;
+		}
+	}
+
+	/**
+	 * Condition a file has to match.
+	 */
+	abstract static class Condition {
+
+		/** Cost of a condition only looking at the play event. */
+		static final int COST_EVENT = 0;
+
+		/** Cost of a condition looking at the file name. */
+		static final int COST_NAME = 1;
+
+		/** Cost of a condition looking at the whole path of the file. */
+		static final int COST_PATH = 2;
+
+		/** Cost of a condition reading the attributes of the file. */
+		static final int COST_ATTRIBUTES = 3;
+
+		/**
+		 * Gets the relative cost of evaluating the condition.
+		 *
+		 * @return the cost
+		 */
+		abstract int getCost();
+
+		/**
+		 * Checks if a file matches the condition.
+		 *
+		 * @param candidate the file
+		 * @return true, if the file matches
+		 */
+		abstract boolean matches(Candidate candidate);
+	}
+
+	/**
+	 * Matches files of some media types.
+	 */
+	static class MediaTypeCondition extends Condition {
+		private final Set<MediaType> mediaTypes;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param mediaTypes the matched media types
+		 */
+		MediaTypeCondition(Set<MediaType> mediaTypes) {
+			this.mediaTypes = mediaTypes;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionRule.Condition#getCost()
+		 */
+		@Override
+		int getCost() {
+			return COST_EVENT;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionRule.Condition#matches(github.com.taconaut.plugin.autodeleteafterplay.DeletionRule.Candidate)
+		 */
+		@Override
+		boolean matches(Candidate candidate) {
+			return mediaTypes.contains(candidate.mediaType);
+		}
+	}
+
+	/**
+	 * Matches files with some extensions.
+	 */
+	static class ExtensionCondition extends Condition {
+		private final Set<String> extensions;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param extensions the lower case extensions, without leading dot
+		 */
+		ExtensionCondition(Set<String> extensions) {
+			this.extensions = extensions;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionRule.Condition#getCost()
+		 */
+		@Override
+		int getCost() {
+			return COST_NAME;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionRule.Condition#matches(github.com.taconaut.plugin.autodeleteafterplay.DeletionRule.Candidate)
+		 */
+		@Override
+		boolean matches(Candidate candidate) {
+			return extensions.contains(candidate.getExtension());
+		}
+	}
+
+	/**
+	 * Matches files in a folder or its subfolders.
+	 */
+	static class FolderCondition extends Condition {
+		private final FolderMatcher folderMatcher;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param folderMatcher the matcher of the folder
+		 */
+		FolderCondition(FolderMatcher folderMatcher) {
+			this.folderMatcher = folderMatcher;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionRule.Condition#getCost()
+		 */
+		@Override
+		int getCost() {
+			return COST_PATH;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionRule.Condition#matches(github.com.taconaut.plugin.autodeleteafterplay.DeletionRule.Candidate)
+		 */
+		@Override
+		boolean matches(Candidate candidate) {
+			return folderMatcher.matches(candidate.resolvedPath);
+		}
+	}
+
+	/**
+	 * Matches files whose size is within bounds.
+	 */
+	static class SizeCondition extends Condition {
+		private final long minSize;
+		private final long maxSize;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param minSize the min size in bytes
+		 * @param maxSize the max size in bytes
+		 */
+		SizeCondition(long minSize, long maxSize) {
+			this.minSize = minSize;
+			this.maxSize = maxSize;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionRule.Condition#getCost()
+		 */
+		@Override
+		int getCost() {
+			return COST_ATTRIBUTES;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionRule.Condition#matches(github.com.taconaut.plugin.autodeleteafterplay.DeletionRule.Candidate)
+		 */
+		@Override
+		boolean matches(Candidate candidate) {
+			BasicFileAttributes attributes = candidate.getAttributes();
+			return attributes != null && attributes.size() >= minSize && attributes.size() <= maxSize;
+		}
+	}
+
+	/**
+	 * Matches files whose age, based on their last modification time, is within bounds.
+	 */
+	static class AgeCondition extends Condition {
+		private final long minAgeMillis;
+		private final long maxAgeMillis;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param minAgeMillis the min age in milliseconds
+		 * @param maxAgeMillis the max age in milliseconds
+		 */
+		AgeCondition(long minAgeMillis, long maxAgeMillis) {
+			this.minAgeMillis = minAgeMillis;
+			this.maxAgeMillis = maxAgeMillis;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionRule.Condition#getCost()
+		 */
+		@Override
+		int getCost() {
+			return COST_ATTRIBUTES;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionRule.Condition#matches(github.com.taconaut.plugin.autodeleteafterplay.DeletionRule.Candidate)
+		 */
+		@Override
+		boolean matches(Candidate candidate) {
+			BasicFileAttributes attributes = candidate.getAttributes();
+			if (attributes == null) {
+				return false;
+			}
+			long ageMillis = System.currentTimeMillis() - attributes.lastModifiedTime().toMillis();
+			return ageMillis >= minAgeMillis && ageMillis <= maxAgeMillis;
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ordered list of {@link DeletionRule}s compiled from the configuration.<br>
+ * Rules are separated by a semicolon. Each rule is made of an action, <code>delete</code> or <code>keep</code>,
+ * followed by conditions separated by {@value #SEPARATOR}, e.g.
+ * <code>keep|extension=mkv|folder=/archive;delete|extension=ts|minSize=2G|percentPlayed=90</code>. The first rule
+ * matching a played file decides if it is kept, or deleted once played for the rule's <code>percentPlayed</code>.
+ * Rules only apply to the files deleted by the renderer policy and the auto delete folders, they can't delete files
+ * outside of them. Files which match no rule are handled as usual.<br>
+ * A rule with an invalid condition is ignored as a whole, as ignoring only the condition would make the rule match
+ * more files than intended.
+ */
+public class DeletionRuleSet {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DeletionRuleSet.class);
+
+	/** Separates the action of a rule from its conditions, and the conditions from each other. */
+	public static final String SEPARATOR = "|";
+
+	private static final long MILLIS_PER_HOUR = 3600000L;
+
+	private final List<DeletionRule> rules;
+
+	/** Lowest percent played required by a delete rule, or -1 if no delete rule sets its own. */
+	private final int minRulePercentPlayedRequired;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param definition the rules, as configured
+	 */
+	public DeletionRuleSet(String definition) {
+		List<DeletionRule> parsedRules = new ArrayList<DeletionRule>();
+		int minPercentPlayedRequired = Integer.MAX_VALUE;
+		for (String ruleDefinition : definition.split(";")) {
+			if (ruleDefinition.trim().isEmpty()) {
+				continue;
+			}
+			try {
+				DeletionRule rule = parse(ruleDefinition.trim());
+				parsedRules.add(rule);
+				if (rule.getAction() == DeletionRule.Action.DELETE) {
+					int percentPlayedRequired = rule.getPercentPlayedRequired(Integer.MAX_VALUE);
+					minPercentPlayedRequired = Math.min(minPercentPlayedRequired, percentPlayedRequired);
+				}
+			} catch (IllegalArgumentException ex) {
+				LOGGER.warn(String.format("The deletion rule '%s' will be ignored: %s", ruleDefinition.trim(), ex.getMessage()));
+			}
+		}
+		rules = Collections.unmodifiableList(parsedRules);
+		minRulePercentPlayedRequired = minPercentPlayedRequired == Integer.MAX_VALUE ? -1 : minPercentPlayedRequired;
+	}
+
+	/**
+	 * Gets a value indicating if no rules have been configured.
+	 *
+	 * @return true, if there are no rules
+	 */
+	public boolean isEmpty() {
+		return rules.isEmpty();
+	}
+
+	/**
+	 * Gets the lowest percent played required for a file to be deleted, by the rules or the renderer policy. A file
+	 * played less can be rejected without evaluating the rules.
+	 *
+	 * @param policyPercentPlayedRequired the percent played required by the renderer policy
+	 * @return the lowest percent played required
+	 */
+	public int getMinPercentPlayedRequired(int policyPercentPlayedRequired) {
+		// Files matching no rule and delete rules without their own percent played use the one of the policy
+		return minRulePercentPlayedRequired < 0 ? policyPercentPlayedRequired : Math.min(minRulePercentPlayedRequired, policyPercentPlayedRequired);
+	}
+
+	/**
+	 * Gets the first rule matching a file.
+	 *
+	 * @param candidate the file
+	 * @return the rule, or null if no rule matches
+	 */
+	public DeletionRule findRule(DeletionRule.Candidate candidate) {
+		for (DeletionRule rule : rules) {
+			if (rule.matches(candidate)) {
+				return rule;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Parses a rule.
+	 *
+	 * @param definition the definition of the rule
+	 * @return the rule
+	 * @throws IllegalArgumentException Signals that the rule is invalid.
+	 */
+	private static DeletionRule parse(String definition) {
+		String[] parts = definition.split("\\" + SEPARATOR);
+		DeletionRule.Action action;
+		try {
+			action = DeletionRule.Action.valueOf(parts[0].trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException ex) {
+			throw new IllegalArgumentException(String.format("'%s' is not an action, use delete or keep", parts[0].trim()));
+		}
+
+		List<DeletionRule.Condition> conditions = new ArrayList<DeletionRule.Condition>();
+		int percentPlayedRequired = -1;
+		long minSize = 0;
+		long maxSize = Long.MAX_VALUE;
+		long minAgeMillis = 0;
+		long maxAgeMillis = Long.MAX_VALUE;
+		for (int i = 1; i < parts.length; i++) {
+			int equalsIndex = parts[i].indexOf('=');
+			if (equalsIndex < 0) {
+				throw new IllegalArgumentException(String.format("the condition '%s' is not of the form key=value", parts[i].trim()));
+			}
+			String key = parts[i].substring(0, equalsIndex).trim();
+			String value = parts[i].substring(equalsIndex + 1).trim();
+			if ("extension".equals(key)) {
+				conditions.add(new DeletionRule.ExtensionCondition(parseExtensions(value)));
+			} else if ("mediaType".equals(key)) {
+				conditions.add(new DeletionRule.MediaTypeCondition(parseMediaTypes(value)));
+			} else if ("folder".equals(key)) {
+				conditions.add(new DeletionRule.FolderCondition(new FolderMatcher(new String[] { value })));
+			} else if ("minSize".equals(key)) {
+				minSize = parseSize(key, value);
+			} else if ("maxSize".equals(key)) {
+				maxSize = parseSize(key, value);
+			} else if ("minAgeHours".equals(key)) {
+				minAgeMillis = parseInt(key, value) * MILLIS_PER_HOUR;
+			} else if ("maxAgeHours".equals(key)) {
+				maxAgeMillis = parseInt(key, value) * MILLIS_PER_HOUR;
+			} else if ("percentPlayed".equals(key)) {
+				if (action == DeletionRule.Action.KEEP) {
+					throw new IllegalArgumentException("percentPlayed can't be set for a keep rule");
+				}
+				percentPlayedRequired = parseInt(key, value);
+				if (percentPlayedRequired > 100) {
+					throw new IllegalArgumentException(String.format("'%s' is not a valid value for %s, use 0 to 100", value, key));
+				}
+			} else {
+				throw new IllegalArgumentException(String.format("'%s' is not a condition", key));
+			}
+		}
+
+		if (minSize > 0 || maxSize < Long.MAX_VALUE) {
+			conditions.add(new DeletionRule.SizeCondition(minSize, maxSize));
+		}
+		if (minAgeMillis > 0 || maxAgeMillis < Long.MAX_VALUE) {
+			conditions.add(new DeletionRule.AgeCondition(minAgeMillis, maxAgeMillis));
+		}
+		return new DeletionRule(action, percentPlayedRequired, conditions, definition);
+	}
+
+	/**
+	 * Parses a list of file extensions separated by a comma.
+	 *
+	 * @param value the extensions
+	 * @return the lower case extensions, without leading dot
+	 */
+	private static Set<String> parseExtensions(String value) {
+		Set<String> extensions = new HashSet<String>();
+		for (String extension : value.split(",")) {
+			String parsedExtension = extension.trim().toLowerCase(Locale.ROOT);
+			if (parsedExtension.startsWith(".")) {
+				parsedExtension = parsedExtension.substring(1);
+			}
+			if (!parsedExtension.isEmpty()) {
+				extensions.add(parsedExtension);
+			}
+		}
+		if (extensions.isEmpty()) {
+			throw new IllegalArgumentException("no extension has been set");
+		}
+		return extensions;
+	}
+
+	/**
+	 * Parses a list of media types separated by a comma.
+	 *
+	 * @param value the media types
+	 * @return the media types
+	 */
+	private static Set<MediaType> parseMediaTypes(String value) {
+		Set<MediaType> mediaTypes = EnumSet.noneOf(MediaType.class);
+		for (String mediaType : value.split(",")) {
+			try {
+				mediaTypes.add(MediaType.valueOf(mediaType.trim().toUpperCase(Locale.ROOT)));
+			} catch (IllegalArgumentException ex) {
+				throw new IllegalArgumentException(String.format("'%s' is not a media type, use video, audio, image or other", mediaType.trim()));
+			}
+		}
+		return mediaTypes;
+	}
+
+	/**
+	 * Parses a size, see {@link FolderMatcher#parseSize(String)}.
+	 *
+	 * @param key the key of the condition
+	 * @param value the size
+	 * @return the size in bytes
+	 */
+	private static long parseSize(String key, String value) {
+		long size = FolderMatcher.parseSize(value);
+		if (size < 0) {
+			throw new IllegalArgumentException(String.format("'%s' is not a valid size for %s", value, key));
+		}
+		return size;
+	}
+
+	/**
+	 * Parses a positive integer.
+	 *
+	 * @param key the key of the condition
+	 * @param value the integer
+	 * @return the integer
+	 */
+	private static int parseInt(String key, String value) {
+		try {
+			int parsedValue = Integer.parseInt(value);
+			if (parsedValue >= 0) {
+				return parsedValue;
+			}
+		} catch (NumberFormatException ex) {
+			// Reported below
+		}
+		throw new IllegalArgumentException(String.format("'%s' is not a valid value for %s", value, key));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return rules.toString();
+	}
+}
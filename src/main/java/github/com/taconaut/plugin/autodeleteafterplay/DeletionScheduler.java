@@ -0,0 +1,362 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delays deletions by a grace period before handing them to the {@link DeletionEngine}.<br>
+ * A pending deletion is cancelled when the file is played again before the grace period has elapsed. Deletions which
+ * are due are grouped by directory, so that the files of a directory are deleted in one batch.<br>
+ * Depending on the {@link DeletionDeferral}, deletions can also be held back while files are being played, or until
+ * the deletion window opens, so that deleting large files doesn't slow down the streams reading from the same disks.
+ * Idle periods are detected from the play sessions, without polling the disks. A deletion is never held back longer
+ * than the max deletion delay, e.g. when a session has been left open by a renderer which disappeared.<br>
+ * Pending deletions are recorded in the {@link DeletionJournal} with their due time and deadline, and restored when
+ * UMS starts again, so that they are neither lost nor rushed by a restart.
+ */
+public class DeletionScheduler {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DeletionScheduler.class);
+
+	/** Interval at which due deletions are looked for. */
+	private static final long TICK_INTERVAL_MILLIS = 1000;
+
+	private static final long MILLIS_PER_HOUR = 3600000L;
+
+	private final PluginConfiguration pluginConfiguration;
+	private final DeletionEngine deletionEngine;
+	private final DeletionJournal journal;
+	private final PlaySessionTable playSessions;
+	private final ScheduledThreadPoolExecutor ticker;
+
+	/** Submits the due deletions, when the last play session ends. */
+	private final Runnable submitDueDeletionsTask = new Runnable() {
+
+		@Override
+		public void run() {
+			submitDueDeletions();
+		}
+	};
+
+	/** Pending deletions by absolute file path. */
+	private final ConcurrentMap<String, PendingDeletion> pendingDeletions = new ConcurrentHashMap<String, PendingDeletion>();
+
+	/**
+	 * Lock held while a batch is handed to the deletion engine, so that a cancelled deletion can't be submitted. The
+	 * deletions of a batch are only removed once the engine accepted them.
+	 */
+	private final Object submitLock = new Object();
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param pluginConfiguration the plugin configuration
+	 * @param deletionEngine the engine deleting the files once their grace period has elapsed
+	 * @param journal the journal recording the pending deletions
+	 * @param playSessions the play sessions, to hold back deletions while files are being played
+	 */
+	public DeletionScheduler(PluginConfiguration pluginConfiguration, DeletionEngine deletionEngine, DeletionJournal journal, PlaySessionTable playSessions) {
+		this.pluginConfiguration = pluginConfiguration;
+		this.deletionEngine = deletionEngine;
+		this.journal = journal;
+		this.playSessions = playSessions;
+
+		ticker = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("AutoDeleteFileAfterPlay-scheduler"));
+		ticker.scheduleWithFixedDelay(submitDueDeletionsTask, TICK_INTERVAL_MILLIS, TICK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Schedules the deletion of a file.
+	 *
+	 * @param request the deletion request
+	 * @param gracePeriodMillis the time to wait before deleting the file. If 0, the file is deleted right away.
+	 */
+	public void schedule(DeletionRequest request, long gracePeriodMillis) {
+		ConfigurationSnapshot configuration = pluginConfiguration.getSnapshot();
+		long now = System.currentTimeMillis();
+		String releaseReason = getReleaseReason(configuration, now);
+		if (gracePeriodMillis <= 0 && releaseReason != null) {
+			deletionEngine.submit(request);
+			return;
+		}
+
+		long dueTimeMillis = now + gracePeriodMillis;
+		long deadlineMillis = dueTimeMillis + configuration.getMaxDeletionDelayHours() * MILLIS_PER_HOUR;
+		pendingDeletions.put(request.getFile().getAbsolutePath(), new PendingDeletion(request, dueTimeMillis, deadlineMillis));
+		journal.recordHeld(request, dueTimeMillis, deadlineMillis);
+		if (releaseReason == null) {
+			LOGGER.debug(String.format("The file '%s' will be deleted %s, at the latest in %s hours, unless it is being played again",
+					request.getFile().getAbsolutePath(), getDeferralDescription(configuration), configuration.getMaxDeletionDelayHours()));
+		} else {
+			LOGGER.debug(String.format("The file '%s' will be deleted in %s seconds unless it is being played again", request.getFile().getAbsolutePath(),
+					gracePeriodMillis / 1000));
+		}
+	}
+
+	/**
+	 * Restores a deletion which was still pending when UMS stopped. It is held back until the same time as before.
+	 *
+	 * @param request the deletion request
+	 * @param dueTimeMillis the time from which the file may be deleted
+	 * @param deadlineMillis the time after which the deletion isn't held back anymore
+	 */
+	public void restore(DeletionRequest request, long dueTimeMillis, long deadlineMillis) {
+		pendingDeletions.put(request.getFile().getAbsolutePath(), new PendingDeletion(request, dueTimeMillis, deadlineMillis));
+	}
+
+	/**
+	 * Signals that a play session ended. If deletions are held back while files are being played and this was the last
+	 * session, the held back deletions are handed to the deletion engine right away rather than on the next tick.
+	 */
+	public void sessionEnded() {
+		if (pendingDeletions.isEmpty() || !playSessions.isEmpty() || !pluginConfiguration.getSnapshot().getDeletionDeferral().isReleasedWhenIdle()) {
+			return;
+		}
+
+		try {
+			ticker.execute(submitDueDeletionsTask);
+		} catch (RejectedExecutionException ex) {
+			// The scheduler is shutting down, the pending deletions are kept in the journal
+		}
+	}
+
+	/**
+	 * Cancels the pending deletion of a file.
+	 *
+	 * @param file the file
+	 * @return true, if a pending deletion has been cancelled
+	 */
+	public boolean cancel(File file) {
+		if (pendingDeletions.isEmpty()) {
+			return false;
+		}
+
+		PendingDeletion pendingDeletion;
+		synchronized (submitLock) {
+			pendingDeletion = pendingDeletions.remove(file.getAbsolutePath());
+		}
+		if (pendingDeletion != null) {
+			journal.recordDone(pendingDeletion.request);
+			LOGGER.info(String.format("Cancelled the deletion of file '%s' because it is being played again", file.getAbsolutePath()));
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the number of deletions waiting for their grace period to elapse.
+	 *
+	 * @return the number of pending deletions
+	 */
+	public int getPendingCount() {
+		return pendingDeletions.size();
+	}
+
+	/**
+	 * Stops the scheduler. Deletions which are still waiting for their grace period or held back stay in the journal,
+	 * and are restored when UMS starts again.
+	 */
+	public void shutdown() {
+		ticker.shutdownNow();
+		try {
+			ticker.awaitTermination(TICK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		if (!pendingDeletions.isEmpty()) {
+			LOGGER.info(String.format("%s deletions are still pending and will be resumed when UMS starts again", pendingDeletions.size()));
+		}
+	}
+
+	/**
+	 * Hands the due deletions to the deletion engine, one batch per directory. A deletion is due once its grace period
+	 * has elapsed and it isn't held back anymore.<br>
+	 * Batches which don't fit in the queue of the deletion engine, or which it rejected, stay pending until the next
+	 * tick, so that releasing many held back deletions at once doesn't get them lost until UMS restarts.
+	 */
+	private void submitDueDeletions() {
+		if (pendingDeletions.isEmpty()) {
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		ConfigurationSnapshot configuration = pluginConfiguration.getSnapshot();
+		String releaseReason = getReleaseReason(configuration, now);
+		int overdueCount = 0;
+		// Sorted by directory, so that the batches of neighbouring directories are submitted one after the other
+		Map<String, List<PendingDeletion>> dueDeletionsByDirectory = new TreeMap<String, List<PendingDeletion>>();
+		for (PendingDeletion pendingDeletion : pendingDeletions.values()) {
+			if (pendingDeletion.dueTimeMillis > now) {
+				continue;
+			}
+			boolean overdue = pendingDeletion.deadlineMillis <= now;
+			if (releaseReason == null && !overdue) {
+				continue;
+			}
+			if (releaseReason == null) {
+				overdueCount++;
+			}
+			String directory = pendingDeletion.request.getFile().getParent();
+			List<PendingDeletion> dueDeletions = dueDeletionsByDirectory.get(directory);
+			if (dueDeletions == null) {
+				dueDeletions = new ArrayList<PendingDeletion>();
+				dueDeletionsByDirectory.put(directory, dueDeletions);
+			}
+			dueDeletions.add(pendingDeletion);
+		}
+
+		if (overdueCount > 0) {
+			LOGGER.info(String.format("Deleting %s files which have been held back for more than %s hours", overdueCount,
+					configuration.getMaxDeletionDelayHours()));
+		} else if (configuration.getDeletionDeferral() != DeletionDeferral.NONE && !dueDeletionsByDirectory.isEmpty()) {
+			LOGGER.debug(String.format("Releasing the deletions held back in %s folders because %s", dueDeletionsByDirectory.size(), releaseReason));
+		}
+
+		int remainingCapacity = deletionEngine.getRemainingCapacity();
+		for (List<PendingDeletion> dueDeletions : dueDeletionsByDirectory.values()) {
+			if (remainingCapacity <= 0) {
+				// The remaining deletions stay pending until the next tick
+				break;
+			}
+			submit(dueDeletions);
+			remainingCapacity--;
+		}
+	}
+
+	/**
+	 * Hands a batch of due deletions to the deletion engine. The deletions which have been cancelled or scheduled
+	 * again in the meantime are left out, and the batch stays pending if the engine rejects it.
+	 *
+	 * @param dueDeletions the due deletions of a directory
+	 */
+	private void submit(List<PendingDeletion> dueDeletions) {
+		synchronized (submitLock) {
+			Iterator<PendingDeletion> iterator = dueDeletions.iterator();
+			while (iterator.hasNext()) {
+				PendingDeletion dueDeletion = iterator.next();
+				if (pendingDeletions.get(dueDeletion.request.getFile().getAbsolutePath()) != dueDeletion) {
+					iterator.remove();
+				}
+			}
+			if (dueDeletions.isEmpty()) {
+				return;
+			}
+
+			if (deletionEngine.submit(toSortedRequests(dueDeletions))) {
+				for (PendingDeletion dueDeletion : dueDeletions) {
+					pendingDeletions.remove(dueDeletion.request.getFile().getAbsolutePath(), dueDeletion);
+				}
+			} else {
+				// The engine recorded the deletions as queued, they are still held back until the next tick
+				for (PendingDeletion dueDeletion : dueDeletions) {
+					journal.recordHeld(dueDeletion.request, dueDeletion.dueTimeMillis, dueDeletion.deadlineMillis);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the reason why deletions aren't held back at a given time.
+	 *
+	 * @param configuration the configuration
+	 * @param now the current time
+	 * @return the reason, or null if deletions are held back
+	 */
+	private String getReleaseReason(ConfigurationSnapshot configuration, long now) {
+		DeletionDeferral deferral = configuration.getDeletionDeferral();
+		MaintenanceWindow window = configuration.getMaintenanceWindow();
+		if (deferral == DeletionDeferral.NONE) {
+			return "they aren't held back";
+		}
+		if (deferral.isReleasedWhenIdle() && playSessions.isEmpty()) {
+			return "no file is being played";
+		}
+		if (deferral.isReleasedInWindow()) {
+			if (window == null) {
+				// Without a valid window, holding back until the max deletion delay would be surprising
+				return deferral.isReleasedWhenIdle() ? null : "no deletion window has been configured";
+			}
+			if (window.isOpen(now)) {
+				return String.format("the deletion window %s is open", window);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Describes until when deletions are held back, for logging.
+	 *
+	 * @param configuration the configuration
+	 * @return the description
+	 */
+	private static String getDeferralDescription(ConfigurationSnapshot configuration) {
+		if (configuration.getMaintenanceWindow() == null) {
+			return "once no file is being played";
+		}
+		switch (configuration.getDeletionDeferral()) {
+		case UNTIL_IDLE:
+			return "once no file is being played";
+		case UNTIL_WINDOW:
+			return String.format("during the deletion window %s", configuration.getMaintenanceWindow());
+		default:
+			return String.format("once no file is being played or during the deletion window %s", configuration.getMaintenanceWindow());
+		}
+	}
+
+	/**
+	 * Gets the requests of pending deletions, sorted by file name so that the entries of a directory are removed in
+	 * order.
+	 *
+	 * @param pendingDeletions the pending deletions of a directory
+	 * @return the deletion requests
+	 */
+	private static List<DeletionRequest> toSortedRequests(List<PendingDeletion> pendingDeletions) {
+		Collections.sort(pendingDeletions, new Comparator<PendingDeletion>() {
+
+			@Override
+			public int compare(PendingDeletion deletion1, PendingDeletion deletion2) {
+				return deletion1.request.getFile().getName().compareTo(deletion2.request.getFile().getName());
+			}
+		});
+		List<DeletionRequest> requests = new ArrayList<DeletionRequest>(pendingDeletions.size());
+		for (PendingDeletion pendingDeletion : pendingDeletions) {
+			requests.add(pendingDeletion.request);
+		}
+		return requests;
+	}
+
+	/**
+	 * A deletion waiting for its grace period to elapse, or held back.
+	 */
+	private static class PendingDeletion {
+		private final DeletionRequest request;
+		private final long dueTimeMillis;
+		private final long deadlineMillis;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param request the deletion request
+		 * @param dueTimeMillis the time at which the file should be deleted
+		 * @param deadlineMillis the time after which the deletion isn't held back anymore
+		 */
+		public PendingDeletion(DeletionRequest request, long dueTimeMillis, long deadlineMillis) {
+			this.request = request;
+			this.dueTimeMillis = dueTimeMillis;
+			this.deadlineMillis = deadlineMillis;
+		}
+	}
+}
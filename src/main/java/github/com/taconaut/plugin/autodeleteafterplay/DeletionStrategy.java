@@ -0,0 +1,40 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A way of removing a file. Implementations have to be thread safe, as they are shared by all deletion workers.
+ */
+public interface DeletionStrategy {
+
+	/**
+	 * Gets the name of the strategy, as used in the logs and metrics.
+	 *
+	 * @return the name
+	 */
+	String getName();
+
+	/**
+	 * Gets a value indicating if the files removed by this strategy can be recovered, e.g. from the recycle bin.
+	 *
+	 * @return true, if the files can be recovered
+	 */
+	boolean isRecoverable();
+
+	/**
+	 * Gets a value indicating if this strategy destroys the content of the file before unlinking it, e.g. by truncating
+	 * or overwriting it. Unlike an unlinked file, such a file can't be read anymore by a renderer still playing it.
+	 *
+	 * @return true, if the content of the file is destroyed
+	 */
+	boolean isContentDestroyed();
+
+	/**
+	 * Removes a file. The method only returns once the file has been removed.
+	 *
+	 * @param file the file to remove
+	 * @throws IOException Signals that the file could not be removed.
+	 */
+	void delete(File file) throws IOException;
+}
@@ -0,0 +1,181 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.jna.platform.FileUtils;
+
+/**
+ * Picks the strategy used to delete a file.<br>
+ * When secure erase has been enabled, all files are overwritten by the {@link SecureEraseDeletionStrategy}, even the
+ * ones which should have been moved to the recycle bin, where they could be recovered. Otherwise files to move to the
+ * recycle bin are trashed when the operating system supports it, with JNA on Windows and OS X and as defined by the
+ * freedesktop.org specification on the other Unixes. Otherwise the configured strategy is used; in
+ * {@link DeletionStrategyType#AUTO} mode it depends on the type of the {@link FileStore} holding the file. Files above
+ * the throttle threshold are deleted by the {@link ThrottledTruncateDeletionStrategy} when throttling has been enabled.
+ * As looking up the file store is costly (it reads the mount table on Linux), the choice is cached per directory.
+ */
+public class DeletionStrategySelector {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DeletionStrategySelector.class);
+
+	/** Maximum number of directories whose strategy is cached. */
+	private static final int MAX_CACHED_DIRECTORIES = 1000;
+
+	private static final long BYTES_PER_MB = 1024 * 1024;
+
+	/** Network file systems, on which a file still being streamed can't be deleted right away. */
+	private static final Set<String> NETWORK_FILE_STORE_TYPES = new HashSet<String>(Arrays.asList("nfs", "nfs4", "cifs", "smb", "smb2", "smb3",
+			"smbfs", "afpfs", "webdav", "davfs", "fuse.sshfs", "9p"));
+
+	/** File systems which free the blocks of large files slowly. */
+	private static final Set<String> SLOW_UNLINK_FILE_STORE_TYPES = new HashSet<String>(Arrays.asList("ext2", "ext3"));
+
+	private final PluginConfiguration configuration;
+	private final DeletionStrategy trashStrategy;
+	private final DeletionStrategy nioStrategy = new NioDeletionStrategy();
+	private final DeletionStrategy stagingStrategy = new StagingDeletionStrategy();
+	private final DeletionStrategy truncateStrategy = new TruncateDeletionStrategy();
+	private final DeletionStrategy throttledTruncateStrategy;
+	private final DeletionStrategy secureEraseStrategy;
+
+	/** Strategies picked in AUTO mode by directory path, least recently used first. */
+	private final Map<String, DeletionStrategy> strategiesByDirectory = new LinkedHashMap<String, DeletionStrategy>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, DeletionStrategy> eldest) {
+			return size() > MAX_CACHED_DIRECTORIES;
+		}
+	};
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param configuration the configuration holding the deletion strategy
+	 * @param fileUtils the JNA file utilities used to move files to the recycle bin
+	 */
+	public DeletionStrategySelector(PluginConfiguration configuration, FileUtils fileUtils) {
+		this.configuration = configuration;
+		this.trashStrategy = createTrashStrategy(fileUtils);
+		this.throttledTruncateStrategy = new ThrottledTruncateDeletionStrategy(configuration);
+		this.secureEraseStrategy = new SecureEraseDeletionStrategy(configuration);
+	}
+
+	/**
+	 * Creates the strategy used to move files to the recycle bin.
+	 *
+	 * @param fileUtils the JNA file utilities
+	 * @return the trash strategy, or null if the platform has no recycle bin
+	 */
+	private static DeletionStrategy createTrashStrategy(FileUtils fileUtils) {
+		if (fileUtils.hasTrash()) {
+			return new JnaTrashDeletionStrategy(fileUtils);
+		}
+
+		if (FreedesktopTrashDeletionStrategy.isSupported()) {
+			try {
+				return new FreedesktopTrashDeletionStrategy();
+			} catch (IOException | RuntimeException ex) {
+				LOGGER.warn("The freedesktop.org trash can't be used, files will be permanently deleted", ex);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets a value indicating if files can be moved to the recycle bin on this platform.
+	 *
+	 * @return true, if files can be moved to the recycle bin
+	 */
+	public boolean canMoveToRecycleBin() {
+		return trashStrategy != null;
+	}
+
+	/**
+	 * Gets the strategy to use to delete a file.
+	 *
+	 * @param request the deletion request
+	 * @return the deletion strategy
+	 */
+	public DeletionStrategy select(DeletionRequest request) {
+		if (!request.getFile().exists() && StagingDeletionStrategy.getStagedFile(request.getFile()).exists()) {
+			// Staged by a previous attempt which failed to delete it
+			return stagingStrategy;
+		}
+
+		ConfigurationSnapshot snapshot = configuration.getSnapshot();
+		if (snapshot.isSecureErase()) {
+			return secureEraseStrategy;
+		}
+
+		if (request.isMoveToRecycleBin() && trashStrategy != null) {
+			return trashStrategy;
+		}
+
+		if (snapshot.isThrottleLargeDeletions() && request.getFile().length() >= snapshot.getThrottleThresholdMB() * BYTES_PER_MB) {
+			return throttledTruncateStrategy;
+		}
+
+		switch (snapshot.getDeletionStrategy()) {
+		case NIO:
+			return nioStrategy;
+		case STAGING:
+			return stagingStrategy;
+		case TRUNCATE:
+			return truncateStrategy;
+		default:
+			return selectForFileStore(request.getFile());
+		}
+	}
+
+	/**
+	 * Gets the cheapest strategy for the file store holding a file.
+	 *
+	 * @param file the file
+	 * @return the deletion strategy
+	 */
+	private DeletionStrategy selectForFileStore(File file) {
+		String directory = file.getParent();
+		synchronized (strategiesByDirectory) {
+			DeletionStrategy strategy = strategiesByDirectory.get(directory);
+			if (strategy != null) {
+				return strategy;
+			}
+		}
+
+		FileStore fileStore;
+		try {
+			fileStore = Files.getFileStore(file.toPath());
+		} catch (IOException ex) {
+			LOGGER.debug(String.format("Failed to get the file store of '%s', it will be deleted with the default strategy: %s", file, ex));
+			return nioStrategy;
+		}
+
+		String type = fileStore.type().toLowerCase(Locale.ROOT);
+		DeletionStrategy strategy;
+		if (NETWORK_FILE_STORE_TYPES.contains(type)) {
+			strategy = stagingStrategy;
+		} else if (SLOW_UNLINK_FILE_STORE_TYPES.contains(type)) {
+			strategy = truncateStrategy;
+		} else {
+			strategy = nioStrategy;
+		}
+		LOGGER.debug(String.format("Files in '%s' (%s file system) will be deleted with the %s strategy", directory, type, strategy.getName()));
+
+		synchronized (strategiesByDirectory) {
+			strategiesByDirectory.put(directory, strategy);
+		}
+		return strategy;
+	}
+}
@@ -0,0 +1,19 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+/**
+ * Strategies which can be configured to permanently delete files.
+ */
+public enum DeletionStrategyType {
+
+	/** Picks the cheapest strategy for the file system of each file. */
+	AUTO,
+
+	/** Deletes files with {@link java.nio.file.Files#delete(java.nio.file.Path)}, see {@link NioDeletionStrategy}. */
+	NIO,
+
+	/** Renames files into a staging directory before deleting them, see {@link StagingDeletionStrategy}. */
+	STAGING,
+
+	/** Truncates files before unlinking them, see {@link TruncateDeletionStrategy}. */
+	TRUNCATE
+}
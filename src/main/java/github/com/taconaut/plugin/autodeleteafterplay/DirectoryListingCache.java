@@ -0,0 +1,112 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Short-lived cache of directory listings, so that deleting several files of the same directory in a row only reads
+ * the directory once. Listings expire after a few seconds, as other programs may add files in the meantime.
+ */
+public class DirectoryListingCache {
+
+	/** Time after which a listing is read again. */
+	private static final long TIME_TO_LIVE_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+	/** Maximum number of cached listings. */
+	private static final int MAX_LISTINGS = 64;
+
+	/** Listings by directory, least recently read first. */
+	private final LinkedHashMap<Path, Listing> listings = new LinkedHashMap<Path, Listing>();
+
+	/**
+	 * Gets the names of the files of a directory, reading the directory with a single {@link DirectoryStream} if its
+	 * listing isn't cached.
+	 *
+	 * @param directory the directory
+	 * @return a copy of the file names
+	 * @throws IOException Signals that the directory can't be read.
+	 */
+	public List<String> getFileNames(Path directory) throws IOException {
+		long now = System.nanoTime();
+		synchronized (this) {
+			evictExpired(now);
+			Listing listing = listings.get(directory);
+			if (listing != null) {
+				return new ArrayList<String>(listing.fileNames);
+			}
+		}
+
+		List<String> fileNames = new ArrayList<String>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for (Path path : stream) {
+				fileNames.add(path.getFileName().toString());
+			}
+		}
+
+		synchronized (this) {
+			listings.remove(directory);
+			listings.put(directory, new Listing(fileNames, now));
+			if (listings.size() > MAX_LISTINGS) {
+				Iterator<Listing> iterator = listings.values().iterator();
+				iterator.next();
+				iterator.remove();
+			}
+		}
+		return new ArrayList<String>(fileNames);
+	}
+
+	/**
+	 * Removes a file from the cached listing of its directory, e.g. once it has been deleted or is going to be.
+	 *
+	 * @param file the file
+	 */
+	public synchronized void remove(Path file) {
+		Listing listing = listings.get(file.getParent());
+		if (listing != null) {
+			listing.fileNames.remove(file.getFileName().toString());
+		}
+	}
+
+	/**
+	 * Removes the listings which have expired. Has to be called while holding the lock on this instance.
+	 *
+	 * @param now the current {@link System#nanoTime()}
+	 */
+	private void evictExpired(long now) {
+		Iterator<Listing> iterator = listings.values().iterator();
+		while (iterator.hasNext()) {
+			if (now - iterator.next().readTimeNanos < TIME_TO_LIVE_NANOS) {
+				// The following listings have been read more recently
+				break;
+			}
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * The file names of a directory.
+	 */
+	private static class Listing {
+		private final List<String> fileNames;
+		private final long readTimeNanos;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param fileNames the file names
+		 * @param readTimeNanos the {@link System#nanoTime()} at which the directory has been read
+		 */
+		public Listing(List<String> fileNames, long readTimeNanos) {
+			this.fileNames = fileNames;
+			this.readTimeNanos = readTimeNanos;
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removes the folders emptied by deletions, e.g. season folders once their last episode has been deleted.<br>
+ * The folders of the deleted files are collected for a short while and pruned in a single pass, deepest first, so
+ * that a folder whose subfolders have all been removed is removed as well. Folders are never removed above the auto
+ * delete folder containing the file, nor is the auto delete folder itself.
+ */
+public class EmptyFolderPruner implements DeletionListener {
+	private static final Logger LOGGER = LoggerFactory.getLogger(EmptyFolderPruner.class);
+
+	/** Time during which the folders of deleted files are collected before being pruned. */
+	private static final long PRUNE_DELAY_MILLIS = 10000;
+
+	private final PluginConfiguration configuration;
+	private final ScheduledThreadPoolExecutor pruner;
+
+	/** Folders to prune, with the auto delete folder they are part of. */
+	private final ConcurrentMap<Path, Path> pendingFolders = new ConcurrentHashMap<Path, Path>();
+	private final AtomicBoolean pruneScheduled = new AtomicBoolean();
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param configuration the configuration defining if and under which folders empty folders are removed
+	 */
+	public EmptyFolderPruner(PluginConfiguration configuration) {
+		this.configuration = configuration;
+		pruner = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("AutoDeleteFileAfterPlay-pruner"));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionListener#fileDeleted(github.com.taconaut.plugin.autodeleteafterplay.DeletionRequest)
+	 */
+	@Override
+	public void fileDeleted(DeletionRequest request) {
+		ConfigurationSnapshot snapshot = configuration.getSnapshot();
+		if (!snapshot.isPruneEmptyFolders()) {
+			return;
+		}
+
+		Path root = snapshot.getAutoDeleteFolderMatcher().findRoot(request.getFile());
+		if (root == null) {
+			// Without an auto delete folder, there is no limit up to which folders could be removed
+			return;
+		}
+
+		Path folder;
+		try {
+			folder = request.getFile().toPath().toAbsolutePath().getParent().toRealPath();
+		} catch (IOException ex) {
+			// Already removed
+			return;
+		}
+		if (folder.equals(root) || !folder.startsWith(root)) {
+			return;
+		}
+
+		pendingFolders.put(folder, root);
+		if (pruneScheduled.compareAndSet(false, true)) {
+			try {
+				pruner.schedule(new Runnable() {
+
+					@Override
+					public void run() {
+						pruneScheduled.set(false);
+						prune();
+					}
+				}, PRUNE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (RuntimeException ex) {
+				// Shutting down, the folders will be pruned by shutdown()
+				pruneScheduled.set(false);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionListener#deletionFailed(github.com.taconaut.plugin.autodeleteafterplay.DeletionRequest)
+	 */
+	@Override
+	public void deletionFailed(DeletionRequest request) {
+		// The folder isn't empty
+	}
+
+	/**
+	 * Stops collecting folders and prunes the ones collected so far.
+	 */
+	public void shutdown() {
+		pruner.shutdownNow();
+		try {
+			pruner.awaitTermination(PRUNE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		prune();
+	}
+
+	/**
+	 * Removes the collected folders which are empty, deepest first, together with their parents which become empty.
+	 */
+	private synchronized void prune() {
+		if (pendingFolders.isEmpty()) {
+			return;
+		}
+
+		// Deepest folders first, so that a parent is only checked once all its pruned subfolders have been removed
+		TreeMap<Path, Path> folders = new TreeMap<Path, Path>(new Comparator<Path>() {
+
+			@Override
+			public int compare(Path path1, Path path2) {
+				int depthComparison = Integer.compare(path2.getNameCount(), path1.getNameCount());
+				return depthComparison != 0 ? depthComparison : path1.compareTo(path2);
+			}
+		});
+		for (Path folder : new ArrayList<Path>(pendingFolders.keySet())) {
+			Path root = pendingFolders.remove(folder);
+			if (root != null) {
+				folders.put(folder, root);
+			}
+		}
+
+		List<Path> removedFolders = new ArrayList<Path>();
+		while (!folders.isEmpty()) {
+			Map.Entry<Path, Path> entry = folders.pollFirstEntry();
+			Path folder = entry.getKey();
+			Path root = entry.getValue();
+			try {
+				// Only succeeds if the folder is empty
+				Files.delete(folder);
+				removedFolders.add(folder);
+			} catch (DirectoryNotEmptyException | NoSuchFileException ex) {
+				continue;
+			} catch (IOException ex) {
+				LOGGER.debug(String.format("Failed to remove the empty folder '%s': %s", folder, ex));
+				continue;
+			}
+
+			Path parent = folder.getParent();
+			if (parent != null && !parent.equals(root) && parent.startsWith(root)) {
+				folders.put(parent, root);
+			}
+		}
+
+		if (!removedFolders.isEmpty()) {
+			LOGGER.info(String.format("Removed %s empty folders: %s", removedFolders.size(), removedFolders));
+		}
+	}
+}
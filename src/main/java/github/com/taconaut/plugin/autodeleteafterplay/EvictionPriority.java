@@ -0,0 +1,16 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+/**
+ * Order in which played files are deleted when a disk runs low on free space.
+ */
+public enum EvictionPriority {
+
+	/** The files which have been played the longest time ago first. */
+	OLDEST_PLAYED,
+
+	/** The largest files first. */
+	LARGEST,
+
+	/** The files with the highest score first, the score being the size in MB multiplied by 1 + the hours since played. */
+	WEIGHTED
+}
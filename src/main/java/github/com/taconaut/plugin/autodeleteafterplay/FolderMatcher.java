@@ -0,0 +1,302 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides if a file is part of the auto delete folders.<br>
+ * The configured folders are compiled once into a trie of path components, so that matching a file takes time
+ * proportional to the depth of its path rather than to the number of configured folders. Folders prefixed with
+ * {@value #EXCLUDE_PREFIX} are excluded; when folders are nested, the deepest one wins.<br>
+ * A folder can be followed by {@value #QUOTA_SEPARATOR} and a size (e.g. <code>/media/kids|200G</code>) limiting
+ * the size of the played files kept in it.
+ */
+public class FolderMatcher {
+	private static final Logger LOGGER = LoggerFactory.getLogger(FolderMatcher.class);
+
+	/** Prefix marking a folder whose files must never be deleted. */
+	public static final String EXCLUDE_PREFIX = "!";
+
+	/** Separates a folder from its quota. */
+	public static final String QUOTA_SEPARATOR = "|";
+
+	/** Size units accepted as quota suffix, in increasing order. */
+	private static final String SIZE_UNITS = "KMGT";
+
+	/** True if the file system compares paths case-insensitively (e.g. Windows). */
+	private static final boolean CASE_INSENSITIVE = new File("a").equals(new File("A"));
+
+	private final Node root = new Node();
+	private final boolean hasIncludes;
+	private final String definition;
+	private final Map<Path, Long> quotas = new HashMap<Path, Long>();
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param folderPaths the configured folders. Blank entries are ignored.
+	 */
+	public FolderMatcher(String[] folderPaths) {
+		boolean includes = false;
+		StringBuilder definitionBuilder = new StringBuilder();
+		for (String folderPath : folderPaths) {
+			String entry = folderPath.trim();
+			boolean exclude = entry.startsWith(EXCLUDE_PREFIX);
+			if (exclude) {
+				entry = entry.substring(EXCLUDE_PREFIX.length()).trim();
+			}
+			long quotaBytes = -1;
+			int quotaSeparatorIndex = entry.lastIndexOf(QUOTA_SEPARATOR);
+			if (quotaSeparatorIndex >= 0) {
+				String quota = entry.substring(quotaSeparatorIndex + QUOTA_SEPARATOR.length()).trim();
+				entry = entry.substring(0, quotaSeparatorIndex).trim();
+				quotaBytes = parseSize(quota);
+				if (quotaBytes < 0) {
+					LOGGER.warn(String.format("The quota '%s' of the auto delete folder '%s' is not a valid size and will be ignored", quota, entry));
+				} else if (exclude) {
+					LOGGER.warn(String.format("The quota of the excluded folder '%s' will be ignored", entry));
+					quotaBytes = -1;
+				}
+			}
+			if (entry.isEmpty()) {
+				continue;
+			}
+
+			Path path;
+			try {
+				path = normalize(Paths.get(entry));
+			} catch (InvalidPathException ex) {
+				LOGGER.warn(String.format("The auto delete folder '%s' is not a valid path and will be ignored", entry));
+				continue;
+			}
+
+			Node node = root;
+			for (String component : components(path)) {
+				Node child = node.children.get(component);
+				if (child == null) {
+					child = new Node();
+					node.children.put(component, child);
+				}
+				node = child;
+			}
+			node.folder = path;
+			node.exclude = exclude;
+			includes |= !exclude;
+
+			if (definitionBuilder.length() > 0) {
+				definitionBuilder.append(';');
+			}
+			definitionBuilder.append(exclude ? EXCLUDE_PREFIX : "").append(path);
+			if (quotaBytes >= 0) {
+				quotas.put(path, quotaBytes);
+				definitionBuilder.append(QUOTA_SEPARATOR).append(quotaBytes);
+			}
+		}
+		hasIncludes = includes;
+		definition = definitionBuilder.toString();
+	}
+
+	/**
+	 * Checks if the file may be deleted. This is the case if the deepest configured folder containing it is not
+	 * excluded, or if no folders to include have been configured and the file isn't excluded.
+	 *
+	 * @param file the file to check
+	 * @return true, if the file is part of the auto delete folders
+	 */
+	public boolean matches(File file) {
+		return matches(resolve(file));
+	}
+
+	/**
+	 * Checks if the file may be deleted, see {@link #matches(File)}. Only walks the trie, without accessing the file
+	 * system.
+	 *
+	 * @param resolvedPath the path of the file, as returned by {@link #resolve(File)}
+	 * @return true, if the file is part of the auto delete folders
+	 */
+	public boolean matches(Path resolvedPath) {
+		Node node = findDeepest(resolvedPath);
+		return node == null ? !hasIncludes : !node.exclude;
+	}
+
+	/**
+	 * Gets the deepest configured folder, which isn't excluded, containing the file.
+	 *
+	 * @param file the file
+	 * @return the folder, or null if the file isn't part of an auto delete folder
+	 */
+	public Path findRoot(File file) {
+		return findRoot(resolve(file));
+	}
+
+	/**
+	 * Gets the deepest configured folder, which isn't excluded, containing the file, see {@link #findRoot(File)}.
+	 * Only walks the trie, without accessing the file system.
+	 *
+	 * @param resolvedPath the path of the file, as returned by {@link #resolve(File)}
+	 * @return the folder, or null if the file isn't part of an auto delete folder
+	 */
+	public Path findRoot(Path resolvedPath) {
+		Node node = findDeepest(resolvedPath);
+		return node == null || node.exclude ? null : node.folder;
+	}
+
+	/**
+	 * Resolves the path of a file the way the configured folders have been, following symbolic links. This accesses
+	 * the file system, so a file checked several times should only be resolved once.
+	 *
+	 * @param file the file
+	 * @return the resolved path
+	 */
+	public Path resolve(File file) {
+		return normalize(file.toPath());
+	}
+
+	/**
+	 * Gets the maximum size of the played files kept in a folder.
+	 *
+	 * @param root the folder, as returned by {@link #findRoot(File)}
+	 * @return the quota in bytes, or -1 if no quota has been configured for the folder
+	 */
+	public long getQuotaBytes(Path root) {
+		Long quotaBytes = quotas.get(root);
+		return quotaBytes == null ? -1 : quotaBytes;
+	}
+
+	/**
+	 * Gets the folders for which a quota has been configured.
+	 *
+	 * @return the quotas in bytes by folder
+	 */
+	public Map<Path, Long> getQuotas() {
+		return Collections.unmodifiableMap(quotas);
+	}
+
+	/**
+	 * Parses a size in bytes, optionally followed by one of the binary units K, M, G or T (e.g. '200G').
+	 *
+	 * @param size the size
+	 * @return the size in bytes, or -1 if it isn't valid
+	 */
+	static long parseSize(String size) {
+		String value = size.trim().toUpperCase(Locale.ROOT);
+		if (value.endsWith("B")) {
+			value = value.substring(0, value.length() - 1);
+		}
+		long multiplier = 1;
+		if (!value.isEmpty()) {
+			int unitIndex = SIZE_UNITS.indexOf(value.charAt(value.length() - 1));
+			if (unitIndex >= 0) {
+				multiplier = 1L << (10 * (unitIndex + 1));
+				value = value.substring(0, value.length() - 1).trim();
+			}
+		}
+		try {
+			long bytes = Long.parseLong(value);
+			return bytes < 0 || bytes > Long.MAX_VALUE / multiplier ? -1 : bytes * multiplier;
+		} catch (NumberFormatException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Walks down the trie along the components of the path.
+	 *
+	 * @param path the normalized path
+	 * @return the deepest node of a configured folder containing the path, or null if there is none
+	 */
+	private Node findDeepest(Path path) {
+		Node node = root;
+		Node deepest = null;
+		for (String component : components(path)) {
+			node = node.children.get(component);
+			if (node == null) {
+				break;
+			}
+			if (node.folder != null) {
+				deepest = node;
+			}
+		}
+		return deepest;
+	}
+
+	/**
+	 * Splits a path in the components used as keys in the trie. The first component is the root of the path (e.g.
+	 * '/' or 'C:\').
+	 *
+	 * @param path the normalized path
+	 * @return the components
+	 */
+	private static String[] components(Path path) {
+		int nameCount = path.getNameCount();
+		String[] components = new String[nameCount + 1];
+		components[0] = key(String.valueOf(path.getRoot()));
+		for (int i = 0; i < nameCount; i++) {
+			components[i + 1] = key(path.getName(i).toString());
+		}
+		return components;
+	}
+
+	/**
+	 * Gets the key of a path component, taking the case sensitivity of the file system into account.
+	 *
+	 * @param component the path component
+	 * @return the key
+	 */
+	private static String key(String component) {
+		return CASE_INSENSITIVE ? component.toLowerCase(Locale.ROOT) : component;
+	}
+
+	/**
+	 * Resolves symbolic links of an existing path. If the path doesn't exist, the links of its parent will be resolved;
+	 * if the parent doesn't exist either, the path will only be made absolute and normalized.
+	 *
+	 * @param path the path
+	 * @return the normalized path
+	 */
+	private static Path normalize(Path path) {
+		try {
+			return path.toRealPath();
+		} catch (IOException ex) {
+			Path absolutePath = path.toAbsolutePath().normalize();
+			Path parent = absolutePath.getParent();
+			if (parent != null) {
+				try {
+					return parent.toRealPath().resolve(absolutePath.getFileName());
+				} catch (IOException e) {
+					// Use the normalized path
+				}
+			}
+			return absolutePath;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return definition;
+	}
+
+	/**
+	 * Node of the trie, one per path component.
+	 */
+	private static class Node {
+		private final Map<String, Node> children = new HashMap<String, Node>();
+		private Path folder;
+		private boolean exclude;
+	}
+}
@@ -0,0 +1,345 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves files to the trash as defined by the freedesktop.org Trash specification, used by the Linux desktops.<br>
+ * A file is moved to the home trash ($XDG_DATA_HOME/Trash) when it is on the same mount, otherwise to the trash at the
+ * top of its mount ($topdir/.Trash/$uid or $topdir/.Trash-$uid). Either way, it is moved with a single atomic rename,
+ * whatever its size. It is only copied, with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+ * when no trash can be used on its mount.
+ */
+public class FreedesktopTrashDeletionStrategy implements DeletionStrategy {
+	private static final Logger LOGGER = LoggerFactory.getLogger(FreedesktopTrashDeletionStrategy.class);
+
+	private static final String FILES_DIRECTORY_NAME = "files";
+	private static final String INFO_DIRECTORY_NAME = "info";
+	private static final String TRASH_INFO_EXTENSION = ".trashinfo";
+
+	/** Maximum number of directories whose trash is cached. */
+	private static final int MAX_CACHED_DIRECTORIES = 1000;
+
+	/** Number of bytes copied per call when a file has to be copied to another mount. */
+	private static final long COPY_CHUNK_SIZE = 64L * 1024 * 1024;
+
+	private final Path homeTrash;
+	private final int uid;
+
+	/** Trashes by directory path, least recently used first. */
+	private final Map<String, Trash> trashesByDirectory = new LinkedHashMap<String, Trash>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Trash> eldest) {
+			return size() > MAX_CACHED_DIRECTORIES;
+		}
+	};
+
+	/**
+	 * The Constructor.
+	 *
+	 * @throws IOException Signals that the user id can't be determined.
+	 */
+	public FreedesktopTrashDeletionStrategy() throws IOException {
+		Path home = Paths.get(System.getProperty("user.home"));
+		String dataHome = System.getenv("XDG_DATA_HOME");
+		Path dataHomePath = dataHome == null || dataHome.isEmpty() ? home.resolve(".local").resolve("share") : Paths.get(dataHome);
+		homeTrash = dataHomePath.resolve("Trash");
+		uid = (Integer) Files.getAttribute(home, "unix:uid");
+	}
+
+	/**
+	 * Checks if the platform uses the freedesktop.org trash, i.e. if it is a Unix other than OS X.
+	 *
+	 * @return true, if the freedesktop.org trash is supported
+	 */
+	public static boolean isSupported() {
+		String osName = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+		return !osName.startsWith("windows") && !osName.startsWith("mac") && FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#getName()
+	 */
+	@Override
+	public String getName() {
+		return "freedesktop-trash";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#isRecoverable()
+	 */
+	@Override
+	public boolean isRecoverable() {
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#isContentDestroyed()
+	 */
+	@Override
+	public boolean isContentDestroyed() {
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#delete(java.io.File)
+	 */
+	@Override
+	public void delete(File file) throws IOException {
+		Path path = file.toPath().toAbsolutePath();
+		Trash trash = getTrash(path);
+		Path filesDirectory = trash.directory.resolve(FILES_DIRECTORY_NAME);
+		Path infoDirectory = trash.directory.resolve(INFO_DIRECTORY_NAME);
+		Files.createDirectories(filesDirectory);
+		Files.createDirectories(infoDirectory);
+
+		// Reserve a name by creating the info file, which also tells where to restore the file
+		String originalPath = trash.topDirectory == null ? path.toString() : trash.topDirectory.relativize(path).toString();
+		byte[] info = String.format("[Trash Info]\nPath=%s\nDeletionDate=%s\n", encodePath(originalPath),
+				new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date())).getBytes(StandardCharsets.UTF_8);
+		String fileName = path.getFileName().toString();
+		String trashedName = fileName;
+		Path infoFile;
+		for (int i = 2;; i++) {
+			infoFile = infoDirectory.resolve(trashedName + TRASH_INFO_EXTENSION);
+			try {
+				Files.write(infoFile, info, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+				break;
+			} catch (FileAlreadyExistsException ex) {
+				trashedName = getNumberedName(fileName, i);
+			}
+		}
+
+		Path trashedFile = filesDirectory.resolve(trashedName);
+		try {
+			try {
+				Files.move(path, trashedFile, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException ex) {
+				copyAcrossDevices(path, trashedFile);
+				Files.delete(path);
+			}
+		} catch (IOException ex) {
+			Files.deleteIfExists(infoFile);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Gets the trash to which a file is moved.
+	 *
+	 * @param path the absolute path of the file
+	 * @return the trash
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private Trash getTrash(Path path) throws IOException {
+		String directory = path.getParent().toString();
+		synchronized (trashesByDirectory) {
+			Trash trash = trashesByDirectory.get(directory);
+			if (trash != null) {
+				return trash;
+			}
+		}
+
+		FileStore fileStore = Files.getFileStore(path);
+		Trash trash;
+		if (fileStore.equals(getFileStore(homeTrash))) {
+			trash = new Trash(homeTrash, null);
+		} else {
+			Path topDirectory = getMountPoint(path, fileStore);
+			Path topDirectoryTrash = getTopDirectoryTrash(topDirectory);
+			if (topDirectoryTrash != null) {
+				trash = new Trash(topDirectoryTrash, topDirectory);
+			} else {
+				LOGGER.warn(String.format("No trash can be used on the mount '%s', files will be copied to the home trash", topDirectory));
+				trash = new Trash(homeTrash, null);
+			}
+		}
+		LOGGER.debug(String.format("Files in '%s' will be moved to the trash '%s'", directory, trash.directory));
+
+		synchronized (trashesByDirectory) {
+			trashesByDirectory.put(directory, trash);
+		}
+		return trash;
+	}
+
+	/**
+	 * Gets the trash at the top of a mount, creating it if needed. The shared $topdir/.Trash/$uid is used if the
+	 * administrator has set it up as required by the specification, otherwise $topdir/.Trash-$uid.
+	 *
+	 * @param topDirectory the mount point
+	 * @return the trash, or null if none can be used
+	 */
+	private Path getTopDirectoryTrash(Path topDirectory) {
+		Path sharedTrash = topDirectory.resolve(".Trash");
+		try {
+			if (Files.isDirectory(sharedTrash, LinkOption.NOFOLLOW_LINKS) && isSticky(sharedTrash)) {
+				Path userTrash = sharedTrash.resolve(Integer.toString(uid));
+				Files.createDirectories(userTrash, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+				return userTrash;
+			}
+		} catch (IOException ex) {
+			LOGGER.debug(String.format("The shared trash '%s' can't be used: %s", sharedTrash, ex));
+		}
+
+		Path userTrash = topDirectory.resolve(".Trash-" + uid);
+		try {
+			Files.createDirectories(userTrash, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+			return userTrash;
+		} catch (IOException ex) {
+			LOGGER.debug(String.format("The trash '%s' can't be used: %s", userTrash, ex));
+			return null;
+		}
+	}
+
+	/**
+	 * Checks if the sticky bit of a directory is set.
+	 *
+	 * @param directory the directory
+	 * @return true, if the sticky bit is set
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static boolean isSticky(Path directory) throws IOException {
+		int mode = (Integer) Files.getAttribute(directory, "unix:mode", LinkOption.NOFOLLOW_LINKS);
+		return (mode & 01000) != 0;
+	}
+
+	/**
+	 * Gets the mount point of a file, i.e. its topmost ancestor on the same file store.
+	 *
+	 * @param path the absolute path of the file
+	 * @param fileStore the file store of the file
+	 * @return the mount point
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static Path getMountPoint(Path path, FileStore fileStore) throws IOException {
+		Path mountPoint = path.getParent();
+		while (mountPoint.getParent() != null && fileStore.equals(Files.getFileStore(mountPoint.getParent()))) {
+			mountPoint = mountPoint.getParent();
+		}
+		return mountPoint;
+	}
+
+	/**
+	 * Gets the file store of a path which might not exist yet, from its closest existing ancestor.
+	 *
+	 * @param path the path
+	 * @return the file store
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static FileStore getFileStore(Path path) throws IOException {
+		Path existingPath = path;
+		while (!Files.exists(existingPath) && existingPath.getParent() != null) {
+			existingPath = existingPath.getParent();
+		}
+		return Files.getFileStore(existingPath);
+	}
+
+	/**
+	 * Copies a file to another mount. The content is streamed by the kernel where possible and synced before returning.
+	 *
+	 * @param source the file to copy
+	 * @param target the copy, which must not exist
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void copyAcrossDevices(Path source, Path target) throws IOException {
+		LOGGER.debug(String.format("Copying '%s' to the trash '%s' of another mount", source, target));
+		try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			long size = in.size();
+			long position = 0;
+			while (position < size) {
+				position += in.transferTo(position, Math.min(COPY_CHUNK_SIZE, size - position), out);
+			}
+			out.force(true);
+		} catch (IOException ex) {
+			Files.deleteIfExists(target);
+			throw ex;
+		}
+		Files.setLastModifiedTime(target, Files.getLastModifiedTime(source));
+	}
+
+	/**
+	 * Gets the name of the n-th file with the same name in the trash, e.g. "movie.2.mkv".
+	 *
+	 * @param fileName the name of the file
+	 * @param number the number of the file
+	 * @return the numbered name
+	 */
+	private static String getNumberedName(String fileName, int number) {
+		int extensionIndex = fileName.lastIndexOf('.');
+		if (extensionIndex <= 0) {
+			return fileName + "." + number;
+		}
+		return fileName.substring(0, extensionIndex) + "." + number + fileName.substring(extensionIndex);
+	}
+
+	/**
+	 * Escapes a path as required in a .trashinfo file, i.e. like the path of a URL.
+	 *
+	 * @param path the path
+	 * @return the escaped path
+	 */
+	static String encodePath(String path) {
+		StringBuilder encodedPath = new StringBuilder();
+		for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+			int c = b & 0xff;
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || "/-_.~".indexOf(c) >= 0) {
+				encodedPath.append((char) c);
+			} else {
+				encodedPath.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+						.append(Character.toUpperCase(Character.forDigit(c & 0xf, 16)));
+			}
+		}
+		return encodedPath.toString();
+	}
+
+	/**
+	 * A trash directory.
+	 */
+	private static class Trash {
+		private final Path directory;
+		private final Path topDirectory;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param directory the trash directory, containing the files and info directories
+		 * @param topDirectory the mount point the paths are relative to, or null if the paths are absolute
+		 */
+		public Trash(Path directory, Path topDirectory) {
+			this.directory = directory;
+			this.topDirectory = topDirectory;
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.fest.util.Arrays;
+
+import com.sun.jna.platform.FileUtils;
+
+/**
+ * Moves files to the recycle bin of the operating system with JNA. Only usable when {@link FileUtils#hasTrash()} is
+ * true, i.e. on Windows and OS X.
+ */
+public class JnaTrashDeletionStrategy implements DeletionStrategy {
+	private final FileUtils fileUtils;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param fileUtils the JNA file utilities
+	 */
+	public JnaTrashDeletionStrategy(FileUtils fileUtils) {
+		this.fileUtils = fileUtils;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#getName()
+	 */
+	@Override
+	public String getName() {
+		return "jna-trash";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#isRecoverable()
+	 */
+	@Override
+	public boolean isRecoverable() {
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#isContentDestroyed()
+	 */
+	@Override
+	public boolean isContentDestroyed() {
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#delete(java.io.File)
+	 */
+	@Override
+	public void delete(File file) throws IOException {
+		fileUtils.moveToTrash(Arrays.array(file));
+	}
+}
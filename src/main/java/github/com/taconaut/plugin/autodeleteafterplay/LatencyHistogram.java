@@ -0,0 +1,130 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations with power of two buckets.<br>
+ * Bucket 0 counts the value 0 and bucket i counts the values from 2^(i-1) to 2^i - 1, so that recording a value only
+ * costs a few atomic increments whatever its magnitude. Percentiles are approximated by the upper bound of the bucket
+ * they fall in.
+ */
+public class LatencyHistogram {
+
+	/** One bucket for 0 and one per bit of a positive long. */
+	static final int BUCKET_COUNT = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a value. Negative values, e.g. caused by the system clock being set back, are recorded as 0.
+	 *
+	 * @param value the value
+	 */
+	public void record(long value) {
+		long positiveValue = Math.max(value, 0);
+		buckets.incrementAndGet(getBucketIndex(positiveValue));
+		count.incrementAndGet();
+		sum.addAndGet(positiveValue);
+
+		long currentMax;
+		while (positiveValue > (currentMax = max.get())) {
+			if (max.compareAndSet(currentMax, positiveValue)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of recorded values.
+	 *
+	 * @return the count
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Gets the sum of the recorded values.
+	 *
+	 * @return the sum
+	 */
+	public long getSum() {
+		return sum.get();
+	}
+
+	/**
+	 * Gets the highest recorded value.
+	 *
+	 * @return the max, or 0 if no value has been recorded
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Gets the mean of the recorded values.
+	 *
+	 * @return the mean, or 0 if no value has been recorded
+	 */
+	public double getMean() {
+		long currentCount = count.get();
+		return currentCount == 0 ? 0 : (double) sum.get() / currentCount;
+	}
+
+	/**
+	 * Gets an approximation of a percentile of the recorded values.
+	 *
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the upper bound of the bucket containing the percentile, or 0 if no value has been recorded
+	 */
+	public long getPercentile(double percentile) {
+		long currentCount = count.get();
+		if (currentCount == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(currentCount * percentile / 100));
+		long cumulativeCount = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			cumulativeCount += buckets.get(i);
+			if (cumulativeCount >= rank) {
+				return Math.min(getBucketUpperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Gets the number of values recorded in a bucket.
+	 *
+	 * @param index the bucket index
+	 * @return the bucket count
+	 */
+	public long getBucketCount(int index) {
+		return buckets.get(index);
+	}
+
+	/**
+	 * Gets the highest value counted by a bucket.
+	 *
+	 * @param index the bucket index
+	 * @return the upper bound of the bucket
+	 */
+	public static long getBucketUpperBound(int index) {
+		return index == BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << index) - 1;
+	}
+
+	/**
+	 * Gets the index of the bucket counting a value.
+	 *
+	 * @param value the positive value
+	 * @return the bucket index
+	 */
+	private static int getBucketIndex(long value) {
+		return Long.SIZE - Long.numberOfLeadingZeros(value);
+	}
+}
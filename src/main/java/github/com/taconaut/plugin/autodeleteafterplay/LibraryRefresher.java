@@ -0,0 +1,125 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.pms.dlna.DLNAResource;
+
+/**
+ * Refreshes the folders of the library of UMS holding deleted files, so that renderers browsing them don't get the
+ * deleted files, which they would fail to play, and UMS doesn't have to rescan the whole library.<br>
+ * Only the folder of a deleted file is refreshed, with {@link DLNAResource#refreshChildren()}, which lets UMS decide if
+ * the folder changed and remove the children whose file is gone itself. The folders of the deleted files are collected
+ * for a short while, so that a folder from which several files are deleted is only refreshed once. Files whose
+ * resource isn't known, e.g. the ones deleted to free disk space, are left for UMS to notice.
+ */
+public class LibraryRefresher implements DeletionListener {
+	private static final Logger LOGGER = LoggerFactory.getLogger(LibraryRefresher.class);
+
+	/** Time during which the folders of deleted files are collected before being refreshed. */
+	private static final long REFRESH_DELAY_MILLIS = 2000;
+
+	private final PluginConfiguration configuration;
+	private final ScheduledThreadPoolExecutor refresher;
+
+	/** Number of deleted files by folder to refresh, guarded by itself. */
+	private final Map<DLNAResource, Integer> pendingFolders = new IdentityHashMap<DLNAResource, Integer>();
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param configuration the configuration defining if folders are refreshed
+	 */
+	public LibraryRefresher(PluginConfiguration configuration) {
+		this.configuration = configuration;
+		refresher = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("AutoDeleteFileAfterPlay-library-refresher"));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionListener#fileDeleted(github.com.taconaut.plugin.autodeleteafterplay.DeletionRequest)
+	 */
+	@Override
+	public void fileDeleted(DeletionRequest request) {
+		DLNAResource resource = request.getResource();
+		if (resource == null || !configuration.getSnapshot().isRefreshFoldersAfterDelete()) {
+			return;
+		}
+
+		DLNAResource folder = resource.getParent();
+		if (folder == null) {
+			return;
+		}
+
+		boolean scheduleRefresh;
+		synchronized (pendingFolders) {
+			scheduleRefresh = pendingFolders.isEmpty();
+			Integer deletedCount = pendingFolders.get(folder);
+			pendingFolders.put(folder, deletedCount == null ? 1 : deletedCount + 1);
+		}
+
+		if (scheduleRefresh) {
+			try {
+				refresher.schedule(new Runnable() {
+
+					@Override
+					public void run() {
+						refresh();
+					}
+				}, REFRESH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (RuntimeException ex) {
+				// Shutting down, the library doesn't have to be refreshed anymore
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionListener#deletionFailed(github.com.taconaut.plugin.autodeleteafterplay.DeletionRequest)
+	 */
+	@Override
+	public void deletionFailed(DeletionRequest request) {
+		// The file is still listed
+	}
+
+	/**
+	 * Stops refreshing folders.
+	 */
+	public void shutdown() {
+		refresher.shutdownNow();
+		synchronized (pendingFolders) {
+			pendingFolders.clear();
+		}
+	}
+
+	/**
+	 * Refreshes the collected folders.
+	 */
+	private void refresh() {
+		Map<DLNAResource, Integer> folders;
+		synchronized (pendingFolders) {
+			folders = new IdentityHashMap<DLNAResource, Integer>(pendingFolders);
+			pendingFolders.clear();
+		}
+
+		for (Map.Entry<DLNAResource, Integer> entry : folders.entrySet()) {
+			DLNAResource folder = entry.getKey();
+			try {
+				boolean refreshed = folder.refreshChildren();
+				if (LOGGER.isDebugEnabled()) {
+					LOGGER.debug(String.format("%s the folder '%s' after deleting %s of its files", refreshed ? "Refreshed" : "Didn't need to refresh",
+							folder.getName(), entry.getValue()));
+				}
+			} catch (RuntimeException ex) {
+				LOGGER.warn(String.format("Failed to refresh the folder '%s' after deleting %s of its files", folder.getName(), entry.getValue()), ex);
+			}
+		}
+	}
+}
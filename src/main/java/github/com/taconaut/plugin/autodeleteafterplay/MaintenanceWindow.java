@@ -0,0 +1,102 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.util.Calendar;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Daily time range, in local time, during which held back deletions are carried out, e.g. <code>03:00-05:00</code>.
+ * A window whose end is before its start spans midnight (e.g. <code>23:00-02:00</code>).
+ */
+public class MaintenanceWindow {
+	private static final Logger LOGGER = LoggerFactory.getLogger(MaintenanceWindow.class);
+
+	private static final Pattern WINDOW_PATTERN = Pattern.compile("(\\d{1,2}):(\\d{2})\\s*-\\s*(\\d{1,2}):(\\d{2})");
+
+	private static final int MINUTES_PER_HOUR = 60;
+	private static final int MINUTES_PER_DAY = 24 * MINUTES_PER_HOUR;
+
+	private final int startMinuteOfDay;
+	private final int endMinuteOfDay;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param startMinuteOfDay the minute of the day at which the window opens
+	 * @param endMinuteOfDay the minute of the day at which the window closes
+	 */
+	MaintenanceWindow(int startMinuteOfDay, int endMinuteOfDay) {
+		this.startMinuteOfDay = startMinuteOfDay;
+		this.endMinuteOfDay = endMinuteOfDay;
+	}
+
+	/**
+	 * Parses a window of the form HH:mm-HH:mm.
+	 *
+	 * @param definition the window, as configured
+	 * @return the window, or null if none has been configured or it is invalid
+	 */
+	public static MaintenanceWindow parse(String definition) {
+		if (definition.trim().isEmpty()) {
+			return null;
+		}
+
+		Matcher matcher = WINDOW_PATTERN.matcher(definition.trim());
+		if (matcher.matches()) {
+			int startMinuteOfDay = toMinuteOfDay(matcher.group(1), matcher.group(2));
+			int endMinuteOfDay = toMinuteOfDay(matcher.group(3), matcher.group(4));
+			if (startMinuteOfDay >= 0 && endMinuteOfDay >= 0 && startMinuteOfDay != endMinuteOfDay) {
+				return new MaintenanceWindow(startMinuteOfDay, endMinuteOfDay);
+			}
+		}
+		LOGGER.warn(String.format("The deletion window '%s' is not of the form HH:mm-HH:mm and will be ignored", definition));
+		return null;
+	}
+
+	/**
+	 * Checks if the window is open at a given time.
+	 *
+	 * @param timeMillis the time
+	 * @return true, if the window is open
+	 */
+	public boolean isOpen(long timeMillis) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(timeMillis);
+		int minuteOfDay = calendar.get(Calendar.HOUR_OF_DAY) * MINUTES_PER_HOUR + calendar.get(Calendar.MINUTE);
+		if (startMinuteOfDay < endMinuteOfDay) {
+			return minuteOfDay >= startMinuteOfDay && minuteOfDay < endMinuteOfDay;
+		}
+		return minuteOfDay >= startMinuteOfDay || minuteOfDay < endMinuteOfDay;
+	}
+
+	/**
+	 * Converts a time of the day to minutes.
+	 *
+	 * @param hours the hours
+	 * @param minutes the minutes
+	 * @return the minute of the day, or -1 if the time is invalid
+	 */
+	private static int toMinuteOfDay(String hours, String minutes) {
+		int hoursValue = Integer.parseInt(hours);
+		int minutesValue = Integer.parseInt(minutes);
+		// 24:00 is accepted as the end of the day
+		if (hoursValue > 24 || minutesValue >= MINUTES_PER_HOUR || (hoursValue == 24 && minutesValue > 0)) {
+			return -1;
+		}
+		return (hoursValue * MINUTES_PER_HOUR + minutesValue) % MINUTES_PER_DAY;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("%02d:%02d-%02d:%02d", startMinuteOfDay / MINUTES_PER_HOUR, startMinuteOfDay % MINUTES_PER_HOUR,
+				endMinuteOfDay / MINUTES_PER_HOUR, endMinuteOfDay % MINUTES_PER_HOUR);
+	}
+}
@@ -0,0 +1,43 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import net.pms.dlna.DLNAMediaInfo;
+
+/**
+ * Type of the media being played, resolved once per play event.
+ */
+public enum MediaType {
+
+	/** A video. */
+	VIDEO,
+
+	/** An audio file. */
+	AUDIO,
+
+	/** An image. */
+	IMAGE,
+
+	/** Any other media, or media whose type isn't known. */
+	OTHER;
+
+	/**
+	 * Gets the type of a media.
+	 *
+	 * @param media the media, can be null
+	 * @return the media type
+	 */
+	public static MediaType of(DLNAMediaInfo media) {
+		if (media == null) {
+			return OTHER;
+		}
+		if (media.isVideo()) {
+			return VIDEO;
+		}
+		if (media.isAudio()) {
+			return AUDIO;
+		}
+		if (media.isImage()) {
+			return IMAGE;
+		}
+		return OTHER;
+	}
+}
@@ -0,0 +1,95 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically writes the metrics to the file configured by {@link PluginConfiguration#getMetricsFilePath()}, in the
+ * Prometheus text format. The file is replaced atomically, so that a collector never reads a partly written file.
+ * Nothing is written while no file has been configured.
+ */
+public class MetricsFileWriter {
+	private static final Logger LOGGER = LoggerFactory.getLogger(MetricsFileWriter.class);
+
+	/** Interval at which the metrics file is written. */
+	private static final long WRITE_INTERVAL_MILLIS = 15000;
+
+	private final PluginConfiguration configuration;
+	private final PluginMetrics metrics;
+	private final ScheduledThreadPoolExecutor writer;
+
+	/** Path of the last file which couldn't be written, to only log the failure once. */
+	private String failedFilePath;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param configuration the configuration holding the path of the metrics file
+	 * @param metrics the metrics to write
+	 */
+	public MetricsFileWriter(PluginConfiguration configuration, PluginMetrics metrics) {
+		this.configuration = configuration;
+		this.metrics = metrics;
+
+		writer = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("AutoDeleteFileAfterPlay-metrics"));
+		writer.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				write();
+			}
+		}, WRITE_INTERVAL_MILLIS, WRITE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops writing the metrics file and writes it one last time.
+	 */
+	public void shutdown() {
+		writer.shutdownNow();
+		try {
+			writer.awaitTermination(WRITE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		write();
+	}
+
+	/**
+	 * Writes the metrics file if one has been configured.
+	 */
+	private synchronized void write() {
+		String filePath = configuration.getSnapshot().getMetricsFilePath().trim();
+		if (filePath.isEmpty()) {
+			return;
+		}
+
+		try {
+			Path file = Paths.get(filePath).toAbsolutePath();
+			Path tempFile = AtomicFiles.createTempFile(file);
+			try {
+				try (OutputStream out = Files.newOutputStream(tempFile)) {
+					out.write(metrics.toPrometheusText().getBytes(StandardCharsets.UTF_8));
+				}
+				AtomicFiles.commit(tempFile, file);
+			} finally {
+				Files.deleteIfExists(tempFile);
+			}
+			failedFilePath = null;
+		} catch (IOException | InvalidPathException ex) {
+			if (!filePath.equals(failedFilePath)) {
+				LOGGER.warn(String.format("Failed to write the metrics file '%s'", filePath), ex);
+				failedFilePath = filePath;
+			}
+		}
+	}
+}
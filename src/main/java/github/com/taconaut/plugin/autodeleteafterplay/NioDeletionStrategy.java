@@ -0,0 +1,52 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Permanently deletes files with {@link Files#delete(java.nio.file.Path)}, which reports the reason of a failure
+ * instead of only returning false.
+ */
+public class NioDeletionStrategy implements DeletionStrategy {
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#getName()
+	 */
+	@Override
+	public String getName() {
+		return "nio";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#isRecoverable()
+	 */
+	@Override
+	public boolean isRecoverable() {
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#isContentDestroyed()
+	 */
+	@Override
+	public boolean isContentDestroyed() {
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#delete(java.io.File)
+	 */
+	@Override
+	public void delete(File file) throws IOException {
+		Files.delete(file.toPath());
+	}
+}
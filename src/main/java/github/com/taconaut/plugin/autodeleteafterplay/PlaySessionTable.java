@@ -0,0 +1,333 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.pms.configuration.RendererConfiguration;
+import net.pms.dlna.DLNAResource;
+import net.pms.dlna.RealFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of the files being played.<br>
+ * Sessions are keyed by resource id and renderer, so that the same file being played on several renderers at the same
+ * time is tracked separately. All operations are thread safe and run in constant time, except for
+ * {@link #isPlaying(File)} which is only called before destroying the content of a file.<br>
+ * A session is only ended by donePlaying, which never comes if the renderer disappeared. To keep the memory flat over
+ * long uptimes, sessions which haven't been stopped after the session timeout are expired by a {@link TimingWheel},
+ * and the oldest sessions are evicted when the max number of sessions is reached. As the timing wheel expects a
+ * single thread to take items out of it, both are done by the reaper thread; the max number of sessions is enforced
+ * right after it has been exceeded, not before the new session is added.
+ */
+public class PlaySessionTable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PlaySessionTable.class);
+
+	/** Duration of a tick of the timing wheel; sessions expire at most this late. */
+	private static final long TICK_MILLIS = 60000;
+
+	/** Number of slots of the timing wheel, a turn is a bit more than 4 hours. */
+	private static final int SLOT_COUNT = 256;
+
+	private static final long MILLIS_PER_HOUR = 3600000L;
+
+	private final PluginConfiguration pluginConfiguration;
+	private final EvictionListener evictionListener;
+	private final ConcurrentMap<SessionKey, PlaySession> sessions = new ConcurrentHashMap<SessionKey, PlaySession>();
+	private final TimingWheel<PlaySession> timeouts = new TimingWheel<PlaySession>(SLOT_COUNT, TICK_MILLIS);
+	private final ScheduledThreadPoolExecutor reaper;
+	private final AtomicBoolean evictionRequested = new AtomicBoolean();
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param pluginConfiguration the plugin configuration
+	 * @param evictionListener the listener notified when a session is evicted
+	 */
+	public PlaySessionTable(PluginConfiguration pluginConfiguration, EvictionListener evictionListener) {
+		this.pluginConfiguration = pluginConfiguration;
+		this.evictionListener = evictionListener;
+
+		reaper = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("AutoDeleteFileAfterPlay-session-reaper"));
+		reaper.scheduleAtFixedRate(new Runnable() {
+
+			@Override
+			public void run() {
+				expireSessions();
+			}
+		}, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Starts a play session for the resource. An already running session for the same resource and renderer will be
+	 * replaced; it is dropped without notifying the eviction listener, as the resource is still being played. If the
+	 * max number of sessions is exceeded, the sessions closest to timing out are evicted in the
+	 * background.
+	 *
+	 * @param resource the resource being played
+	 * @param startNanos the time at which the play started, as returned by {@link System#nanoTime()}
+	 */
+	public void start(DLNAResource resource, long startNanos) {
+		ConfigurationSnapshot configuration = pluginConfiguration.getSnapshot();
+		SessionKey key = new SessionKey(resource.getInternalId(), resource.getDefaultRenderer());
+		PlaySession session = new PlaySession(startNanos, resource instanceof RealFile ? ((RealFile) resource).getFile() : null, key);
+		session.timeout = timeouts.schedule(session, configuration.getSessionTimeoutHours() * MILLIS_PER_HOUR);
+		PlaySession replacedSession = sessions.put(key, session);
+		if (replacedSession != null && timeouts.cancel(replacedSession.timeout) && LOGGER.isDebugEnabled()) {
+			LOGGER.debug(String.format("Restarted the play session of %s started %s minutes ago", key.resourceId,
+					TimeUnit.NANOSECONDS.toMinutes(System.nanoTime() - replacedSession.startNanos)));
+		}
+
+		if (sessions.size() > Math.max(1, configuration.getMaxSessions())) {
+			requestEviction();
+		}
+	}
+
+	/**
+	 * Ends the play session of the resource.
+	 *
+	 * @param resource the resource which finished playing
+	 * @return the play session, or null if no session had been started for the resource and its renderer
+	 */
+	public PlaySession stop(DLNAResource resource) {
+		PlaySession session = sessions.remove(new SessionKey(resource.getInternalId(), resource.getDefaultRenderer()));
+		if (session != null) {
+			timeouts.cancel(session.timeout);
+		}
+		return session;
+	}
+
+	/**
+	 * Gets a value indicating if a file is being played by any renderer.
+	 *
+	 * @param file the file
+	 * @return true, if a session is in progress for the file
+	 */
+	public boolean isPlaying(File file) {
+		for (PlaySession session : sessions.values()) {
+			if (file.equals(session.file)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the number of sessions in progress.
+	 *
+	 * @return the number of sessions
+	 */
+	public int size() {
+		return sessions.size();
+	}
+
+	/**
+	 * Gets a value indicating if no file is being played.
+	 *
+	 * @return true, if there are no sessions in progress
+	 */
+	public boolean isEmpty() {
+		return sessions.isEmpty();
+	}
+
+	/**
+	 * Removes all sessions.
+	 */
+	public void clear() {
+		sessions.clear();
+		timeouts.clear();
+	}
+
+	/**
+	 * Stops expiring the sessions.
+	 */
+	public void shutdown() {
+		reaper.shutdownNow();
+	}
+
+	/**
+	 * Removes the sessions which have timed out. Called on every tick of the timing wheel.
+	 */
+	private void expireSessions() {
+		try {
+			List<PlaySession> expiredSessions = timeouts.advance();
+			for (PlaySession session : expiredSessions) {
+				if (sessions.remove(session.key, session)) {
+					evict(session, String.format("it hasn't been stopped after %s hours", pluginConfiguration.getSnapshot().getSessionTimeoutHours()));
+				}
+			}
+		} catch (RuntimeException ex) {
+			// Don't let an exception cancel the periodic task
+			LOGGER.error("Failed to expire the play sessions", ex);
+		}
+	}
+
+	/**
+	 * Requests the reaper thread to evict the sessions exceeding the max number of sessions. Requests made while an
+	 * eviction is pending are coalesced.
+	 */
+	private void requestEviction() {
+		if (!evictionRequested.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			reaper.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					evictionRequested.set(false);
+					evictOldestSessions();
+				}
+			});
+		} catch (RejectedExecutionException ex) {
+			// Shutting down
+			evictionRequested.set(false);
+		}
+	}
+
+	/**
+	 * Evicts the sessions closest to timing out while there are more sessions than the max number of sessions. Only
+	 * called by the reaper thread.
+	 */
+	private void evictOldestSessions() {
+		try {
+			int maxSessions = Math.max(1, pluginConfiguration.getSnapshot().getMaxSessions());
+			while (sessions.size() > maxSessions) {
+				PlaySession oldestSession = timeouts.pollEarliest();
+				if (oldestSession == null) {
+					break;
+				}
+				if (sessions.remove(oldestSession.key, oldestSession)) {
+					evict(oldestSession, String.format("the max number of %s sessions has been reached", maxSessions));
+				}
+			}
+		} catch (RuntimeException ex) {
+			LOGGER.error("Failed to evict the play sessions exceeding the max number of sessions", ex);
+		}
+	}
+
+	/**
+	 * Notifies the eviction of a session.
+	 *
+	 * @param session the evicted session
+	 * @param reason the reason of the eviction, for logging
+	 */
+	private void evict(PlaySession session, String reason) {
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug(String.format("Evicted the play session of %s started %s minutes ago because %s", session.key.resourceId,
+					TimeUnit.NANOSECONDS.toMinutes(System.nanoTime() - session.startNanos), reason));
+		}
+		evictionListener.sessionEvicted(session);
+	}
+
+	/**
+	 * Listener notified when a session is evicted before being stopped.
+	 */
+	public interface EvictionListener {
+
+		/**
+		 * Called when a session is evicted.
+		 *
+		 * @param session the evicted session
+		 */
+		void sessionEvicted(PlaySession session);
+	}
+
+	/**
+	 * A file being played.
+	 */
+	public static class PlaySession {
+		private final long startNanos;
+		private final File file;
+		private final SessionKey key;
+		private TimingWheel.Timeout<PlaySession> timeout;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param startNanos the time at which the play started, as returned by {@link System#nanoTime()}
+		 * @param file the file being played, or null if the resource isn't a real file
+		 * @param key the key of the session
+		 */
+		PlaySession(long startNanos, File file, SessionKey key) {
+			this.startNanos = startNanos;
+			this.file = file;
+			this.key = key;
+		}
+
+		/**
+		 * Gets the time at which the play started. Unlike the system time, it isn't affected by clock changes, so that
+		 * the play time of a session can't be negative or skewed.
+		 *
+		 * @return the start time, as returned by {@link System#nanoTime()}
+		 */
+		public long getStartNanos() {
+			return startNanos;
+		}
+
+		/**
+		 * Gets the file being played.
+		 *
+		 * @return the file, or null if the resource isn't a real file
+		 */
+		public File getFile() {
+			return file;
+		}
+	}
+
+	/**
+	 * Identifies a session by resource id and renderer.
+	 */
+	private static class SessionKey {
+		private final String resourceId;
+		private final RendererConfiguration renderer;
+		private final int hashCode;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param resourceId the resource id
+		 * @param renderer the renderer playing the resource, can be null
+		 */
+		public SessionKey(String resourceId, RendererConfiguration renderer) {
+			this.resourceId = resourceId;
+			this.renderer = renderer;
+			this.hashCode = 31 * (resourceId == null ? 0 : resourceId.hashCode()) + System.identityHashCode(renderer);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof SessionKey)) {
+				return false;
+			}
+			SessionKey other = (SessionKey) obj;
+			// Renderers are compared by identity, UMS holds one configuration instance per connected renderer
+			return renderer == other.renderer && (resourceId == null ? other.resourceId == null : resourceId.equals(other.resourceId));
+		}
+	}
+}
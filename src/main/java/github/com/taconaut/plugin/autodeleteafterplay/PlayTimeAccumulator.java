@@ -0,0 +1,219 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.pms.configuration.RendererConfiguration;
+
+/**
+ * Adds up the play time of all sessions of a file, so that a file watched in several sittings can be deleted once the
+ * total play time is long enough.<br>
+ * Memory stays bounded: entries which haven't been updated for a while are evicted, and the least recently updated
+ * entry is evicted when the maximum number of entries has been reached. The entries can be saved to and loaded from a
+ * file to survive restarts.
+ */
+public class PlayTimeAccumulator {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PlayTimeAccumulator.class);
+
+	/** Separates the file path from the renderer name in a key. */
+	private static final char KEY_SEPARATOR = '|';
+
+	/** Interval at which entries which haven't been updated for the retention time are looked for. */
+	private static final long EXPIRATION_CHECK_INTERVAL_MILLIS = 60000;
+
+	/** Entries ordered from the least to the most recently updated one. */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	/** Time of the next look for expired entries. */
+	private long nextExpirationCheckMillis;
+
+	/**
+	 * Gets the key used to accumulate the play time of a file.
+	 *
+	 * @param file the file being played
+	 * @param renderer the renderer playing the file, can be null
+	 * @param acrossRenderers true, if the play times of all renderers should be added up
+	 * @return the key
+	 */
+	public static String getKey(File file, RendererConfiguration renderer, boolean acrossRenderers) {
+		String filePath = file.getAbsolutePath();
+		if (acrossRenderers || renderer == null) {
+			return filePath;
+		}
+		return filePath + KEY_SEPARATOR + renderer.getRendererName();
+	}
+
+	/**
+	 * Adds the play time of a session.
+	 *
+	 * @param key the key of the file
+	 * @param playTimeMillis the play time of the session in milliseconds
+	 * @param retentionMillis the time after which an entry which hasn't been updated is evicted
+	 * @param maxEntries the maximum number of entries
+	 * @return the total play time in milliseconds, including this session
+	 */
+	public synchronized long add(String key, long playTimeMillis, long retentionMillis, int maxEntries) {
+		long now = System.currentTimeMillis();
+		// Only walk the entries when one has to be evicted, not on every session
+		if (entries.size() >= maxEntries || now >= nextExpirationCheckMillis) {
+			evict(now - retentionMillis, maxEntries - 1);
+			nextExpirationCheckMillis = now + EXPIRATION_CHECK_INTERVAL_MILLIS;
+		}
+
+		// Getting the entry makes it the most recently updated one
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			entry = new Entry(0, now);
+			entries.put(key, entry);
+		}
+		entry.totalPlayTimeMillis += playTimeMillis;
+		entry.lastUpdateTimeMillis = now;
+		return entry.totalPlayTimeMillis;
+	}
+
+	/**
+	 * Removes the play time of a file, e.g. once it has been deleted.
+	 *
+	 * @param key the key of the file
+	 */
+	public synchronized void remove(String key) {
+		entries.remove(key);
+	}
+
+	/**
+	 * Gets the number of files whose play time is being accumulated.
+	 *
+	 * @return the number of entries
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Loads the entries saved by {@link #save(Path)}. Entries which are older than the retention time are ignored.
+	 *
+	 * @param file the file to load the entries from
+	 * @param retentionMillis the time after which an entry which hasn't been updated is evicted
+	 * @param maxEntries the maximum number of entries
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void load(Path file, long retentionMillis, int maxEntries) throws IOException {
+		if (!Files.exists(file)) {
+			return;
+		}
+
+		Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(file)) {
+			properties.load(in);
+		}
+
+		List<Map.Entry<String, Entry>> loadedEntries = new ArrayList<Map.Entry<String, Entry>>();
+		for (String key : properties.stringPropertyNames()) {
+			String[] values = properties.getProperty(key).split(",");
+			try {
+				Entry entry = new Entry(Long.parseLong(values[0]), Long.parseLong(values[1]));
+				loadedEntries.add(new AbstractMap.SimpleImmutableEntry<String, Entry>(key, entry));
+			} catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+				LOGGER.debug(String.format("Ignored invalid play time entry '%s'", key));
+			}
+		}
+
+		// Restore the eviction order
+		Collections.sort(loadedEntries, new Comparator<Map.Entry<String, Entry>>() {
+
+			@Override
+			public int compare(Map.Entry<String, Entry> entry1, Map.Entry<String, Entry> entry2) {
+				return Long.compare(entry1.getValue().lastUpdateTimeMillis, entry2.getValue().lastUpdateTimeMillis);
+			}
+		});
+
+		synchronized (this) {
+			for (Map.Entry<String, Entry> loadedEntry : loadedEntries) {
+				entries.put(loadedEntry.getKey(), loadedEntry.getValue());
+			}
+			evict(System.currentTimeMillis() - retentionMillis, maxEntries);
+		}
+		LOGGER.debug(String.format("Loaded %s play time entries from '%s'", loadedEntries.size(), file));
+	}
+
+	/**
+	 * Saves the entries to a file.
+	 *
+	 * @param file the file to save the entries to
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void save(Path file) throws IOException {
+		Properties properties = new Properties();
+		synchronized (this) {
+			for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+				properties.setProperty(entry.getKey(), entry.getValue().totalPlayTimeMillis + "," + entry.getValue().lastUpdateTimeMillis);
+			}
+		}
+
+		Path tempFile = AtomicFiles.createTempFile(file);
+		try {
+			try (FileOutputStream out = new FileOutputStream(tempFile.toFile())) {
+				properties.store(out, "Accumulated play time in ms,last update time");
+				out.getFD().sync();
+			}
+			AtomicFiles.commit(tempFile, file);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+		LOGGER.debug(String.format("Saved %s play time entries to '%s'", properties.size(), file));
+	}
+
+	/**
+	 * Evicts the entries which haven't been updated since the given time and the least recently updated entries
+	 * exceeding the maximum number of entries. Has to be called while holding the lock on this instance.
+	 *
+	 * @param minUpdateTimeMillis the update time before which entries are evicted
+	 * @param maxEntries the maximum number of entries to keep
+	 */
+	private void evict(long minUpdateTimeMillis, int maxEntries) {
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next();
+			if (entries.size() <= maxEntries && entry.lastUpdateTimeMillis >= minUpdateTimeMillis) {
+				// The following entries have been updated more recently
+				break;
+			}
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Accumulated play time of a file.
+	 */
+	private static class Entry {
+		private long totalPlayTimeMillis;
+		private long lastUpdateTimeMillis;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param totalPlayTimeMillis the total play time in milliseconds
+		 * @param lastUpdateTimeMillis the time of the last update
+		 */
+		public Entry(long totalPlayTimeMillis, long lastUpdateTimeMillis) {
+			this.totalPlayTimeMillis = totalPlayTimeMillis;
+			this.lastUpdateTimeMillis = lastUpdateTimeMillis;
+		}
+	}
+}
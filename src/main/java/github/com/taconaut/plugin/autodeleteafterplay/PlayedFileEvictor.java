@@ -0,0 +1,394 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes the played files of the {@link PlayedFileIndex} when the disk holding them runs low on free space, or when
+ * the auto delete folder holding them exceeds its quota.<br>
+ * When the free space of a disk drops below {@link ConfigurationSnapshot#getEvictionMinFreePercent()}, played files
+ * are deleted in the order defined by {@link ConfigurationSnapshot#getEvictionPriority()} until the free space reaches
+ * {@link ConfigurationSnapshot#getEvictionTargetFreePercent()}. When the played files of a folder exceed its quota,
+ * the ones played the longest time ago are deleted until the quota is met.<br>
+ * Only the file stores and the usage kept by the index are queried, the library is never scanned. The size of the
+ * files which have been handed to the {@link DeletionEngine} but not deleted yet is counted as free, until the engine
+ * reports their deletion as done or failed, so that a slow deletion doesn't cause more files to be evicted than needed.
+ * All checks run on a single background thread, which also loads the index at startup and adds the played files to
+ * it, as looking up their size and file store would otherwise block the thread of UMS notifying the end of the play.
+ */
+public class PlayedFileEvictor implements DeletionListener {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PlayedFileEvictor.class);
+
+	/** Interval at which the free space of the disks and the quotas are checked. */
+	private static final long CHECK_INTERVAL_MILLIS = 30000;
+
+	private final PluginConfiguration configuration;
+	private final PlayedFileIndex playedFileIndex;
+	private final DeletionEngine deletionEngine;
+	private final ScheduledThreadPoolExecutor checker;
+	private final AtomicBoolean addRequested = new AtomicBoolean();
+
+	/** Played files waiting to be added to the index by the checker thread. */
+	private final Queue<PlayedFile> playedFiles = new ConcurrentLinkedQueue<PlayedFile>();
+
+	/** Size of the evicted files which haven't been deleted yet, by file store. Only accessed by the checker thread. */
+	private final Map<FileStore, Map<File, Long>> pendingEvictions = new HashMap<FileStore, Map<File, Long>>();
+
+	/** Matcher the files of the index have been assigned with. Only accessed by the checker thread. */
+	private FolderMatcher assignedFolderMatcher;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param configuration the configuration defining the free space thresholds, the eviction priority and the quotas
+	 * @param playedFileIndex the index of the played files which can be evicted
+	 * @param deletionEngine the engine deleting the evicted files
+	 */
+	public PlayedFileEvictor(PluginConfiguration configuration, PlayedFileIndex playedFileIndex, DeletionEngine deletionEngine) {
+		this.configuration = configuration;
+		this.playedFileIndex = playedFileIndex;
+		this.deletionEngine = deletionEngine;
+		checker = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("AutoDeleteFileAfterPlay-evictor"));
+	}
+
+	/**
+	 * Loads the index in the background, not to delay the startup of UMS, and starts checking the disks and quotas.
+	 *
+	 * @param indexFile the file the index has been saved to
+	 */
+	public void start(final Path indexFile) {
+		checker.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				assignedFolderMatcher = configuration.getSnapshot().getAutoDeleteFolderMatcher();
+				try {
+					playedFileIndex.load(indexFile, assignedFolderMatcher);
+				} catch (IOException e) {
+					LOGGER.error("Failed to load the played files kept until their disk runs low on free space or their folder exceeds its quota", e);
+				}
+			}
+		});
+		checker.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				check();
+			}
+		}, 0, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Keeps a file which has been played long enough until the disk holding it runs low on free space or its folder
+	 * exceeds its quota. The file is added to the index in the background, followed by a check of the disks and quotas
+	 * if the folder has a quota. Files kept while they are being added are added along with them.
+	 *
+	 * @param file the played file
+	 * @param lastPlayedMillis the time at which the file finished playing
+	 * @param root the auto delete folder holding the file, can be null
+	 * @param hasQuota true, if a quota has been configured for the folder
+	 */
+	public void keep(File file, long lastPlayedMillis, Path root, boolean hasQuota) {
+		playedFiles.add(new PlayedFile(file, lastPlayedMillis, root, hasQuota));
+		if (!addRequested.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			checker.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					addRequested.set(false);
+					if (addPlayedFiles()) {
+						check();
+					}
+				}
+			});
+		} catch (RejectedExecutionException ex) {
+			// Shutting down, the file is added by shutdown()
+			addRequested.set(false);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionListener#fileDeleted(github.com.taconaut.plugin.autodeleteafterplay.DeletionRequest)
+	 */
+	@Override
+	public void fileDeleted(DeletionRequest request) {
+		forgetPendingEviction(request);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionListener#deletionFailed(github.com.taconaut.plugin.autodeleteafterplay.DeletionRequest)
+	 */
+	@Override
+	public void deletionFailed(DeletionRequest request) {
+		forgetPendingEviction(request);
+	}
+
+	/**
+	 * Stops checking the disks and quotas. The played files which haven't been added to the index yet are added by the
+	 * calling thread, so that they are part of the index when it is saved.
+	 */
+	public void shutdown() {
+		checker.shutdownNow();
+		try {
+			checker.awaitTermination(CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		addPlayedFiles();
+	}
+
+	/**
+	 * Adds the kept played files to the index.
+	 *
+	 * @return true, if a file of a folder with a quota has been added
+	 */
+	private boolean addPlayedFiles() {
+		boolean quotaFileAdded = false;
+		PlayedFile playedFile;
+		while ((playedFile = playedFiles.poll()) != null) {
+			File file = playedFile.file;
+			try {
+				playedFileIndex.add(file, playedFile.lastPlayedMillis, playedFile.root);
+			} catch (IOException e) {
+				LOGGER.warn(String.format("Failed to keep track of the played file '%s'. It won't be deleted", file.getAbsolutePath()), e);
+				continue;
+			}
+
+			if (playedFile.hasQuota) {
+				quotaFileAdded = true;
+				if (LOGGER.isDebugEnabled()) {
+					LOGGER.debug(String.format("The file '%s' will be deleted once '%s' exceeds its quota", file.getAbsolutePath(), playedFile.root));
+				}
+			} else if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug(String.format("The file '%s' will be deleted once its disk runs low on free space", file.getAbsolutePath()));
+			}
+		}
+		return quotaFileAdded;
+	}
+
+	/**
+	 * Checks the quotas of the auto delete folders and the free space of all disks holding played files.
+	 */
+	private void check() {
+		ConfigurationSnapshot snapshot = configuration.getSnapshot();
+		try {
+			checkQuotas(snapshot.getAutoDeleteFolderMatcher());
+		} catch (RuntimeException ex) {
+			LOGGER.warn("Failed to check the quotas of the auto delete folders", ex);
+		}
+
+		for (FileStore fileStore : playedFileIndex.getFileStores()) {
+			try {
+				checkFreeSpace(fileStore, snapshot);
+			} catch (IOException | RuntimeException ex) {
+				// Keep checking the other disks, and this one at the next check
+				LOGGER.warn(String.format("Failed to check the free space of '%s'", fileStore), ex);
+			}
+		}
+	}
+
+	/**
+	 * Checks the quotas of the auto delete folders and evicts played files from the ones exceeding it.
+	 *
+	 * @param folderMatcher the matcher holding the quotas
+	 */
+	private void checkQuotas(FolderMatcher folderMatcher) {
+		if (!playedFileIndex.isLoaded()) {
+			// The usage is incomplete until the index has been loaded
+			return;
+		}
+		if (folderMatcher != assignedFolderMatcher) {
+			playedFileIndex.assignRoots(folderMatcher);
+			assignedFolderMatcher = folderMatcher;
+		}
+
+		for (Map.Entry<Path, Long> quota : folderMatcher.getQuotas().entrySet()) {
+			long usageBytes = playedFileIndex.getUsageBytes(quota.getKey());
+			if (usageBytes <= quota.getValue()) {
+				continue;
+			}
+
+			List<File> evictedFiles = playedFileIndex.getEvictionCandidates(quota.getKey(), usageBytes - quota.getValue());
+			if (!evictedFiles.isEmpty()) {
+				LOGGER.info(String.format("The played files of '%s' exceed its quota (%s of %s bytes). Deleting %s played files", quota.getKey(),
+						usageBytes, quota.getValue(), evictedFiles.size()));
+				evict(evictedFiles, null);
+			}
+		}
+	}
+
+	/**
+	 * Checks the free space of a disk and evicts played files if it is running low.
+	 *
+	 * @param fileStore the file store of the disk
+	 * @param snapshot the configuration
+	 * @throws IOException Signals that the space of the file store couldn't be read.
+	 */
+	private void checkFreeSpace(FileStore fileStore, ConfigurationSnapshot snapshot) throws IOException {
+		long totalSpace = fileStore.getTotalSpace();
+		if (totalSpace <= 0) {
+			return;
+		}
+
+		long freeSpace = fileStore.getUsableSpace() + getPendingEvictionBytes(fileStore);
+		long minFreeSpace = totalSpace / 100 * snapshot.getEvictionMinFreePercent();
+		if (freeSpace >= minFreeSpace) {
+			return;
+		}
+
+		// The target can't be lower than the threshold, otherwise every check would evict files
+		int targetFreePercent = Math.max(snapshot.getEvictionMinFreePercent(), snapshot.getEvictionTargetFreePercent());
+		long bytesToReclaim = totalSpace / 100 * targetFreePercent - freeSpace;
+		List<File> evictedFiles = playedFileIndex.getEvictionCandidates(fileStore, snapshot.getEvictionPriority(), bytesToReclaim);
+		if (evictedFiles.isEmpty()) {
+			LOGGER.debug(String.format("'%s' is running low on free space (%s%% free) but holds no played file which can be deleted", fileStore,
+					freeSpace * 100 / totalSpace));
+			return;
+		}
+
+		LOGGER.info(String.format("'%s' is running low on free space (%s%% free, min %s%%). Deleting %s played files to free %s bytes",
+				fileStore, freeSpace * 100 / totalSpace, snapshot.getEvictionMinFreePercent(), evictedFiles.size(), bytesToReclaim));
+		evict(evictedFiles, fileStore);
+	}
+
+	/**
+	 * Hands evicted files to the deletion engine and removes them from the index.
+	 *
+	 * @param evictedFiles the files to delete
+	 * @param fileStore the file store holding the files, or null if it has to be looked up
+	 */
+	private void evict(List<File> evictedFiles, FileStore fileStore) {
+		for (File evictedFile : evictedFiles) {
+			long size = evictedFile.length();
+			FileStore evictedFileStore = fileStore;
+			try {
+				if (evictedFileStore == null) {
+					evictedFileStore = Files.getFileStore(evictedFile.toPath());
+				}
+			} catch (IOException ex) {
+				// Deleted by other means
+				playedFileIndex.remove(evictedFile);
+				continue;
+			}
+
+			if (!deletionEngine.submit(new DeletionRequest(evictedFile))) {
+				// The engine is saturated, the remaining files stay in the index until the next check
+				break;
+			}
+			playedFileIndex.remove(evictedFile);
+
+			Map<File, Long> fileStorePendingEvictions = pendingEvictions.get(evictedFileStore);
+			if (fileStorePendingEvictions == null) {
+				fileStorePendingEvictions = new HashMap<File, Long>();
+				pendingEvictions.put(evictedFileStore, fileStorePendingEvictions);
+			}
+			fileStorePendingEvictions.put(evictedFile, size);
+		}
+	}
+
+	/**
+	 * Forgets an evicted file once the engine is done with it. The pending evictions are only accessed by the checker
+	 * thread, so the file is forgotten there.
+	 *
+	 * @param request the deletion request
+	 */
+	private void forgetPendingEviction(final DeletionRequest request) {
+		if (!request.isEvicted()) {
+			return;
+		}
+		try {
+			checker.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					Iterator<Map<File, Long>> iterator = pendingEvictions.values().iterator();
+					while (iterator.hasNext()) {
+						Map<File, Long> fileStorePendingEvictions = iterator.next();
+						if (fileStorePendingEvictions.remove(request.getFile()) != null && fileStorePendingEvictions.isEmpty()) {
+							iterator.remove();
+						}
+					}
+				}
+			});
+		} catch (RejectedExecutionException ex) {
+			// Shutting down
+		}
+	}
+
+	/**
+	 * Gets the size of the files evicted from a file store which haven't been deleted yet. The files which don't exist
+	 * anymore are forgotten as well, as the engine doesn't report the files deleted by other means.
+	 *
+	 * @param fileStore the file store
+	 * @return the size in bytes
+	 */
+	private long getPendingEvictionBytes(FileStore fileStore) {
+		Map<File, Long> fileStorePendingEvictions = pendingEvictions.get(fileStore);
+		if (fileStorePendingEvictions == null) {
+			return 0;
+		}
+
+		long pendingBytes = 0;
+		Iterator<Map.Entry<File, Long>> iterator = fileStorePendingEvictions.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<File, Long> pendingEviction = iterator.next();
+			if (pendingEviction.getKey().exists()) {
+				pendingBytes += pendingEviction.getValue();
+			} else {
+				iterator.remove();
+			}
+		}
+		if (fileStorePendingEvictions.isEmpty()) {
+			pendingEvictions.remove(fileStore);
+		}
+		return pendingBytes;
+	}
+
+	/**
+	 * A played file waiting to be added to the index.
+	 */
+	private static class PlayedFile {
+		private final File file;
+		private final long lastPlayedMillis;
+		private final Path root;
+		private final boolean hasQuota;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param file the played file
+		 * @param lastPlayedMillis the time at which the file finished playing
+		 * @param root the auto delete folder holding the file, can be null
+		 * @param hasQuota true, if a quota has been configured for the folder
+		 */
+		public PlayedFile(File file, long lastPlayedMillis, Path root, boolean hasQuota) {
+			this.file = file;
+			this.lastPlayedMillis = lastPlayedMillis;
+			this.root = root;
+			this.hasQuota = hasQuota;
+		}
+	}
+}
@@ -0,0 +1,469 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the played files which are kept until the disk holding them runs low on free space, or until the quota of
+ * the auto delete folder holding them is exceeded.<br>
+ * The files are grouped by {@link FileStore} and by auto delete folder, so that the files to evict from a disk or a
+ * folder can be picked without looking at the other files, nor scanning the library. The size of the files of each
+ * folder is updated every time a file is added or removed. Files being played are never evicted. The index can be
+ * saved to and loaded from a file to survive restarts.
+ */
+public class PlayedFileIndex {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PlayedFileIndex.class);
+
+	private static final double BYTES_PER_MB = 1024 * 1024;
+	private static final double MILLIS_PER_HOUR = 3600000;
+
+	/** Entries by absolute file path. */
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	/** Entries by file store. */
+	private final Map<FileStore, Map<String, Entry>> entriesByFileStore = new HashMap<FileStore, Map<String, Entry>>();
+
+	/** Entries by auto delete folder. Files which aren't part of an auto delete folder aren't grouped. */
+	private final Map<Path, Map<String, Entry>> entriesByRoot = new HashMap<Path, Map<String, Entry>>();
+
+	/** Total size in bytes of the files of each auto delete folder. */
+	private final Map<Path, Long> usageByRoot = new HashMap<Path, Long>();
+
+	/** True once the entries saved at the last shutdown have been loaded. */
+	private volatile boolean loaded;
+
+	/** Number of sessions playing a file, by absolute file path. Only files which are part of the index are counted. */
+	private final Map<String, Integer> playingCounts = new HashMap<String, Integer>();
+
+	/**
+	 * Adds a played file, or updates its play time if it is already part of the index.
+	 *
+	 * @param file the played file
+	 * @param lastPlayedMillis the time at which the file finished playing
+	 * @param root the auto delete folder holding the file, can be null
+	 * @throws IOException Signals that the file store of the file couldn't be determined, e.g. because the file doesn't exist anymore.
+	 */
+	public void add(File file, long lastPlayedMillis, Path root) throws IOException {
+		Path path = file.toPath().toAbsolutePath();
+		FileStore fileStore = Files.getFileStore(path);
+		long size = Files.size(path);
+		put(new Entry(path.toString(), fileStore, root, size, lastPlayedMillis));
+	}
+
+	/**
+	 * Removes a file, e.g. once its deletion has been submitted.
+	 *
+	 * @param file the file
+	 */
+	public synchronized void remove(File file) {
+		String filePath = file.getAbsolutePath();
+		removeEntry(entries.get(filePath));
+		playingCounts.remove(filePath);
+	}
+
+	/**
+	 * Marks a file as being played or not. A file being played is never evicted.
+	 *
+	 * @param file the file
+	 * @param playing true, if a session started playing the file; false, if a session stopped playing it
+	 */
+	public synchronized void setPlaying(File file, boolean playing) {
+		String filePath = file.getAbsolutePath();
+		if (!entries.containsKey(filePath)) {
+			return;
+		}
+
+		Integer count = playingCounts.get(filePath);
+		int newCount = (count == null ? 0 : count) + (playing ? 1 : -1);
+		if (newCount > 0) {
+			playingCounts.put(filePath, newCount);
+		} else {
+			playingCounts.remove(filePath);
+		}
+	}
+
+	/**
+	 * Gets the number of files in the index.
+	 *
+	 * @return the number of files
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Gets the file stores holding at least one file of the index.
+	 *
+	 * @return the file stores
+	 */
+	public synchronized List<FileStore> getFileStores() {
+		return new ArrayList<FileStore>(entriesByFileStore.keySet());
+	}
+
+	/**
+	 * Gets the total size of the files of an auto delete folder.
+	 *
+	 * @param root the auto delete folder
+	 * @return the size in bytes
+	 */
+	public synchronized long getUsageBytes(Path root) {
+		Long usageBytes = usageByRoot.get(root);
+		return usageBytes == null ? 0 : usageBytes;
+	}
+
+	/**
+	 * Gets a value indicating if the entries saved at the last shutdown have been loaded. Until then, the usage of the
+	 * auto delete folders is incomplete.
+	 *
+	 * @return true, if the entries have been loaded
+	 */
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * Assigns the files to the auto delete folders holding them, after the folders have been changed.
+	 *
+	 * @param folderMatcher the matcher of the auto delete folders
+	 */
+	public void assignRoots(FolderMatcher folderMatcher) {
+		List<Entry> currentEntries;
+		synchronized (this) {
+			currentEntries = new ArrayList<Entry>(entries.values());
+		}
+
+		// Resolving the folders touches the file system, do it outside the lock
+		for (Entry entry : currentEntries) {
+			Path root = folderMatcher.findRoot(new File(entry.filePath));
+			if (root == null ? entry.root != null : !root.equals(entry.root)) {
+				replace(entry, new Entry(entry.filePath, entry.fileStore, root, entry.size, entry.lastPlayedMillis));
+			}
+		}
+	}
+
+	/**
+	 * Gets the files to evict from an auto delete folder to reclaim the given number of bytes, the ones played the
+	 * longest time ago first. Files being played are skipped. The files stay part of the index until they are removed
+	 * with {@link #remove(File)}.
+	 *
+	 * @param root the auto delete folder exceeding its quota
+	 * @param bytesToReclaim the number of bytes to reclaim
+	 * @return the files to delete
+	 */
+	public List<File> getEvictionCandidates(Path root, long bytesToReclaim) {
+		List<Entry> candidates;
+		synchronized (this) {
+			candidates = getNotPlayingEntries(entriesByRoot.get(root));
+		}
+		return selectEvictionCandidates(candidates, EvictionPriority.OLDEST_PLAYED, bytesToReclaim);
+	}
+
+	/**
+	 * Gets the files to evict from a file store to reclaim the given number of bytes, in the order defined by the
+	 * priority. Files being played are skipped. Fewer bytes are reclaimed if the file store doesn't hold enough files.
+	 * The files stay part of the index until they are removed with {@link #remove(File)}.
+	 *
+	 * @param fileStore the file store running low on free space
+	 * @param priority the order in which files are evicted
+	 * @param bytesToReclaim the number of bytes to reclaim
+	 * @return the files to delete
+	 */
+	public List<File> getEvictionCandidates(FileStore fileStore, EvictionPriority priority, long bytesToReclaim) {
+		List<Entry> candidates;
+		synchronized (this) {
+			candidates = getNotPlayingEntries(entriesByFileStore.get(fileStore));
+		}
+		return selectEvictionCandidates(candidates, priority, bytesToReclaim);
+	}
+
+	/**
+	 * Gets the entries of files which aren't being played. Has to be called while holding the lock on this instance.
+	 *
+	 * @param groupEntries the entries of a file store or an auto delete folder, can be null
+	 * @return the entries
+	 */
+	private List<Entry> getNotPlayingEntries(Map<String, Entry> groupEntries) {
+		List<Entry> notPlayingEntries = new ArrayList<Entry>();
+		if (groupEntries != null) {
+			for (Entry entry : groupEntries.values()) {
+				if (!playingCounts.containsKey(entry.filePath)) {
+					notPlayingEntries.add(entry);
+				}
+			}
+		}
+		return notPlayingEntries;
+	}
+
+	/**
+	 * Picks the files to evict to reclaim the given number of bytes, in the order defined by the priority.
+	 *
+	 * @param candidates the entries which can be evicted
+	 * @param priority the order in which files are evicted
+	 * @param bytesToReclaim the number of bytes to reclaim
+	 * @return the files to delete
+	 */
+	private static List<File> selectEvictionCandidates(List<Entry> candidates, EvictionPriority priority, long bytesToReclaim) {
+		// Sort outside the lock. As the weighted score depends on the current time, it can't be kept in a sorted structure
+		Collections.sort(candidates, getComparator(priority, System.currentTimeMillis()));
+
+		List<File> evictionCandidates = new ArrayList<File>();
+		long reclaimedBytes = 0;
+		for (Entry candidate : candidates) {
+			if (reclaimedBytes >= bytesToReclaim) {
+				break;
+			}
+			evictionCandidates.add(new File(candidate.filePath));
+			reclaimedBytes += candidate.size;
+		}
+		return evictionCandidates;
+	}
+
+	/**
+	 * Loads the entries saved by {@link #save(Path)}. Files which don't exist anymore are ignored. The size of each file
+	 * is read again, so this should be done in the background for large indexes.
+	 *
+	 * @param file the file to load the entries from
+	 * @param folderMatcher the matcher of the auto delete folders holding the files
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void load(Path file, FolderMatcher folderMatcher) throws IOException {
+		if (!Files.exists(file)) {
+			loaded = true;
+			return;
+		}
+
+		Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(file)) {
+			properties.load(in);
+		}
+
+		// Most files share their folder with others; only look up the file store once per folder
+		Map<Path, FileStore> fileStoresByFolder = new HashMap<Path, FileStore>();
+		int loadedCount = 0;
+		for (String filePath : properties.stringPropertyNames()) {
+			try {
+				long lastPlayedMillis = Long.parseLong(properties.getProperty(filePath));
+				Path path = new File(filePath).toPath();
+				Path folder = path.getParent();
+				FileStore fileStore = fileStoresByFolder.get(folder);
+				if (fileStore == null) {
+					fileStore = Files.getFileStore(folder);
+					fileStoresByFolder.put(folder, fileStore);
+				}
+				long size = Files.size(path);
+				Entry entry = new Entry(filePath, fileStore, folderMatcher.findRoot(path.toFile()), size, lastPlayedMillis);
+				synchronized (this) {
+					// Don't overwrite a file which has been played again since UMS started
+					if (!entries.containsKey(filePath)) {
+						put(entry);
+						loadedCount++;
+					}
+				}
+			} catch (NumberFormatException ex) {
+				LOGGER.debug(String.format("Ignored invalid played file entry '%s'", filePath));
+			} catch (IOException ex) {
+				LOGGER.debug(String.format("Ignored played file '%s' which doesn't exist anymore", filePath));
+			}
+		}
+		loaded = true;
+		LOGGER.debug(String.format("Loaded %s played files from '%s'", loadedCount, file));
+	}
+
+	/**
+	 * Saves the entries to a file.
+	 *
+	 * @param file the file to save the entries to
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void save(Path file) throws IOException {
+		Properties properties = new Properties();
+		synchronized (this) {
+			for (Entry entry : entries.values()) {
+				properties.setProperty(entry.filePath, Long.toString(entry.lastPlayedMillis));
+			}
+		}
+
+		Path tempFile = AtomicFiles.createTempFile(file);
+		try {
+			try (FileOutputStream out = new FileOutputStream(tempFile.toFile())) {
+				properties.store(out, "Last played time of the played files kept until the disk runs low on free space");
+				out.getFD().sync();
+			}
+			AtomicFiles.commit(tempFile, file);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+		LOGGER.debug(String.format("Saved %s played files to '%s'", properties.size(), file));
+	}
+
+	/**
+	 * Adds an entry, replacing the one of the same file.
+	 *
+	 * @param entry the entry
+	 */
+	private synchronized void put(Entry entry) {
+		removeEntry(entries.get(entry.filePath));
+		entries.put(entry.filePath, entry);
+		addToGroup(entriesByFileStore, entry.fileStore, entry);
+		if (entry.root != null) {
+			addToGroup(entriesByRoot, entry.root, entry);
+			usageByRoot.put(entry.root, getUsageBytes(entry.root) + entry.size);
+		}
+	}
+
+	/**
+	 * Replaces an entry, unless it has been replaced or removed in the meantime.
+	 *
+	 * @param entry the current entry
+	 * @param newEntry the new entry
+	 */
+	private synchronized void replace(Entry entry, Entry newEntry) {
+		if (entries.get(entry.filePath) == entry) {
+			put(newEntry);
+		}
+	}
+
+	/**
+	 * Removes an entry. Has to be called while holding the lock on this instance.
+	 *
+	 * @param entry the entry, can be null
+	 */
+	private void removeEntry(Entry entry) {
+		if (entry == null) {
+			return;
+		}
+		entries.remove(entry.filePath);
+		removeFromGroup(entriesByFileStore, entry.fileStore, entry);
+		if (entry.root != null) {
+			removeFromGroup(entriesByRoot, entry.root, entry);
+			long usageBytes = getUsageBytes(entry.root) - entry.size;
+			if (usageBytes > 0) {
+				usageByRoot.put(entry.root, usageBytes);
+			} else {
+				usageByRoot.remove(entry.root);
+			}
+		}
+	}
+
+	/**
+	 * Adds an entry to a group of entries. Has to be called while holding the lock on this instance.
+	 *
+	 * @param groups the groups of entries
+	 * @param key the key of the group
+	 * @param entry the entry
+	 */
+	private static <K> void addToGroup(Map<K, Map<String, Entry>> groups, K key, Entry entry) {
+		Map<String, Entry> groupEntries = groups.get(key);
+		if (groupEntries == null) {
+			groupEntries = new HashMap<String, Entry>();
+			groups.put(key, groupEntries);
+		}
+		groupEntries.put(entry.filePath, entry);
+	}
+
+	/**
+	 * Removes an entry from a group of entries. Empty groups are removed. Has to be called while holding the lock on
+	 * this instance.
+	 *
+	 * @param groups the groups of entries
+	 * @param key the key of the group
+	 * @param entry the entry
+	 */
+	private static <K> void removeFromGroup(Map<K, Map<String, Entry>> groups, K key, Entry entry) {
+		Map<String, Entry> groupEntries = groups.get(key);
+		groupEntries.remove(entry.filePath);
+		if (groupEntries.isEmpty()) {
+			groups.remove(key);
+		}
+	}
+
+	/**
+	 * Gets the comparator sorting the entries in the order in which they are evicted.
+	 *
+	 * @param priority the eviction priority
+	 * @param now the current time in milliseconds
+	 * @return the comparator
+	 */
+	private static Comparator<Entry> getComparator(EvictionPriority priority, final long now) {
+		switch (priority) {
+		case LARGEST:
+			return new Comparator<Entry>() {
+
+				@Override
+				public int compare(Entry entry1, Entry entry2) {
+					return Long.compare(entry2.size, entry1.size);
+				}
+			};
+		case WEIGHTED:
+			return new Comparator<Entry>() {
+
+				@Override
+				public int compare(Entry entry1, Entry entry2) {
+					return Double.compare(entry2.getScore(now), entry1.getScore(now));
+				}
+			};
+		default:
+			return new Comparator<Entry>() {
+
+				@Override
+				public int compare(Entry entry1, Entry entry2) {
+					return Long.compare(entry1.lastPlayedMillis, entry2.lastPlayedMillis);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Played file kept until its disk runs low on free space.
+	 */
+	private static class Entry {
+		private final String filePath;
+		private final FileStore fileStore;
+		private final Path root;
+		private final long size;
+		private final long lastPlayedMillis;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param filePath the absolute file path
+		 * @param fileStore the file store holding the file
+		 * @param root the auto delete folder holding the file, can be null
+		 * @param size the size of the file in bytes
+		 * @param lastPlayedMillis the time at which the file finished playing
+		 */
+		public Entry(String filePath, FileStore fileStore, Path root, long size, long lastPlayedMillis) {
+			this.filePath = filePath;
+			this.fileStore = fileStore;
+			this.root = root;
+			this.size = size;
+			this.lastPlayedMillis = lastPlayedMillis;
+		}
+
+		/**
+		 * Gets the weighted score of the file: the size in MB multiplied by 1 + the hours since the file has been played.
+		 * Large files which haven't been played for long have the highest score.
+		 *
+		 * @param now the current time in milliseconds
+		 * @return the score
+		 */
+		public double getScore(long now) {
+			return (size / BYTES_PER_MB) * (1 + Math.max(0, now - lastPlayedMillis) / MILLIS_PER_HOUR);
+		}
+	}
+}
@@ -1,11 +1,17 @@
 package github.com.taconaut.plugin.autodeleteafterplay;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Properties;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
@@ -20,14 +26,113 @@ public class PluginConfiguration {
 	private static final Logger LOGGER = LoggerFactory.getLogger(PluginConfiguration.class);
 
 	private final Properties properties = new Properties();
-	private final String configurationFilePath = Paths.get(PMS.getConfiguration().getProfileDirectory(), "plugins", "AutoDeleteFileAfterPlay", "configuration.properties").toString();
+	private final String configurationFilePath;
 
-	private static final String KEY_PERCENT_PLAY_REQUIRED = "percentPlayedRequired";
-	private static final String KEY_AUTO_DELETE_FOLDER_PATHS = "autoDeleteFolderPaths";
-	private static final String KEY_MOVE_TO_RECYCLEBIN = "moveToRecycleBin";
-	private static final String KEY_DELETE_VIDEO = "isDeleteVideo";
-	private static final String KEY_DELETE_AUDIO = "isDeleteAudio";
-	private static final String KEY_DELETE_IMAGE = "isDeleteImage";
+	static final String KEY_PERCENT_PLAY_REQUIRED = "percentPlayedRequired";
+	static final String KEY_AUTO_DELETE_FOLDER_PATHS = "autoDeleteFolderPaths";
+	static final String KEY_MOVE_TO_RECYCLEBIN = "moveToRecycleBin";
+	static final String KEY_DELETE_VIDEO = "isDeleteVideo";
+	static final String KEY_DELETE_AUDIO = "isDeleteAudio";
+	static final String KEY_DELETE_IMAGE = "isDeleteImage";
+	static final String KEY_WATCH_CONFIGURATION_FILE = "watchConfigurationFile";
+	static final String KEY_DELETE_GRACE_PERIOD_SECONDS = "deleteGracePeriodSeconds";
+	static final String KEY_ACCUMULATE_PLAY_TIME = "accumulatePlayTime";
+	static final String KEY_ACCUMULATE_PLAY_TIME_ACROSS_RENDERERS = "accumulatePlayTimeAcrossRenderers";
+	static final String KEY_PLAY_TIME_RETENTION_HOURS = "playTimeRetentionHours";
+	static final String KEY_PLAY_TIME_MAX_ENTRIES = "playTimeMaxEntries";
+	static final String KEY_METRICS_FILE_PATH = "metricsFilePath";
+	static final String KEY_DELETION_STRATEGY = "deletionStrategy";
+	static final String KEY_DELETE_SIDECARS = "deleteSidecars";
+	static final String KEY_SIDECAR_EXTENSIONS = "sidecarExtensions";
+	static final String KEY_PRUNE_EMPTY_FOLDERS = "pruneEmptyFolders";
+	static final String KEY_DELETION_MODE = "deletionMode";
+	static final String KEY_EVICTION_PRIORITY = "evictionPriority";
+	static final String KEY_EVICTION_MIN_FREE_PERCENT = "evictionMinFreePercent";
+	static final String KEY_EVICTION_TARGET_FREE_PERCENT = "evictionTargetFreePercent";
+	static final String KEY_THROTTLE_LARGE_DELETIONS = "throttleLargeDeletions";
+	static final String KEY_THROTTLE_THRESHOLD_MB = "throttleThresholdMB";
+	static final String KEY_THROTTLE_CHUNK_MB = "throttleChunkMB";
+	static final String KEY_THROTTLE_MB_PER_SECOND = "throttleMBPerSecond";
+	static final String KEY_THROTTLE_OPS_PER_SECOND = "throttleOpsPerSecond";
+	static final String KEY_RENDERER_POLICIES = "rendererPolicies";
+	static final String KEY_DELETION_RULES = "deletionRules";
+	static final String KEY_DEFER_DELETIONS = "deferDeletions";
+	static final String KEY_DELETION_WINDOW = "deletionWindow";
+	static final String KEY_MAX_DELETION_DELAY_HOURS = "maxDeletionDelayHours";
+	static final String KEY_SESSION_TIMEOUT_HOURS = "sessionTimeoutHours";
+	static final String KEY_MAX_SESSIONS = "maxSessions";
+	static final String KEY_SECURE_ERASE = "secureErase";
+	static final String KEY_SECURE_ERASE_PASSES = "secureErasePasses";
+	static final String KEY_SECURE_ERASE_MB_PER_SECOND = "secureEraseMBPerSecond";
+	static final String KEY_SECURE_ERASE_BUFFER_MB = "secureEraseBufferMB";
+	static final String KEY_REFRESH_FOLDERS_AFTER_DELETE = "refreshFoldersAfterDelete";
+
+	static final int DEFAULT_PERCENT_PLAY_REQUIRED = 80;
+	static final String DEFAULT_AUTO_DELETE_FOLDER_PATHS = "";
+	static final boolean DEFAULT_MOVE_TO_RECYCLEBIN = true;
+	static final boolean DEFAULT_DELETE_VIDEO = true;
+	static final boolean DEFAULT_DELETE_AUDIO = false;
+	static final boolean DEFAULT_DELETE_IMAGE = false;
+	static final boolean DEFAULT_WATCH_CONFIGURATION_FILE = true;
+	static final int DEFAULT_DELETE_GRACE_PERIOD_SECONDS = 0;
+	static final boolean DEFAULT_ACCUMULATE_PLAY_TIME = false;
+	static final boolean DEFAULT_ACCUMULATE_PLAY_TIME_ACROSS_RENDERERS = false;
+	static final int DEFAULT_PLAY_TIME_RETENTION_HOURS = 168;
+	static final int DEFAULT_PLAY_TIME_MAX_ENTRIES = 10000;
+	static final String DEFAULT_METRICS_FILE_PATH = "";
+	static final DeletionStrategyType DEFAULT_DELETION_STRATEGY = DeletionStrategyType.AUTO;
+	static final boolean DEFAULT_DELETE_SIDECARS = false;
+	static final String DEFAULT_SIDECAR_EXTENSIONS = "srt;ass;ssa;sub;idx;vtt;nfo;jpg;jpeg;png;tbn";
+	static final boolean DEFAULT_PRUNE_EMPTY_FOLDERS = false;
+	static final DeletionMode DEFAULT_DELETION_MODE = DeletionMode.IMMEDIATE;
+	static final EvictionPriority DEFAULT_EVICTION_PRIORITY = EvictionPriority.OLDEST_PLAYED;
+	static final int DEFAULT_EVICTION_MIN_FREE_PERCENT = 10;
+	static final int DEFAULT_EVICTION_TARGET_FREE_PERCENT = 15;
+	static final boolean DEFAULT_THROTTLE_LARGE_DELETIONS = false;
+	static final int DEFAULT_THROTTLE_THRESHOLD_MB = 10240;
+	static final int DEFAULT_THROTTLE_CHUNK_MB = 256;
+	static final int DEFAULT_THROTTLE_MB_PER_SECOND = 512;
+	static final int DEFAULT_THROTTLE_OPS_PER_SECOND = 4;
+	static final String DEFAULT_RENDERER_POLICIES = "";
+	static final String DEFAULT_DELETION_RULES = "";
+	static final DeletionDeferral DEFAULT_DEFER_DELETIONS = DeletionDeferral.NONE;
+	static final String DEFAULT_DELETION_WINDOW = "";
+	static final int DEFAULT_MAX_DELETION_DELAY_HOURS = 24;
+	static final int DEFAULT_SESSION_TIMEOUT_HOURS = 12;
+	static final int DEFAULT_MAX_SESSIONS = 1000;
+	static final boolean DEFAULT_SECURE_ERASE = false;
+	static final int DEFAULT_SECURE_ERASE_PASSES = 1;
+	static final int DEFAULT_SECURE_ERASE_MB_PER_SECOND = 256;
+	static final int DEFAULT_SECURE_ERASE_BUFFER_MB = 8;
+	static final boolean DEFAULT_REFRESH_FOLDERS_AFTER_DELETE = true;
+
+	/** Largest secure erase buffer, so that its size in bytes fits in a direct buffer. */
+	static final int MAX_SECURE_ERASE_BUFFER_MB = 1024;
+
+	/** Lock making sure only one save writes to the disk at a time. */
+	private final Object saveLock = new Object();
+
+	/** Content of the configuration file as last saved, to tell our own saves from changes made by others. */
+	private volatile byte[] lastSavedContent;
+
+	/** Parsed configuration, replaced as a whole every time a value changes. */
+	private volatile ConfigurationSnapshot snapshot = new ConfigurationSnapshot(this, null);
+
+	/**
+	 * The Constructor. The configuration file is located in the UMS profile directory.
+	 */
+	public PluginConfiguration() {
+		this(Paths.get(PMS.getConfiguration().getProfileDirectory(), "plugins", "AutoDeleteFileAfterPlay", "configuration.properties").toString());
+	}
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param configurationFilePath the configuration file path
+	 */
+	public PluginConfiguration(String configurationFilePath) {
+		this.configurationFilePath = configurationFilePath;
+	}
 
 	/**
 	 * Gets the configuration file path.
@@ -39,61 +144,133 @@ public class PluginConfiguration {
 	}
 
 	/**
-	 * Saves the properties to the specified file path.<br>
-	 * Sub-directories will be created automatically if needed
+	 * Saves the properties to the configuration file.<br>
+	 * Sub-directories will be created automatically if needed. The properties are written to a temporary file which
+	 * then replaces the configuration file, so that it never is left half-written.
 	 *
-	 * @param propertiesFilePath the save file path
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
 	public void save() throws IOException {
-		LOGGER.debug(String.format("Saving configuration to '%s'", getConfigurationFilePath()));
-
-		// make sure the save directory exists
-		File saveFile = new File(getConfigurationFilePath());
-		File saveDir = new File(saveFile.getParent());
-		if (!saveDir.isDirectory()) {
-			LOGGER.debug(String.format("The directory '%s' to store the plugin configuration doesn't exist. Create it!", saveDir));
-			saveDir.mkdirs();
-			LOGGER.info(String.format("Created directory '%s' to store the plugin configuration.", saveDir));
-		}
+		synchronized (saveLock) {
+			LOGGER.debug(String.format("Saving configuration to '%s'", getConfigurationFilePath()));
 
-		FileOutputStream configStream = new FileOutputStream(getConfigurationFilePath());
-		properties.store(configStream, "");
+			// Write a copy to not block changes while writing to the disk
+			Properties savedProperties = (Properties) properties.clone();
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			savedProperties.store(content, "");
+			byte[] savedContent = content.toByteArray();
 
-		LOGGER.debug(String.format("Saved configuration to '%s'", getConfigurationFilePath()));
+			Path saveFile = Paths.get(getConfigurationFilePath());
+			Path tempFile = AtomicFiles.createTempFile(saveFile);
+			try {
+				try (FileOutputStream configStream = new FileOutputStream(tempFile.toFile())) {
+					configStream.write(savedContent);
+					configStream.getFD().sync();
+				}
+				// Set before the file is replaced, as the watcher may look at it right away
+				lastSavedContent = savedContent;
+				AtomicFiles.commit(tempFile, saveFile);
+			} finally {
+				Files.deleteIfExists(tempFile);
+			}
+
+			LOGGER.debug(String.format("Saved configuration to '%s'", getConfigurationFilePath()));
+		}
 	}
 
 	/**
-	 * Saves the properties to the specified file path.
+	 * Loads the properties from the configuration file. Values which aren't part of the file keep their current value.
 	 *
-	 * @param propertiesFilePath the file to load the properties from
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
 	public void load() throws IOException {
 		if (new File(getConfigurationFilePath()).exists()) {
 			LOGGER.debug(String.format("Restoring configuration from '%s'", getConfigurationFilePath()));
-			FileInputStream configStream = new FileInputStream(getConfigurationFilePath());
-			properties.load(configStream);
+			try (FileInputStream configStream = new FileInputStream(getConfigurationFilePath())) {
+				synchronized (this) {
+					properties.load(configStream);
+					publishCompiledSnapshot();
+				}
+			}
 			LOGGER.info(String.format("Loaded configuration from '%s'", getConfigurationFilePath()));
 		} else {
 			LOGGER.info(String.format("The plugin configuration could not be loaded. No configuration file found at '%s'", getConfigurationFilePath()));
 		}
 	}
 
+	/**
+	 * Reloads the properties from the configuration file. Contrary to {@link #load()}, values which aren't part of the
+	 * file anymore are reset to their default value. The new configuration is published at once.<br>
+	 * The file isn't reloaded if it is the one last written by {@link #save()}: the values changed since it has been
+	 * saved would otherwise be lost.
+	 *
+	 * @return true, if the configuration has been reloaded; false if the file has last been written by this instance
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public boolean reload() throws IOException {
+		byte[] content = Files.readAllBytes(Paths.get(getConfigurationFilePath()));
+		if (Arrays.equals(content, lastSavedContent)) {
+			LOGGER.debug(String.format("The configuration file '%s' has been saved by the plugin and won't be reloaded", getConfigurationFilePath()));
+			return false;
+		}
+
+		Properties reloadedProperties = new Properties();
+		reloadedProperties.load(new ByteArrayInputStream(content));
+
+		synchronized (this) {
+			properties.clear();
+			properties.putAll(reloadedProperties);
+			publishCompiledSnapshot();
+		}
+		LOGGER.info(String.format("Reloaded configuration from '%s'", getConfigurationFilePath()));
+		return true;
+	}
+
+	/**
+	 * Gets the parsed configuration. The returned snapshot never changes; a new one is published every time the
+	 * configuration changes.
+	 *
+	 * @return the configuration snapshot
+	 */
+	public ConfigurationSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Parses the properties and publishes them as a new snapshot. Has to be called while holding the lock on this
+	 * instance.
+	 */
+	private void publishSnapshot() {
+		snapshot = new ConfigurationSnapshot(this, snapshot);
+	}
+
+	/**
+	 * Parses the properties and publishes them as a new snapshot, once its auto delete folders and deletion rules have
+	 * been compiled. Used when the configuration file is loaded, as this happens on the startup or watcher thread
+	 * rather than on the one of the configuration panel. Has to be called while holding the lock on this instance.
+	 */
+	private void publishCompiledSnapshot() {
+		ConfigurationSnapshot compiledSnapshot = new ConfigurationSnapshot(this, snapshot);
+		compiledSnapshot.compile();
+		snapshot = compiledSnapshot;
+	}
+
 	/**
 	 * Sets the value for the given key.
 	 *
 	 * @param key the key
 	 * @param value the value
 	 */
-	protected void setValue(String key, Object value) {
+	protected synchronized void setValue(String key, Object value) {
 		if (key != null && value != null) {
 			properties.put(key, value.toString());
+			publishSnapshot();
 		}
 	}
 
 	/**
-	 * Gets the value of type T for the given key. If no value can be found, the default value will be returned
+	 * Gets the value of type T for the given key. If no value can be found or if it can't be parsed, the default value
+	 * will be returned
 	 *
 	 * @param <T> the generic type. Supported types are String, Integer, Boolean, Enum
 	 * @param key the key
@@ -104,14 +281,18 @@ public class PluginConfiguration {
 	protected <T> T getValue(String key, T defaultValue) {
 		Object value = properties.get(key);
 		if (value != null && defaultValue != null) {
-			if (defaultValue instanceof Integer) {
-				return (T) (Integer) Integer.parseInt(value.toString());
-			} else if (defaultValue instanceof Boolean) {
-				return (T) (Boolean) Boolean.parseBoolean(value.toString());
-			} else if (defaultValue instanceof Enum) {
-				return (T) Enum.valueOf((Class) defaultValue.getClass(), value.toString());
-			} else if (defaultValue.getClass().isAssignableFrom(value.getClass())) {
-				return (T) value;
+			try {
+				if (defaultValue instanceof Integer) {
+					return (T) (Integer) Integer.parseInt(value.toString().trim());
+				} else if (defaultValue instanceof Boolean) {
+					return (T) (Boolean) Boolean.parseBoolean(value.toString().trim());
+				} else if (defaultValue instanceof Enum) {
+					return (T) Enum.valueOf(((Enum) defaultValue).getDeclaringClass(), value.toString().trim());
+				} else if (defaultValue.getClass().isAssignableFrom(value.getClass())) {
+					return (T) value;
+				}
+			} catch (IllegalArgumentException ex) {
+				LOGGER.warn(String.format("The value '%s' of '%s' is invalid. The default value '%s' will be used", value, key, defaultValue));
 			}
 		}
 		return defaultValue;
@@ -123,7 +304,7 @@ public class PluginConfiguration {
 	 * @return the percent played required
 	 */
 	public int getPercentPlayedRequired() {
-		return getValue(KEY_PERCENT_PLAY_REQUIRED, 80);
+		return snapshot.getPercentPlayedRequired();
 	}
 
 	/**
@@ -141,8 +322,7 @@ public class PluginConfiguration {
 	 * @return the auto delete folder paths
 	 */
 	public String[] getAutoDeleteFolderPaths() {
-		String autoDeleteFolderPathsString = getValue(KEY_AUTO_DELETE_FOLDER_PATHS, "");
-		return autoDeleteFolderPathsString.split(";");
+		return snapshot.getAutoDeleteFolderPaths();
 	}
 
 	/**
@@ -154,13 +334,23 @@ public class PluginConfiguration {
 		setValue(KEY_AUTO_DELETE_FOLDER_PATHS, StringUtils.join(autoDeleteFolderPaths, ";"));
 	}
 
+	/**
+	 * Gets the matcher used to check if a file is part of the folders in which files get automatically deleted. It is
+	 * compiled once and reused until the folders change.
+	 *
+	 * @return the auto delete folder matcher
+	 */
+	public FolderMatcher getAutoDeleteFolderMatcher() {
+		return snapshot.getAutoDeleteFolderMatcher();
+	}
+
 	/**
 	 * Gets a value indicating if the file should be moved to the recycle bin.
 	 *
 	 * return true, if a deleted file should be moved to the recycle bin
 	 */
 	public boolean isMoveToRecycleBin() {
-		return getValue(KEY_MOVE_TO_RECYCLEBIN, true);
+		return snapshot.isMoveToRecycleBin();
 	}
 
 	/**
@@ -178,7 +368,7 @@ public class PluginConfiguration {
 	 * @return true, if video files should be deleted
 	 */
 	public boolean isDeleteVideo() {
-		return getValue(KEY_DELETE_VIDEO, true);
+		return snapshot.isDeleteVideo();
 	}
 
 	/**
@@ -196,7 +386,7 @@ public class PluginConfiguration {
 	 * @return true, if audio files should be deleted
 	 */
 	public boolean isDeleteAudio() {
-		return getValue(KEY_DELETE_AUDIO, false);
+		return snapshot.isDeleteAudio();
 	}
 
 	/**
@@ -214,7 +404,7 @@ public class PluginConfiguration {
 	 * @return true, if image files should be deleted
 	 */
 	public boolean isDeleteImage() {
-		return getValue(KEY_DELETE_IMAGE, false);
+		return snapshot.isDeleteImage();
 	}
 
 	/**
@@ -225,4 +415,580 @@ public class PluginConfiguration {
 	public void setDeleteImage(boolean isDeleteImage) {
 		setValue(KEY_DELETE_IMAGE, isDeleteImage);
 	}
+
+	/**
+	 * Gets a value indicating if the configuration file should be watched for changes and reloaded automatically.
+	 *
+	 * @return true, if the configuration file should be watched
+	 */
+	public boolean isWatchConfigurationFile() {
+		return snapshot.isWatchConfigurationFile();
+	}
+
+	/**
+	 * Sets a value indicating if the configuration file should be watched for changes and reloaded automatically.
+	 *
+	 * @param isWatchConfigurationFile true, if the configuration file should be watched; otherwise false
+	 */
+	public void setWatchConfigurationFile(boolean isWatchConfigurationFile) {
+		setValue(KEY_WATCH_CONFIGURATION_FILE, isWatchConfigurationFile);
+	}
+
+	/**
+	 * Gets the number of seconds to wait before deleting a file which has been played long enough.
+	 *
+	 * @return the delete grace period in seconds
+	 */
+	public int getDeleteGracePeriodSeconds() {
+		return snapshot.getDeleteGracePeriodSeconds();
+	}
+
+	/**
+	 * Sets the number of seconds to wait before deleting a file which has been played long enough.
+	 *
+	 * @param deleteGracePeriodSeconds the delete grace period in seconds, 0 to delete files right away
+	 */
+	public void setDeleteGracePeriodSeconds(int deleteGracePeriodSeconds) {
+		setValue(KEY_DELETE_GRACE_PERIOD_SECONDS, deleteGracePeriodSeconds);
+	}
+
+	/**
+	 * Gets a value indicating if the play time of all sessions of a file should be added up.
+	 *
+	 * @return true, if the play time should be accumulated
+	 */
+	public boolean isAccumulatePlayTime() {
+		return snapshot.isAccumulatePlayTime();
+	}
+
+	/**
+	 * Sets a value indicating if the play time of all sessions of a file should be added up.
+	 *
+	 * @param accumulatePlayTime true, if the play time should be accumulated; otherwise only the last session counts
+	 */
+	public void setAccumulatePlayTime(boolean accumulatePlayTime) {
+		setValue(KEY_ACCUMULATE_PLAY_TIME, accumulatePlayTime);
+	}
+
+	/**
+	 * Gets a value indicating if the play time of a file should be added up across all renderers.
+	 *
+	 * @return true, if the play time should be accumulated across renderers
+	 */
+	public boolean isAccumulatePlayTimeAcrossRenderers() {
+		return snapshot.isAccumulatePlayTimeAcrossRenderers();
+	}
+
+	/**
+	 * Sets a value indicating if the play time of a file should be added up across all renderers.
+	 *
+	 * @param accumulatePlayTimeAcrossRenderers true, if the play time should be accumulated across renderers; otherwise per renderer
+	 */
+	public void setAccumulatePlayTimeAcrossRenderers(boolean accumulatePlayTimeAcrossRenderers) {
+		setValue(KEY_ACCUMULATE_PLAY_TIME_ACROSS_RENDERERS, accumulatePlayTimeAcrossRenderers);
+	}
+
+	/**
+	 * Gets the number of hours after which the accumulated play time of a file which hasn't been played is forgotten.
+	 *
+	 * @return the play time retention in hours
+	 */
+	public int getPlayTimeRetentionHours() {
+		return snapshot.getPlayTimeRetentionHours();
+	}
+
+	/**
+	 * Sets the number of hours after which the accumulated play time of a file which hasn't been played is forgotten.
+	 *
+	 * @param playTimeRetentionHours the play time retention in hours
+	 */
+	public void setPlayTimeRetentionHours(int playTimeRetentionHours) {
+		setValue(KEY_PLAY_TIME_RETENTION_HOURS, playTimeRetentionHours);
+	}
+
+	/**
+	 * Gets the maximum number of files whose play time is accumulated.
+	 *
+	 * @return the maximum number of entries
+	 */
+	public int getPlayTimeMaxEntries() {
+		return snapshot.getPlayTimeMaxEntries();
+	}
+
+	/**
+	 * Sets the maximum number of files whose play time is accumulated.
+	 *
+	 * @param playTimeMaxEntries the maximum number of entries
+	 */
+	public void setPlayTimeMaxEntries(int playTimeMaxEntries) {
+		setValue(KEY_PLAY_TIME_MAX_ENTRIES, playTimeMaxEntries);
+	}
+
+	/**
+	 * Gets the path of the file to which the metrics are written in the Prometheus text format.
+	 *
+	 * @return the metrics file path, or an empty string if the metrics aren't written to a file
+	 */
+	public String getMetricsFilePath() {
+		return snapshot.getMetricsFilePath();
+	}
+
+	/**
+	 * Sets the path of the file to which the metrics are written in the Prometheus text format.
+	 *
+	 * @param metricsFilePath the metrics file path, or an empty string to not write the metrics to a file
+	 */
+	public void setMetricsFilePath(String metricsFilePath) {
+		setValue(KEY_METRICS_FILE_PATH, metricsFilePath);
+	}
+
+	/**
+	 * Gets the strategy used to permanently delete files.
+	 *
+	 * @return the deletion strategy
+	 */
+	public DeletionStrategyType getDeletionStrategy() {
+		return snapshot.getDeletionStrategy();
+	}
+
+	/**
+	 * Sets the strategy used to permanently delete files.
+	 *
+	 * @param deletionStrategy the deletion strategy
+	 */
+	public void setDeletionStrategy(DeletionStrategyType deletionStrategy) {
+		setValue(KEY_DELETION_STRATEGY, deletionStrategy);
+	}
+
+	/**
+	 * Gets a value indicating if the sidecar files of a deleted file (subtitles, thumbnails, ...) should be deleted as well.
+	 *
+	 * @return true, if sidecar files should be deleted
+	 */
+	public boolean isDeleteSidecars() {
+		return snapshot.isDeleteSidecars();
+	}
+
+	/**
+	 * Sets a value indicating if the sidecar files of a deleted file (subtitles, thumbnails, ...) should be deleted as well.
+	 *
+	 * @param deleteSidecars true, to delete sidecar files
+	 */
+	public void setDeleteSidecars(boolean deleteSidecars) {
+		setValue(KEY_DELETE_SIDECARS, deleteSidecars);
+	}
+
+	/**
+	 * Gets the extensions of the sidecar files.
+	 *
+	 * @return the lower case sidecar extensions, without leading dot
+	 */
+	public Set<String> getSidecarExtensions() {
+		return snapshot.getSidecarExtensions();
+	}
+
+	/**
+	 * Sets the extensions of the sidecar files.
+	 *
+	 * @param sidecarExtensions the sidecar extensions
+	 */
+	public void setSidecarExtensions(String[] sidecarExtensions) {
+		setValue(KEY_SIDECAR_EXTENSIONS, StringUtils.join(sidecarExtensions, ";"));
+	}
+
+	/**
+	 * Gets a value indicating if folders emptied by deletions should be removed.
+	 *
+	 * @return true, if empty folders should be removed
+	 */
+	public boolean isPruneEmptyFolders() {
+		return snapshot.isPruneEmptyFolders();
+	}
+
+	/**
+	 * Sets a value indicating if folders emptied by deletions should be removed.
+	 *
+	 * @param pruneEmptyFolders true, to remove empty folders
+	 */
+	public void setPruneEmptyFolders(boolean pruneEmptyFolders) {
+		setValue(KEY_PRUNE_EMPTY_FOLDERS, pruneEmptyFolders);
+	}
+
+	/**
+	 * Gets when the files which have been played long enough are deleted.
+	 *
+	 * @return the deletion mode
+	 */
+	public DeletionMode getDeletionMode() {
+		return snapshot.getDeletionMode();
+	}
+
+	/**
+	 * Sets when the files which have been played long enough are deleted.
+	 *
+	 * @param deletionMode the deletion mode
+	 */
+	public void setDeletionMode(DeletionMode deletionMode) {
+		setValue(KEY_DELETION_MODE, deletionMode);
+	}
+
+	/**
+	 * Gets the order in which played files are deleted when a disk runs low on free space.
+	 *
+	 * @return the eviction priority
+	 */
+	public EvictionPriority getEvictionPriority() {
+		return snapshot.getEvictionPriority();
+	}
+
+	/**
+	 * Sets the order in which played files are deleted when a disk runs low on free space.
+	 *
+	 * @param evictionPriority the eviction priority
+	 */
+	public void setEvictionPriority(EvictionPriority evictionPriority) {
+		setValue(KEY_EVICTION_PRIORITY, evictionPriority);
+	}
+
+	/**
+	 * Gets the free space in percent below which played files are deleted in disk pressure mode.
+	 *
+	 * @return the min free space in percent
+	 */
+	public int getEvictionMinFreePercent() {
+		return snapshot.getEvictionMinFreePercent();
+	}
+
+	/**
+	 * Sets the free space in percent below which played files are deleted in disk pressure mode.
+	 *
+	 * @param evictionMinFreePercent the min free space in percent
+	 */
+	public void setEvictionMinFreePercent(int evictionMinFreePercent) {
+		setValue(KEY_EVICTION_MIN_FREE_PERCENT, evictionMinFreePercent);
+	}
+
+	/**
+	 * Gets the free space in percent up to which played files are deleted once a disk runs low.
+	 *
+	 * @return the target free space in percent
+	 */
+	public int getEvictionTargetFreePercent() {
+		return snapshot.getEvictionTargetFreePercent();
+	}
+
+	/**
+	 * Sets the free space in percent up to which played files are deleted once a disk runs low.
+	 *
+	 * @param evictionTargetFreePercent the target free space in percent
+	 */
+	public void setEvictionTargetFreePercent(int evictionTargetFreePercent) {
+		setValue(KEY_EVICTION_TARGET_FREE_PERCENT, evictionTargetFreePercent);
+	}
+
+	/**
+	 * Gets a value indicating if large files should be truncated in throttled chunks before being unlinked, not to stall the streams reading from the same disk.
+	 *
+	 * @return true, if the deletion of large files should be throttled
+	 */
+	public boolean isThrottleLargeDeletions() {
+		return snapshot.isThrottleLargeDeletions();
+	}
+
+	/**
+	 * Sets a value indicating if large files should be truncated in throttled chunks before being unlinked, not to stall the streams reading from the same disk.
+	 *
+	 * @param throttleLargeDeletions true, if the deletion of large files should be throttled
+	 */
+	public void setThrottleLargeDeletions(boolean throttleLargeDeletions) {
+		setValue(KEY_THROTTLE_LARGE_DELETIONS, throttleLargeDeletions);
+	}
+
+	/**
+	 * Gets the size in MB from which the deletion of a file is throttled.
+	 *
+	 * @return the throttle threshold in MB
+	 */
+	public int getThrottleThresholdMB() {
+		return snapshot.getThrottleThresholdMB();
+	}
+
+	/**
+	 * Sets the size in MB from which the deletion of a file is throttled.
+	 *
+	 * @param throttleThresholdMB the throttle threshold in MB
+	 */
+	public void setThrottleThresholdMB(int throttleThresholdMB) {
+		setValue(KEY_THROTTLE_THRESHOLD_MB, throttleThresholdMB);
+	}
+
+	/**
+	 * Gets the size in MB by which a large file is truncated in each step of a throttled deletion.
+	 *
+	 * @return the throttle chunk size in MB
+	 */
+	public int getThrottleChunkMB() {
+		return snapshot.getThrottleChunkMB();
+	}
+
+	/**
+	 * Sets the size in MB by which a large file is truncated in each step of a throttled deletion.
+	 *
+	 * @param throttleChunkMB the throttle chunk size in MB
+	 */
+	public void setThrottleChunkMB(int throttleChunkMB) {
+		setValue(KEY_THROTTLE_CHUNK_MB, throttleChunkMB);
+	}
+
+	/**
+	 * Gets the maximum number of MB freed per second by throttled deletions.
+	 *
+	 * @return the throttle rate in MB per second
+	 */
+	public int getThrottleMBPerSecond() {
+		return snapshot.getThrottleMBPerSecond();
+	}
+
+	/**
+	 * Sets the maximum number of MB freed per second by throttled deletions.
+	 *
+	 * @param throttleMBPerSecond the throttle rate in MB per second
+	 */
+	public void setThrottleMBPerSecond(int throttleMBPerSecond) {
+		setValue(KEY_THROTTLE_MB_PER_SECOND, throttleMBPerSecond);
+	}
+
+	/**
+	 * Gets the maximum number of truncate and unlink operations per second done by throttled deletions.
+	 *
+	 * @return the throttle rate in operations per second
+	 */
+	public int getThrottleOpsPerSecond() {
+		return snapshot.getThrottleOpsPerSecond();
+	}
+
+	/**
+	 * Sets the maximum number of truncate and unlink operations per second done by throttled deletions.
+	 *
+	 * @param throttleOpsPerSecond the throttle rate in operations per second
+	 */
+	public void setThrottleOpsPerSecond(int throttleOpsPerSecond) {
+		setValue(KEY_THROTTLE_OPS_PER_SECOND, throttleOpsPerSecond);
+	}
+
+	/**
+	 * Gets the deletion settings overridden per renderer.
+	 *
+	 * @return the renderer policies
+	 */
+	public String getRendererPolicies() {
+		return snapshot.getRendererPolicies();
+	}
+
+	/**
+	 * Sets the deletion settings overridden per renderer.
+	 *
+	 * @param rendererPolicies the renderer policies
+	 */
+	public void setRendererPolicies(String rendererPolicies) {
+		setValue(KEY_RENDERER_POLICIES, rendererPolicies);
+	}
+
+	/**
+	 * Gets the ordered rules deciding if a played file is kept or deleted.
+	 *
+	 * @return the deletion rules
+	 */
+	public String getDeletionRules() {
+		return snapshot.getDeletionRules();
+	}
+
+	/**
+	 * Sets the ordered rules deciding if a played file is kept or deleted.
+	 *
+	 * @param deletionRules the deletion rules
+	 */
+	public void setDeletionRules(String deletionRules) {
+		setValue(KEY_DELETION_RULES, deletionRules);
+	}
+
+	/**
+	 * Gets the deletion deferral, defining until when deletions are held back to not slow down the files being played.
+	 *
+	 * @return the deletion deferral
+	 */
+	public DeletionDeferral getDeletionDeferral() {
+		return snapshot.getDeletionDeferral();
+	}
+
+	/**
+	 * Sets the deletion deferral, defining until when deletions are held back to not slow down the files being played.
+	 *
+	 * @param deletionDeferral the deletion deferral
+	 */
+	public void setDeletionDeferral(DeletionDeferral deletionDeferral) {
+		setValue(KEY_DEFER_DELETIONS, deletionDeferral);
+	}
+
+	/**
+	 * Gets the daily window, of the form HH:mm-HH:mm, during which held back deletions are carried out.
+	 *
+	 * @return the deletion window, or an empty string
+	 */
+	public String getDeletionWindow() {
+		return snapshot.getDeletionWindow();
+	}
+
+	/**
+	 * Sets the daily window, of the form HH:mm-HH:mm, during which held back deletions are carried out.
+	 *
+	 * @param deletionWindow the deletion window
+	 */
+	public void setDeletionWindow(String deletionWindow) {
+		setValue(KEY_DELETION_WINDOW, deletionWindow);
+	}
+
+	/**
+	 * Gets the longest time a deletion can be held back, after which it is carried out even if files are being played.
+	 *
+	 * @return the max deletion delay in hours
+	 */
+	public int getMaxDeletionDelayHours() {
+		return snapshot.getMaxDeletionDelayHours();
+	}
+
+	/**
+	 * Sets the longest time a deletion can be held back, after which it is carried out even if files are being played.
+	 *
+	 * @param maxDeletionDelayHours the max deletion delay in hours
+	 */
+	public void setMaxDeletionDelayHours(int maxDeletionDelayHours) {
+		setValue(KEY_MAX_DELETION_DELAY_HOURS, maxDeletionDelayHours);
+	}
+
+	/**
+	 * Gets the time after which a play session which hasn't been stopped is considered lost, e.g. because its renderer disappeared.
+	 *
+	 * @return the session timeout in hours
+	 */
+	public int getSessionTimeoutHours() {
+		return snapshot.getSessionTimeoutHours();
+	}
+
+	/**
+	 * Sets the time after which a play session which hasn't been stopped is considered lost, e.g. because its renderer disappeared.
+	 *
+	 * @param sessionTimeoutHours the session timeout in hours
+	 */
+	public void setSessionTimeoutHours(int sessionTimeoutHours) {
+		setValue(KEY_SESSION_TIMEOUT_HOURS, sessionTimeoutHours);
+	}
+
+	/**
+	 * Gets the maximum number of play sessions tracked at the same time.
+	 *
+	 * @return the max number of sessions
+	 */
+	public int getMaxSessions() {
+		return snapshot.getMaxSessions();
+	}
+
+	/**
+	 * Sets the maximum number of play sessions tracked at the same time.
+	 *
+	 * @param maxSessions the max number of sessions
+	 */
+	public void setMaxSessions(int maxSessions) {
+		setValue(KEY_MAX_SESSIONS, maxSessions);
+	}
+
+	/**
+	 * Gets a value indicating if permanently deleted files should be overwritten before being unlinked, for them not to be recoverable.
+	 *
+	 * @return true, if files should be securely erased
+	 */
+	public boolean isSecureErase() {
+		return snapshot.isSecureErase();
+	}
+
+	/**
+	 * Sets a value indicating if permanently deleted files should be overwritten before being unlinked, for them not to be recoverable.
+	 *
+	 * @param secureErase true, if files should be securely erased
+	 */
+	public void setSecureErase(boolean secureErase) {
+		setValue(KEY_SECURE_ERASE, secureErase);
+	}
+
+	/**
+	 * Gets the number of times a securely erased file is overwritten.
+	 *
+	 * @return the number of passes
+	 */
+	public int getSecureErasePasses() {
+		return snapshot.getSecureErasePasses();
+	}
+
+	/**
+	 * Sets the number of times a securely erased file is overwritten.
+	 *
+	 * @param secureErasePasses the number of passes
+	 */
+	public void setSecureErasePasses(int secureErasePasses) {
+		setValue(KEY_SECURE_ERASE_PASSES, secureErasePasses);
+	}
+
+	/**
+	 * Gets the maximum number of MB written per second by all secure erasures, 0 for no limit.
+	 *
+	 * @return the secure erase bandwidth in MB/s
+	 */
+	public int getSecureEraseMBPerSecond() {
+		return snapshot.getSecureEraseMBPerSecond();
+	}
+
+	/**
+	 * Sets the maximum number of MB written per second by all secure erasures, 0 for no limit.
+	 *
+	 * @param secureEraseMBPerSecond the secure erase bandwidth in MB/s
+	 */
+	public void setSecureEraseMBPerSecond(int secureEraseMBPerSecond) {
+		setValue(KEY_SECURE_ERASE_MB_PER_SECOND, secureEraseMBPerSecond);
+	}
+
+	/**
+	 * Gets the size in MB of the buffer written at once by a secure erasure.
+	 *
+	 * @return the secure erase buffer size in MB
+	 */
+	public int getSecureEraseBufferMB() {
+		return snapshot.getSecureEraseBufferMB();
+	}
+
+	/**
+	 * Sets the size in MB of the buffer written at once by a secure erasure.
+	 *
+	 * @param secureEraseBufferMB the secure erase buffer size in MB
+	 */
+	public void setSecureEraseBufferMB(int secureEraseBufferMB) {
+		setValue(KEY_SECURE_ERASE_BUFFER_MB, secureEraseBufferMB);
+	}
+
+	/**
+	 * Gets a value indicating if the folder of a deleted file should be refreshed in the library of UMS, for renderers not to browse the deleted file.
+	 *
+	 * @return true, if folders should be refreshed
+	 */
+	public boolean isRefreshFoldersAfterDelete() {
+		return snapshot.isRefreshFoldersAfterDelete();
+	}
+
+	/**
+	 * Sets a value indicating if the folder of a deleted file should be refreshed in the library of UMS, for renderers not to browse the deleted file.
+	 *
+	 * @param refreshFoldersAfterDelete true, if folders should be refreshed
+	 */
+	public void setRefreshFoldersAfterDelete(boolean refreshFoldersAfterDelete) {
+		setValue(KEY_REFRESH_FOLDERS_AFTER_DELETE, refreshFoldersAfterDelete);
+	}
 }
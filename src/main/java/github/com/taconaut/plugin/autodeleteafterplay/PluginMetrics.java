@@ -0,0 +1,528 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counters and latency histograms of the plugin.<br>
+ * All updates are lock-free so that they can be done on the hot path. The metrics are exposed as an MBean and can be
+ * written in the Prometheus text format, e.g. for the textfile collector of the node exporter.
+ */
+public class PluginMetrics implements PluginMetricsMBean {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PluginMetrics.class);
+
+	/** Name under which the MBean is registered. */
+	static final String OBJECT_NAME = "github.com.taconaut.plugin.autodeleteafterplay:type=Metrics";
+
+	/** Prefix of the Prometheus metric names. */
+	private static final String PROMETHEUS_PREFIX = "autodeleteafterplay_";
+
+	private final AtomicLong eventsFiltered = new AtomicLong();
+	private final AtomicLong sessionsLost = new AtomicLong();
+	private final AtomicLong sessionsEvicted = new AtomicLong();
+	private final AtomicLong deletionsSucceeded = new AtomicLong();
+	private final AtomicLong deletionsFailed = new AtomicLong();
+	private final AtomicLong deletionsRejected = new AtomicLong();
+	private final AtomicLong deletionRetries = new AtomicLong();
+	private final AtomicLong bytesReclaimed = new AtomicLong();
+	private final AtomicLong bytesMovedToRecycleBin = new AtomicLong();
+	private final LatencyHistogram nowPlayingNanos = new LatencyHistogram();
+	private final LatencyHistogram donePlayingNanos = new LatencyHistogram();
+	private final LatencyHistogram timeToDeleteMillis = new LatencyHistogram();
+
+	/** Time spent deleting files by strategy name, to compare the cost of the strategies. */
+	private final ConcurrentMap<String, LatencyHistogram> deletionStrategyNanos = new ConcurrentHashMap<String, LatencyHistogram>();
+
+	private volatile PlaySessionTable playSessions;
+	private volatile DeletionScheduler deletionScheduler;
+	private volatile DeletionEngine deletionEngine;
+	private ObjectName registeredName;
+
+	/**
+	 * Sets the components whose current state is exposed as gauges.
+	 *
+	 * @param playSessions the play sessions
+	 * @param deletionScheduler the deletion scheduler
+	 * @param deletionEngine the deletion engine
+	 */
+	public void setGaugeSources(PlaySessionTable playSessions, DeletionScheduler deletionScheduler, DeletionEngine deletionEngine) {
+		this.playSessions = playSessions;
+		this.deletionScheduler = deletionScheduler;
+		this.deletionEngine = deletionEngine;
+	}
+
+	/**
+	 * Registers the MBean with the platform MBean server. A failure is logged but doesn't prevent the plugin from
+	 * working.
+	 */
+	public synchronized void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				// Left behind by a previous instance of the plugin
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			registeredName = name;
+		} catch (JMException ex) {
+			LOGGER.warn("Failed to register the metrics MBean", ex);
+		}
+	}
+
+	/**
+	 * Unregisters the MBean.
+	 */
+	public synchronized void unregister() {
+		if (registeredName == null) {
+			return;
+		}
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+		} catch (JMException ex) {
+			LOGGER.debug("Failed to unregister the metrics MBean", ex);
+		}
+		registeredName = null;
+	}
+
+	/**
+	 * Records the time spent handling a nowPlaying event.
+	 *
+	 * @param nanos the elapsed time in nanoseconds
+	 */
+	public void recordNowPlaying(long nanos) {
+		nowPlayingNanos.record(nanos);
+	}
+
+	/**
+	 * Records the time spent handling a donePlaying event.
+	 *
+	 * @param nanos the elapsed time in nanoseconds
+	 */
+	public void recordDonePlaying(long nanos) {
+		donePlayingNanos.record(nanos);
+	}
+
+	/**
+	 * Records a play event which has been ignored because of its media type.
+	 */
+	public void recordEventFiltered() {
+		eventsFiltered.incrementAndGet();
+	}
+
+	/**
+	 * Records a donePlaying event for which no play session has been found.
+	 */
+	public void recordSessionLost() {
+		sessionsLost.incrementAndGet();
+	}
+
+	/**
+	 * Records a play session which has been evicted before being stopped.
+	 */
+	public void recordSessionEvicted() {
+		sessionsEvicted.incrementAndGet();
+	}
+
+	/**
+	 * Records a successful deletion.
+	 *
+	 * @param timeToDeleteMillis the time between handing the deletion to the deletion engine and the file being deleted
+	 * @param bytes the size of the file
+	 * @param movedToRecycleBin true, if the file has been moved to the recycle bin
+	 */
+	public void recordDeletionSucceeded(long timeToDeleteMillis, long bytes, boolean movedToRecycleBin) {
+		deletionsSucceeded.incrementAndGet();
+		this.timeToDeleteMillis.record(timeToDeleteMillis);
+		if (movedToRecycleBin) {
+			bytesMovedToRecycleBin.addAndGet(bytes);
+		} else {
+			bytesReclaimed.addAndGet(bytes);
+		}
+	}
+
+	/**
+	 * Records the time a deletion strategy took to delete a file.
+	 *
+	 * @param strategyName the name of the deletion strategy
+	 * @param nanos the elapsed time in nanoseconds
+	 */
+	public void recordDeletionStrategyTime(String strategyName, long nanos) {
+		LatencyHistogram histogram = deletionStrategyNanos.get(strategyName);
+		if (histogram == null) {
+			LatencyHistogram newHistogram = new LatencyHistogram();
+			histogram = deletionStrategyNanos.putIfAbsent(strategyName, newHistogram);
+			if (histogram == null) {
+				histogram = newHistogram;
+			}
+		}
+		histogram.record(nanos);
+	}
+
+	/**
+	 * Records a deletion which failed after all retries.
+	 */
+	public void recordDeletionFailed() {
+		deletionsFailed.incrementAndGet();
+	}
+
+	/**
+	 * Records deletions which have been rejected because the queue was full.
+	 *
+	 * @param count the number of rejected deletions
+	 */
+	public void recordDeletionsRejected(int count) {
+		deletionsRejected.addAndGet(count);
+	}
+
+	/**
+	 * Records a retry scheduled after a failed deletion attempt.
+	 */
+	public void recordDeletionRetry() {
+		deletionRetries.incrementAndGet();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getEventsReceived()
+	 */
+	@Override
+	public long getEventsReceived() {
+		return nowPlayingNanos.getCount() + donePlayingNanos.getCount();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getEventsFiltered()
+	 */
+	@Override
+	public long getEventsFiltered() {
+		return eventsFiltered.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getSessionsLost()
+	 */
+	@Override
+	public long getSessionsLost() {
+		return sessionsLost.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getSessionsEvicted()
+	 */
+	@Override
+	public long getSessionsEvicted() {
+		return sessionsEvicted.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getSessionsInFlight()
+	 */
+	@Override
+	public int getSessionsInFlight() {
+		PlaySessionTable sessions = playSessions;
+		return sessions == null ? 0 : sessions.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getNowPlayingMeanMicros()
+	 */
+	@Override
+	public double getNowPlayingMeanMicros() {
+		return nowPlayingNanos.getMean() / 1000;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getNowPlaying99thPercentileMicros()
+	 */
+	@Override
+	public long getNowPlaying99thPercentileMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(nowPlayingNanos.getPercentile(99));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getNowPlayingMaxMicros()
+	 */
+	@Override
+	public long getNowPlayingMaxMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(nowPlayingNanos.getMax());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getDonePlayingMeanMicros()
+	 */
+	@Override
+	public double getDonePlayingMeanMicros() {
+		return donePlayingNanos.getMean() / 1000;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getDonePlaying99thPercentileMicros()
+	 */
+	@Override
+	public long getDonePlaying99thPercentileMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(donePlayingNanos.getPercentile(99));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getDonePlayingMaxMicros()
+	 */
+	@Override
+	public long getDonePlayingMaxMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(donePlayingNanos.getMax());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getDeletionsScheduled()
+	 */
+	@Override
+	public int getDeletionsScheduled() {
+		DeletionScheduler scheduler = deletionScheduler;
+		return scheduler == null ? 0 : scheduler.getPendingCount();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getDeletionsQueued()
+	 */
+	@Override
+	public int getDeletionsQueued() {
+		DeletionEngine engine = deletionEngine;
+		return engine == null ? 0 : engine.getQueuedCount();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getDeletionsSucceeded()
+	 */
+	@Override
+	public long getDeletionsSucceeded() {
+		return deletionsSucceeded.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getDeletionsFailed()
+	 */
+	@Override
+	public long getDeletionsFailed() {
+		return deletionsFailed.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getDeletionsRejected()
+	 */
+	@Override
+	public long getDeletionsRejected() {
+		return deletionsRejected.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getDeletionRetries()
+	 */
+	@Override
+	public long getDeletionRetries() {
+		return deletionRetries.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getTimeToDeleteMeanMillis()
+	 */
+	@Override
+	public double getTimeToDeleteMeanMillis() {
+		return timeToDeleteMillis.getMean();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getTimeToDelete99thPercentileMillis()
+	 */
+	@Override
+	public long getTimeToDelete99thPercentileMillis() {
+		return timeToDeleteMillis.getPercentile(99);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getTimeToDeleteMaxMillis()
+	 */
+	@Override
+	public long getTimeToDeleteMaxMillis() {
+		return timeToDeleteMillis.getMax();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getBytesReclaimed()
+	 */
+	@Override
+	public long getBytesReclaimed() {
+		return bytesReclaimed.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.PluginMetricsMBean#getBytesMovedToRecycleBin()
+	 */
+	@Override
+	public long getBytesMovedToRecycleBin() {
+		return bytesMovedToRecycleBin.get();
+	}
+
+	/**
+	 * Formats the metrics in the Prometheus text exposition format. Durations are converted to seconds.
+	 *
+	 * @return the metrics
+	 */
+	public String toPrometheusText() {
+		StringBuilder text = new StringBuilder();
+		appendMetric(text, "events_received_total", "counter", "Play events received", getEventsReceived());
+		appendMetric(text, "events_filtered_total", "counter", "Play events ignored because of their media type", getEventsFiltered());
+		appendMetric(text, "sessions_lost_total", "counter", "donePlaying events for which no play session has been found", getSessionsLost());
+		appendMetric(text, "sessions_evicted_total", "counter", "Play sessions evicted because they timed out, were started again or exceeded the max number of sessions",
+				getSessionsEvicted());
+		appendMetric(text, "sessions_in_flight", "gauge", "Files being played", getSessionsInFlight());
+		appendHistogram(text, "now_playing_seconds", "Time spent handling nowPlaying events", nowPlayingNanos, 1e-9);
+		appendHistogram(text, "done_playing_seconds", "Time spent handling donePlaying events", donePlayingNanos, 1e-9);
+		appendMetric(text, "deletions_scheduled", "gauge", "Deletions waiting for their grace period to elapse", getDeletionsScheduled());
+		appendMetric(text, "deletions_queued", "gauge", "Deletions waiting for a worker thread", getDeletionsQueued());
+		appendMetric(text, "deletions_succeeded_total", "counter", "Files deleted or moved to the recycle bin", getDeletionsSucceeded());
+		appendMetric(text, "deletions_failed_total", "counter", "Files which couldn't be deleted after all retries", getDeletionsFailed());
+		appendMetric(text, "deletions_rejected_total", "counter", "Deletions rejected because the queue was full", getDeletionsRejected());
+		appendMetric(text, "deletion_retries_total", "counter", "Retries scheduled after a failed deletion attempt", getDeletionRetries());
+		appendHistogram(text, "time_to_delete_seconds", "Time between queuing a deletion and the file being deleted", timeToDeleteMillis, 1e-3);
+		appendHeader(text, "deletion_strategy_seconds", "histogram", "Time spent deleting a file by deletion strategy");
+		for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<String, LatencyHistogram>(deletionStrategyNanos).entrySet()) {
+			appendHistogramSamples(text, "deletion_strategy_seconds", "strategy=\"" + entry.getKey() + "\",", entry.getValue(), 1e-9);
+		}
+		appendMetric(text, "reclaimed_bytes_total", "counter", "Size of the files permanently deleted", getBytesReclaimed());
+		appendMetric(text, "recycle_bin_bytes_total", "counter", "Size of the files moved to the recycle bin", getBytesMovedToRecycleBin());
+		return text.toString();
+	}
+
+	/**
+	 * Appends a counter or gauge.
+	 *
+	 * @param text the text to append to
+	 * @param name the metric name, without prefix
+	 * @param type the metric type
+	 * @param help the metric description
+	 * @param value the value
+	 */
+	private static void appendMetric(StringBuilder text, String name, String type, String help, long value) {
+		appendHeader(text, name, type, help);
+		text.append(PROMETHEUS_PREFIX).append(name).append(' ').append(value).append('\n');
+	}
+
+	/**
+	 * Appends a histogram without labels.
+	 *
+	 * @param text the text to append to
+	 * @param name the metric name, without prefix
+	 * @param help the metric description
+	 * @param histogram the histogram
+	 * @param secondsPerUnit the number of seconds per unit of the recorded values
+	 */
+	private static void appendHistogram(StringBuilder text, String name, String help, LatencyHistogram histogram, double secondsPerUnit) {
+		appendHeader(text, name, "histogram", help);
+		appendHistogramSamples(text, name, "", histogram, secondsPerUnit);
+	}
+
+	/**
+	 * Appends the samples of a histogram. Only the buckets up to the highest one holding a value are written.
+	 *
+	 * @param text the text to append to
+	 * @param name the metric name, without prefix
+	 * @param labels the labels of the samples, each followed by a comma, or an empty string
+	 * @param histogram the histogram
+	 * @param secondsPerUnit the number of seconds per unit of the recorded values
+	 */
+	private static void appendHistogramSamples(StringBuilder text, String name, String labels, LatencyHistogram histogram, double secondsPerUnit) {
+		// The count is summed from the buckets read, as values can be recorded while they are being read
+		int highestBucket = 0;
+		long count = 0;
+		long[] bucketCounts = new long[LatencyHistogram.BUCKET_COUNT];
+		for (int i = 0; i < bucketCounts.length; i++) {
+			bucketCounts[i] = histogram.getBucketCount(i);
+			count += bucketCounts[i];
+			if (bucketCounts[i] > 0) {
+				highestBucket = i;
+			}
+		}
+
+		long cumulativeCount = 0;
+		for (int i = 0; i <= highestBucket && i < LatencyHistogram.BUCKET_COUNT - 1; i++) {
+			cumulativeCount += bucketCounts[i];
+			// Values are whole numbers, so the bucket of the values up to 2^i - 1 is the bucket of the values below 2^i
+			text.append(PROMETHEUS_PREFIX).append(name).append("_bucket{").append(labels).append("le=\"").append((LatencyHistogram.getBucketUpperBound(i) + 1) * secondsPerUnit)
+					.append("\"} ").append(cumulativeCount).append('\n');
+		}
+		text.append(PROMETHEUS_PREFIX).append(name).append("_bucket{").append(labels).append("le=\"+Inf\"} ").append(count).append('\n');
+		String sampleLabels = labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+		text.append(PROMETHEUS_PREFIX).append(name).append("_sum").append(sampleLabels).append(' ').append(histogram.getSum() * secondsPerUnit)
+				.append('\n');
+		text.append(PROMETHEUS_PREFIX).append(name).append("_count").append(sampleLabels).append(' ').append(count).append('\n');
+	}
+
+	/**
+	 * Appends the HELP and TYPE lines of a metric.
+	 *
+	 * @param text the text to append to
+	 * @param name the metric name, without prefix
+	 * @param type the metric type
+	 * @param help the metric description
+	 */
+	private static void appendHeader(StringBuilder text, String name, String type, String help) {
+		text.append("# HELP ").append(PROMETHEUS_PREFIX).append(name).append(' ').append(help).append('\n');
+		text.append("# TYPE ").append(PROMETHEUS_PREFIX).append(name).append(' ').append(type).append('\n');
+	}
+}
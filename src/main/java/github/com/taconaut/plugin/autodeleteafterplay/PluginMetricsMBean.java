@@ -0,0 +1,165 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+/**
+ * Management interface exposing the metrics of the plugin over JMX, e.g. to JConsole or VisualVM.<br>
+ * Durations are approximated by power of two buckets, see {@link LatencyHistogram}.
+ */
+public interface PluginMetricsMBean {
+
+	/**
+	 * Gets the number of play events received, nowPlaying and donePlaying added up.
+	 *
+	 * @return the number of events received
+	 */
+	long getEventsReceived();
+
+	/**
+	 * Gets the number of play events ignored because of their media type.
+	 *
+	 * @return the number of events filtered
+	 */
+	long getEventsFiltered();
+
+	/**
+	 * Gets the number of donePlaying events for which no play session has been found, e.g. because the session has
+	 * been started before the plugin.
+	 *
+	 * @return the number of sessions lost
+	 */
+	long getSessionsLost();
+
+	/**
+	 * Gets the number of play sessions evicted before being stopped, because they timed out, were started again or
+	 * exceeded the max number of sessions.
+	 *
+	 * @return the number of sessions evicted
+	 */
+	long getSessionsEvicted();
+
+	/**
+	 * Gets the number of files being played.
+	 *
+	 * @return the number of sessions in flight
+	 */
+	int getSessionsInFlight();
+
+	/**
+	 * Gets the mean time spent in nowPlaying.
+	 *
+	 * @return the mean time in microseconds
+	 */
+	double getNowPlayingMeanMicros();
+
+	/**
+	 * Gets the 99th percentile of the time spent in nowPlaying.
+	 *
+	 * @return the 99th percentile in microseconds
+	 */
+	long getNowPlaying99thPercentileMicros();
+
+	/**
+	 * Gets the longest time spent in nowPlaying.
+	 *
+	 * @return the max time in microseconds
+	 */
+	long getNowPlayingMaxMicros();
+
+	/**
+	 * Gets the mean time spent in donePlaying.
+	 *
+	 * @return the mean time in microseconds
+	 */
+	double getDonePlayingMeanMicros();
+
+	/**
+	 * Gets the 99th percentile of the time spent in donePlaying.
+	 *
+	 * @return the 99th percentile in microseconds
+	 */
+	long getDonePlaying99thPercentileMicros();
+
+	/**
+	 * Gets the longest time spent in donePlaying.
+	 *
+	 * @return the max time in microseconds
+	 */
+	long getDonePlayingMaxMicros();
+
+	/**
+	 * Gets the number of deletions waiting for their grace period to elapse.
+	 *
+	 * @return the number of scheduled deletions
+	 */
+	int getDeletionsScheduled();
+
+	/**
+	 * Gets the number of deletions waiting for a worker thread.
+	 *
+	 * @return the number of queued deletions
+	 */
+	int getDeletionsQueued();
+
+	/**
+	 * Gets the number of files which have been deleted or moved to the recycle bin.
+	 *
+	 * @return the number of successful deletions
+	 */
+	long getDeletionsSucceeded();
+
+	/**
+	 * Gets the number of files which couldn't be deleted after all retries.
+	 *
+	 * @return the number of failed deletions
+	 */
+	long getDeletionsFailed();
+
+	/**
+	 * Gets the number of deletions rejected because the queue was full.
+	 *
+	 * @return the number of rejected deletions
+	 */
+	long getDeletionsRejected();
+
+	/**
+	 * Gets the number of retries scheduled after a failed deletion attempt.
+	 *
+	 * @return the number of retries
+	 */
+	long getDeletionRetries();
+
+	/**
+	 * Gets the mean time between handing a deletion to the deletion engine and the file being deleted.
+	 *
+	 * @return the mean time to delete in milliseconds
+	 */
+	double getTimeToDeleteMeanMillis();
+
+	/**
+	 * Gets the 99th percentile of the time between handing a deletion to the deletion engine and the file being
+	 * deleted.
+	 *
+	 * @return the 99th percentile in milliseconds
+	 */
+	long getTimeToDelete99thPercentileMillis();
+
+	/**
+	 * Gets the longest time between handing a deletion to the deletion engine and the file being deleted.
+	 *
+	 * @return the max time to delete in milliseconds
+	 */
+	long getTimeToDeleteMaxMillis();
+
+	/**
+	 * Gets the size of the files which have been permanently deleted.
+	 *
+	 * @return the number of bytes reclaimed
+	 */
+	long getBytesReclaimed();
+
+	/**
+	 * Gets the size of the files which have been moved to the recycle bin.
+	 *
+	 * @return the number of bytes moved to the recycle bin
+	 */
+	long getBytesMovedToRecycleBin();
+}
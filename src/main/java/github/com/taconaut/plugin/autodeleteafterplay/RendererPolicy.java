@@ -0,0 +1,94 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+/**
+ * Immutable deletion policy applying to the files played by a renderer: the global settings, with the overrides
+ * configured for the renderer applied.
+ */
+public class RendererPolicy {
+	private final int percentPlayedRequired;
+	private final boolean deleteVideo;
+	private final boolean deleteAudio;
+	private final boolean deleteImage;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param percentPlayedRequired the percent played required before a file gets automatically deleted
+	 * @param deleteVideo true, if video files should be deleted
+	 * @param deleteAudio true, if audio files should be deleted
+	 * @param deleteImage true, if image files should be deleted
+	 */
+	public RendererPolicy(int percentPlayedRequired, boolean deleteVideo, boolean deleteAudio, boolean deleteImage) {
+		this.percentPlayedRequired = percentPlayedRequired;
+		this.deleteVideo = deleteVideo;
+		this.deleteAudio = deleteAudio;
+		this.deleteImage = deleteImage;
+	}
+
+	/**
+	 * Gets the percent played required before a file gets automatically deleted.
+	 *
+	 * @return the percent played required
+	 */
+	public int getPercentPlayedRequired() {
+		return percentPlayedRequired;
+	}
+
+	/**
+	 * Gets a value indicating if video files should be deleted.
+	 *
+	 * @return true, if video files should be deleted
+	 */
+	public boolean isDeleteVideo() {
+		return deleteVideo;
+	}
+
+	/**
+	 * Gets a value indicating if audio files should be deleted.
+	 *
+	 * @return true, if audio files should be deleted
+	 */
+	public boolean isDeleteAudio() {
+		return deleteAudio;
+	}
+
+	/**
+	 * Gets a value indicating if image files should be deleted.
+	 *
+	 * @return true, if image files should be deleted
+	 */
+	public boolean isDeleteImage() {
+		return deleteImage;
+	}
+
+	/**
+	 * Gets a value indicating if files of a media type should be deleted.
+	 *
+	 * @param mediaType the media type
+	 * @return true, if files of this type should be deleted
+	 */
+	public boolean isDelete(MediaType mediaType) {
+		switch (mediaType) {
+		case VIDEO:
+			return deleteVideo;
+		case AUDIO:
+			return deleteAudio;
+		case IMAGE:
+			return deleteImage;
+		default:
+			return true;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("%s=%s, %s=%s, %s=%s, %s=%s", PluginConfiguration.KEY_PERCENT_PLAY_REQUIRED, percentPlayedRequired,
+				PluginConfiguration.KEY_DELETE_VIDEO, deleteVideo, PluginConfiguration.KEY_DELETE_AUDIO, deleteAudio,
+				PluginConfiguration.KEY_DELETE_IMAGE, deleteImage);
+	}
+}
@@ -0,0 +1,163 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.pms.configuration.RendererConfiguration;
+
+/**
+ * Resolves the deletion policy of a renderer.<br>
+ * Overrides are configured as entries separated by a semicolon, each entry being the name, UUID or IP address of a
+ * renderer followed by the overridden settings, separated by {@value #SEPARATOR}, e.g.
+ * <code>Bedroom TV|percentPlayedRequired=95|isDeleteAudio=false</code>. When several entries match a renderer, its
+ * UUID wins over its IP address, which wins over its name. The policy of each renderer is resolved once and cached,
+ * so that looking it up for a play event costs a single map lookup.
+ */
+public class RendererPolicyTable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(RendererPolicyTable.class);
+
+	/** Separates the renderer from the overridden settings, and the settings from each other. */
+	public static final String SEPARATOR = "|";
+
+	/** Maximum number of cached policies. The cache is cleared when it is exceeded, e.g. by short-lived renderers. */
+	private static final int MAX_CACHED_POLICIES = 256;
+
+	private final RendererPolicy defaultPolicy;
+
+	/** Overridden settings by lower case renderer name, UUID or IP address. */
+	private final Map<String, Map<String, String>> overrides = new HashMap<String, Map<String, String>>();
+
+	/** Resolved policies by renderer. */
+	private final ConcurrentMap<RendererConfiguration, RendererPolicy> policies = new ConcurrentHashMap<RendererConfiguration, RendererPolicy>();
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param definition the overrides
+	 * @param defaultPolicy the policy of the renderers without overrides, made of the global settings
+	 */
+	public RendererPolicyTable(String definition, RendererPolicy defaultPolicy) {
+		this.defaultPolicy = defaultPolicy;
+		for (String entry : definition.split(";")) {
+			String[] parts = entry.split("\\" + SEPARATOR);
+			String renderer = parts[0].trim().toLowerCase(Locale.ROOT);
+			if (renderer.isEmpty()) {
+				continue;
+			}
+
+			Map<String, String> settings = new HashMap<String, String>();
+			for (int i = 1; i < parts.length; i++) {
+				int equalsIndex = parts[i].indexOf('=');
+				if (equalsIndex < 0) {
+					LOGGER.warn(String.format("The setting '%s' of the renderer '%s' is not of the form key=value and will be ignored", parts[i].trim(),
+							parts[0].trim()));
+					continue;
+				}
+				settings.put(parts[i].substring(0, equalsIndex).trim(), parts[i].substring(equalsIndex + 1).trim());
+			}
+			overrides.put(renderer, settings);
+		}
+	}
+
+	/**
+	 * Gets the policy of a renderer.
+	 *
+	 * @param renderer the renderer, can be null
+	 * @return the policy
+	 */
+	public RendererPolicy getPolicy(RendererConfiguration renderer) {
+		if (renderer == null || overrides.isEmpty()) {
+			return defaultPolicy;
+		}
+
+		RendererPolicy policy = policies.get(renderer);
+		if (policy == null) {
+			policy = resolve(renderer);
+			if (policies.size() >= MAX_CACHED_POLICIES) {
+				policies.clear();
+			}
+			policies.put(renderer, policy);
+		}
+		return policy;
+	}
+
+	/**
+	 * Resolves the policy of a renderer by applying the matching overrides to the default policy.
+	 *
+	 * @param renderer the renderer
+	 * @return the policy
+	 */
+	private RendererPolicy resolve(RendererConfiguration renderer) {
+		InetAddress address = renderer.getAddress();
+		String[] identifiers = { renderer.getUUID(), address == null ? null : address.getHostAddress(), renderer.getRendererName() };
+		for (String identifier : identifiers) {
+			if (identifier == null) {
+				continue;
+			}
+			Map<String, String> settings = overrides.get(identifier.trim().toLowerCase(Locale.ROOT));
+			if (settings != null) {
+				RendererPolicy policy = compile(identifier, settings);
+				LOGGER.debug(String.format("Using the policy '%s' for the renderer '%s'", policy, renderer.getRendererName()));
+				return policy;
+			}
+		}
+		return defaultPolicy;
+	}
+
+	/**
+	 * Applies overridden settings to the default policy. Invalid settings are ignored.
+	 *
+	 * @param renderer the renderer the settings have been configured for
+	 * @param settings the overridden settings
+	 * @return the policy
+	 */
+	private RendererPolicy compile(String renderer, Map<String, String> settings) {
+		int percentPlayedRequired = defaultPolicy.getPercentPlayedRequired();
+		boolean deleteVideo = defaultPolicy.isDeleteVideo();
+		boolean deleteAudio = defaultPolicy.isDeleteAudio();
+		boolean deleteImage = defaultPolicy.isDeleteImage();
+		for (Map.Entry<String, String> setting : settings.entrySet()) {
+			String key = setting.getKey();
+			String value = setting.getValue();
+			try {
+				if (PluginConfiguration.KEY_PERCENT_PLAY_REQUIRED.equals(key)) {
+					percentPlayedRequired = Integer.parseInt(value);
+				} else if (PluginConfiguration.KEY_DELETE_VIDEO.equals(key)) {
+					deleteVideo = parseBoolean(value);
+				} else if (PluginConfiguration.KEY_DELETE_AUDIO.equals(key)) {
+					deleteAudio = parseBoolean(value);
+				} else if (PluginConfiguration.KEY_DELETE_IMAGE.equals(key)) {
+					deleteImage = parseBoolean(value);
+				} else {
+					LOGGER.warn(String.format("The setting '%s' can't be overridden for the renderer '%s' and will be ignored", key, renderer));
+				}
+			} catch (IllegalArgumentException ex) {
+				LOGGER.warn(String.format("The value '%s' of the setting '%s' of the renderer '%s' is not valid and will be ignored", value, key, renderer));
+			}
+		}
+		return new RendererPolicy(percentPlayedRequired, deleteVideo, deleteAudio, deleteImage);
+	}
+
+	/**
+	 * Parses a boolean strictly, unlike {@link Boolean#parseBoolean(String)} which takes any invalid value as false.
+	 *
+	 * @param value the value
+	 * @return the boolean
+	 */
+	private static boolean parseBoolean(String value) {
+		if ("true".equalsIgnoreCase(value)) {
+			return true;
+		}
+		if ("false".equalsIgnoreCase(value)) {
+			return false;
+		}
+		throw new IllegalArgumentException(value);
+	}
+}
@@ -0,0 +1,187 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Overwrites files in place before unlinking them, for their content not to be recoverable from the disk.<br>
+ * Every pass but the last one writes random data, the last one writes zeros. Each pass is forced to the disk before
+ * the next one starts, as the page cache would otherwise only write the content of the last pass. The data is written
+ * from a direct buffer kept by each deletion worker, so the JVM doesn't copy it before handing it to the operating
+ * system, and the number of bytes written per second is limited by a {@link TokenBucket} shared by all deletion
+ * workers, not to saturate the disk while a file of tens of GB is erased. The settings are read from the configuration
+ * for every file.<br>
+ * Overwriting a file in place doesn't reach its previous blocks on copy-on-write file systems (btrfs, ZFS, ...) nor,
+ * reliably, on flash storage whose controller remaps the writes.
+ */
+public class SecureEraseDeletionStrategy implements DeletionStrategy {
+	private static final Logger LOGGER = LoggerFactory.getLogger(SecureEraseDeletionStrategy.class);
+
+	private static final long BYTES_PER_MB = 1024 * 1024;
+
+	/** Interval at which the progress of an erasure is logged. */
+	private static final long PROGRESS_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	private final PluginConfiguration configuration;
+	private final TokenBucket bytesBucket = new TokenBucket(0);
+	private final Random random = new SecureRandom();
+
+	/** Buffer written by each deletion worker, allocated when it erases its first file. */
+	private final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>();
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param configuration the configuration holding the number of passes, the buffer size and the bandwidth
+	 */
+	public SecureEraseDeletionStrategy(PluginConfiguration configuration) {
+		this.configuration = configuration;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#getName()
+	 */
+	@Override
+	public String getName() {
+		return "secure-erase";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#isRecoverable()
+	 */
+	@Override
+	public boolean isRecoverable() {
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#isContentDestroyed()
+	 */
+	@Override
+	public boolean isContentDestroyed() {
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#delete(java.io.File)
+	 */
+	@Override
+	public void delete(File file) throws IOException {
+		ConfigurationSnapshot snapshot = configuration.getSnapshot();
+		int passes = Math.max(1, snapshot.getSecureErasePasses());
+		ByteBuffer buffer = getBuffer(getBufferSize(snapshot.getSecureEraseBufferMB()));
+		bytesBucket.setRate((double) snapshot.getSecureEraseMBPerSecond() * BYTES_PER_MB);
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+			long size = channel.size();
+			LOGGER.info(String.format("Securely erasing '%s' (%s MB) with %s pass(es), throttled to %s MB/s", file.getAbsolutePath(), size / BYTES_PER_MB,
+					passes, snapshot.getSecureEraseMBPerSecond()));
+
+			long startNanos = System.nanoTime();
+			long lastProgressLogNanos = startNanos;
+			for (int pass = 1; pass <= passes; pass++) {
+				fill(buffer, pass < passes);
+				long position = 0;
+				while (position < size) {
+					int length = (int) Math.min(buffer.capacity(), size - position);
+					bytesBucket.acquire(length);
+					buffer.clear();
+					buffer.limit(length);
+					while (buffer.hasRemaining()) {
+						position += channel.write(buffer, position);
+					}
+
+					long nowNanos = System.nanoTime();
+					if (nowNanos - lastProgressLogNanos >= PROGRESS_LOG_INTERVAL_NANOS) {
+						lastProgressLogNanos = nowNanos;
+						LOGGER.info(String.format("Pass %s of %s: overwrote %s of %s MB of '%s' (%s%%)", pass, passes, position / BYTES_PER_MB, size / BYTES_PER_MB,
+								file.getAbsolutePath(), position * 100 / size));
+					}
+				}
+				channel.force(true);
+			}
+
+			long elapsedNanos = Math.max(1, System.nanoTime() - startNanos);
+			double megabytesPerSecond = (double) size * passes / BYTES_PER_MB / (elapsedNanos / 1000000000d);
+			LOGGER.info(String.format("Securely erased '%s' (%s MB, %s pass(es)) in %s ms, %.1f MB/s", file.getAbsolutePath(), size / BYTES_PER_MB, passes,
+					TimeUnit.NANOSECONDS.toMillis(elapsedNanos), megabytesPerSecond));
+		} catch (InterruptedException ex) {
+			// The file has been partly overwritten, it will be erased again when the deletion is retried
+			Thread.currentThread().interrupt();
+			InterruptedIOException interruptedException = new InterruptedIOException(String.format("Interrupted while erasing '%s'", file));
+			interruptedException.initCause(ex);
+			throw interruptedException;
+		}
+		Files.delete(file.toPath());
+	}
+
+	/**
+	 * Gets the size of the buffer in bytes, computed in long not to overflow.
+	 *
+	 * @param bufferMB the configured size of the buffer in MB
+	 * @return the size in bytes, between 1 MB and the largest buffer which can be allocated
+	 */
+	private static int getBufferSize(int bufferMB) {
+		long bufferBytes = Math.max(1, bufferMB) * BYTES_PER_MB;
+		return (int) Math.min(bufferBytes, PluginConfiguration.MAX_SECURE_ERASE_BUFFER_MB * BYTES_PER_MB);
+	}
+
+	/**
+	 * Gets the buffer of the current deletion worker, allocating it when it doesn't exist yet or its size has been
+	 * changed.
+	 *
+	 * @param capacity the size of the buffer in bytes
+	 * @return the buffer
+	 */
+	private ByteBuffer getBuffer(int capacity) {
+		ByteBuffer buffer = buffers.get();
+		if (buffer == null || buffer.capacity() != capacity) {
+			buffer = ByteBuffer.allocateDirect(capacity);
+			buffers.set(buffer);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Fills a buffer with the data written by a pass.
+	 *
+	 * @param buffer the buffer
+	 * @param randomData true to write random data, false to write zeros
+	 */
+	private void fill(ByteBuffer buffer, boolean randomData) {
+		buffer.clear();
+		if (randomData) {
+			byte[] chunk = new byte[8192];
+			while (buffer.hasRemaining()) {
+				random.nextBytes(chunk);
+				buffer.put(chunk, 0, Math.min(chunk.length, buffer.remaining()));
+			}
+		} else {
+			while (buffer.remaining() >= 8) {
+				buffer.putLong(0L);
+			}
+			while (buffer.hasRemaining()) {
+				buffer.put((byte) 0);
+			}
+		}
+	}
+}
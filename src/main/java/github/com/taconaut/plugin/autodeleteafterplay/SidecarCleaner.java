@@ -0,0 +1,175 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes the sidecar files of a deleted file, e.g. the subtitles "movie.srt" and "movie.en.srt" or the thumbnail
+ * "movie-thumb.jpg" of "movie.mkv".<br>
+ * Sidecars are found in the cached listing of the directory instead of probing every possible name, and are deleted
+ * through the {@link DeletionEngine} like the file itself, so that they are journaled and retried as well. A sidecar
+ * whose name also matches another file of the directory with a longer base name, e.g. "movie-2.srt" of "movie-2.mkv"
+ * when "movie.mkv" is deleted, belongs to that file and is kept.
+ */
+public class SidecarCleaner implements DeletionListener {
+	private static final Logger LOGGER = LoggerFactory.getLogger(SidecarCleaner.class);
+
+	private final PluginConfiguration configuration;
+	private final DeletionEngine deletionEngine;
+	private final DirectoryListingCache listingCache = new DirectoryListingCache();
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param configuration the configuration defining if and which sidecars are deleted
+	 * @param deletionEngine the engine deleting the sidecars
+	 */
+	public SidecarCleaner(PluginConfiguration configuration, DeletionEngine deletionEngine) {
+		this.configuration = configuration;
+		this.deletionEngine = deletionEngine;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionListener#fileDeleted(github.com.taconaut.plugin.autodeleteafterplay.DeletionRequest)
+	 */
+	@Override
+	public void fileDeleted(DeletionRequest request) {
+		Path file = request.getFile().toPath();
+		listingCache.remove(file);
+
+		ConfigurationSnapshot snapshot = configuration.getSnapshot();
+		Set<String> sidecarExtensions = snapshot.getSidecarExtensions();
+		String fileName = file.getFileName().toString();
+		if (!snapshot.isDeleteSidecars() || sidecarExtensions.contains(getExtension(fileName))) {
+			// Sidecars don't have sidecars themselves
+			return;
+		}
+
+		List<String> fileNames;
+		try {
+			fileNames = listingCache.getFileNames(file.getParent());
+		} catch (IOException ex) {
+			LOGGER.warn(String.format("Failed to look for the sidecar files of '%s'", file), ex);
+			return;
+		}
+
+		String baseName = getBaseName(fileName);
+		List<String> otherBaseNames = new ArrayList<String>();
+		for (String otherName : fileNames) {
+			String otherBaseName = getBaseName(otherName);
+			if (otherBaseName.length() > baseName.length() && isQualified(otherBaseName, baseName)
+					&& !sidecarExtensions.contains(getExtension(otherName))) {
+				otherBaseNames.add(otherBaseName);
+			}
+		}
+
+		List<DeletionRequest> sidecarRequests = new ArrayList<DeletionRequest>();
+		for (String candidateName : fileNames) {
+			if (isSidecar(candidateName, baseName, sidecarExtensions) && !isSidecarOfOther(candidateName, otherBaseNames)) {
+				Path sidecar = file.resolveSibling(candidateName);
+				listingCache.remove(sidecar);
+				sidecarRequests.add(new DeletionRequest(sidecar.toFile(), request));
+			}
+		}
+
+		if (!sidecarRequests.isEmpty()) {
+			LOGGER.debug(String.format("Deleting %s sidecar files of '%s'", sidecarRequests.size(), file));
+			deletionEngine.submit(sidecarRequests);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionListener#deletionFailed(github.com.taconaut.plugin.autodeleteafterplay.DeletionRequest)
+	 */
+	@Override
+	public void deletionFailed(DeletionRequest request) {
+		// The sidecars are only deleted along with their file
+	}
+
+	/**
+	 * Checks if a file is a sidecar of another one, i.e. if it has a sidecar extension and its name is the base name of
+	 * the other file, optionally followed by a qualifier starting with a dot or a dash (e.g. ".en" or "-thumb").
+	 *
+	 * @param candidateName the name of the file which might be a sidecar
+	 * @param baseName the name of the other file without extension
+	 * @param sidecarExtensions the sidecar extensions
+	 * @return true, if the file is a sidecar
+	 */
+	private static boolean isSidecar(String candidateName, String baseName, Set<String> sidecarExtensions) {
+		if (!sidecarExtensions.contains(getExtension(candidateName))) {
+			return false;
+		}
+
+		return isQualified(getBaseName(candidateName), baseName);
+	}
+
+	/**
+	 * Checks if a sidecar also matches another file whose base name is longer, e.g. "movie-2.en.srt" of "movie-2.mkv"
+	 * when looking for the sidecars of "movie.mkv". The sidecar then belongs to the other file.
+	 *
+	 * @param candidateName the name of the sidecar
+	 * @param otherBaseNames the base names of the other files which aren't sidecars and start with the base name
+	 * @return true, if the sidecar belongs to one of the other files
+	 */
+	private static boolean isSidecarOfOther(String candidateName, List<String> otherBaseNames) {
+		String candidateBaseName = getBaseName(candidateName);
+		for (String otherBaseName : otherBaseNames) {
+			if (isQualified(candidateBaseName, otherBaseName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if a base name is another one, optionally followed by a qualifier starting with a dot or a dash.
+	 *
+	 * @param qualifiedBaseName the base name which might be qualified
+	 * @param baseName the base name
+	 * @return true, if the first base name is the second one, qualified or not
+	 */
+	private static boolean isQualified(String qualifiedBaseName, String baseName) {
+		if (!qualifiedBaseName.startsWith(baseName)) {
+			return false;
+		}
+		if (qualifiedBaseName.length() == baseName.length()) {
+			return true;
+		}
+		char separator = qualifiedBaseName.charAt(baseName.length());
+		return separator == '.' || separator == '-';
+	}
+
+	/**
+	 * Gets the lower case extension of a file name.
+	 *
+	 * @param fileName the file name
+	 * @return the extension, without dot, or an empty string if the name has no extension
+	 */
+	private static String getExtension(String fileName) {
+		int extensionIndex = fileName.lastIndexOf('.');
+		return extensionIndex <= 0 ? "" : fileName.substring(extensionIndex + 1).toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Gets a file name without its extension.
+	 *
+	 * @param fileName the file name
+	 * @return the base name
+	 */
+	private static String getBaseName(String fileName) {
+		int extensionIndex = fileName.lastIndexOf('.');
+		return extensionIndex <= 0 ? fileName : fileName.substring(0, extensionIndex);
+	}
+}
@@ -0,0 +1,149 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Renames files into a staging directory next to them before deleting them.<br>
+ * The rename is a single metadata operation, so the file leaves the library at once even when deleting its content is
+ * slow, e.g. on network shares. A file which can't be deleted yet, e.g. because it is still open on an SMB share, stays
+ * in the staging directory and its deletion fails, so that it is retried by the {@link DeletionEngine} and kept in the
+ * journal until it succeeds. The other files left in the staging directory are purged as well.
+ */
+public class StagingDeletionStrategy implements DeletionStrategy {
+	private static final Logger LOGGER = LoggerFactory.getLogger(StagingDeletionStrategy.class);
+
+	/** Name of the staging directory created in the directory of the deleted file. */
+	static final String STAGING_DIRECTORY_NAME = ".autodelete-staging";
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#getName()
+	 */
+	@Override
+	public String getName() {
+		return "staging";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#isRecoverable()
+	 */
+	@Override
+	public boolean isRecoverable() {
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#isContentDestroyed()
+	 */
+	@Override
+	public boolean isContentDestroyed() {
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#delete(java.io.File)
+	 */
+	@Override
+	public void delete(File file) throws IOException {
+		Path path = file.toPath();
+		// The staging directory is in the same directory as the file, hence on the same file system
+		Path stagingDirectory = path.resolveSibling(STAGING_DIRECTORY_NAME);
+		Path stagedFile = getStagedFile(file).toPath();
+		// When retrying, the file may already have been staged by the previous attempt
+		if (Files.exists(path)) {
+			try {
+				stage(path, stagingDirectory);
+			} catch (NoSuchFileException ex) {
+				if (!Files.exists(path)) {
+					purge(stagingDirectory);
+					throw ex;
+				}
+				// The staging directory has been removed by the purge of another worker in the meantime
+				stage(path, stagingDirectory);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.delete(path);
+				purge(stagingDirectory);
+				return;
+			}
+		}
+
+		IOException deleteException = null;
+		try {
+			Files.deleteIfExists(stagedFile);
+		} catch (IOException ex) {
+			deleteException = ex;
+		}
+		purge(stagingDirectory);
+		if (deleteException != null && Files.exists(stagedFile)) {
+			throw new IOException(String.format("The file '%s' has been staged to '%s' but can't be deleted yet", path, stagedFile), deleteException);
+		}
+	}
+
+	/**
+	 * Gets the path a file is renamed to in the staging directory.
+	 *
+	 * @param file the file to delete
+	 * @return the staged file
+	 */
+	static File getStagedFile(File file) {
+		return new File(new File(file.getParentFile(), STAGING_DIRECTORY_NAME), file.getName());
+	}
+
+	/**
+	 * Renames a file into the staging directory.
+	 *
+	 * @param path the file
+	 * @param stagingDirectory the staging directory, created if needed
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void stage(Path path, Path stagingDirectory) throws IOException {
+		Files.createDirectories(stagingDirectory);
+		Files.move(path, stagingDirectory.resolve(path.getFileName()), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Deletes the files of the staging directory, and the directory itself once it is empty. Files which can't be
+	 * deleted are left for the next purge.
+	 *
+	 * @param stagingDirectory the staging directory
+	 */
+	private void purge(Path stagingDirectory) {
+		try (DirectoryStream<Path> stagedFiles = Files.newDirectoryStream(stagingDirectory)) {
+			for (Path stagedFile : stagedFiles) {
+				try {
+					Files.delete(stagedFile);
+				} catch (IOException ex) {
+					LOGGER.debug(String.format("The staged file '%s' can't be deleted yet: %s", stagedFile, ex));
+				}
+			}
+		} catch (IOException ex) {
+			LOGGER.debug(String.format("Failed to list the staging directory '%s': %s", stagingDirectory, ex));
+		}
+
+		try {
+			Files.deleteIfExists(stagingDirectory);
+		} catch (DirectoryNotEmptyException ex) {
+			// Some files will be purged next time
+		} catch (IOException ex) {
+			LOGGER.debug(String.format("Failed to delete the staging directory '%s': %s", stagingDirectory, ex));
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Truncates large files down in chunks before unlinking them, pacing the work so that freeing the blocks of a file of
+ * tens of GB doesn't stall the streams reading from the same disk.<br>
+ * The number of bytes freed and the number of truncate and unlink operations per second are limited by
+ * {@link TokenBucket}s shared by all deletion workers, so the limits hold however many files are deleted at once. The
+ * limits are read from the configuration for every file.
+ */
+public class ThrottledTruncateDeletionStrategy implements DeletionStrategy {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ThrottledTruncateDeletionStrategy.class);
+
+	private static final long BYTES_PER_MB = 1024 * 1024;
+
+	/** Interval at which the progress of a deletion is logged. */
+	private static final long PROGRESS_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	private final PluginConfiguration configuration;
+	private final TokenBucket bytesBucket = new TokenBucket(0);
+	private final TokenBucket operationsBucket = new TokenBucket(0);
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param configuration the configuration holding the chunk size and the limits
+	 */
+	public ThrottledTruncateDeletionStrategy(PluginConfiguration configuration) {
+		this.configuration = configuration;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#getName()
+	 */
+	@Override
+	public String getName() {
+		return "throttled-truncate";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#isRecoverable()
+	 */
+	@Override
+	public boolean isRecoverable() {
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#isContentDestroyed()
+	 */
+	@Override
+	public boolean isContentDestroyed() {
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see github.com.taconaut.plugin.autodeleteafterplay.DeletionStrategy#delete(java.io.File)
+	 */
+	@Override
+	public void delete(File file) throws IOException {
+		ConfigurationSnapshot snapshot = configuration.getSnapshot();
+		long chunkSize = Math.max(1, snapshot.getThrottleChunkMB()) * BYTES_PER_MB;
+		bytesBucket.setRate((double) snapshot.getThrottleMBPerSecond() * BYTES_PER_MB);
+		operationsBucket.setRate(snapshot.getThrottleOpsPerSecond());
+
+		try {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+				long initialSize = channel.size();
+				LOGGER.info(String.format("Deleting the large file '%s' (%s MB) in chunks of %s MB, throttled to %s MB/s and %s operations/s",
+						file.getAbsolutePath(), initialSize / BYTES_PER_MB, chunkSize / BYTES_PER_MB, snapshot.getThrottleMBPerSecond(),
+						snapshot.getThrottleOpsPerSecond()));
+
+				long startNanos = System.nanoTime();
+				long lastProgressLogNanos = startNanos;
+				long size = initialSize;
+				while (size > 0) {
+					long newSize = Math.max(0, size - chunkSize);
+					bytesBucket.acquire(size - newSize);
+					operationsBucket.acquire(1);
+					channel.truncate(newSize);
+					size = newSize;
+
+					long nowNanos = System.nanoTime();
+					if (nowNanos - lastProgressLogNanos >= PROGRESS_LOG_INTERVAL_NANOS) {
+						lastProgressLogNanos = nowNanos;
+						LOGGER.info(String.format("Freed %s of %s MB of '%s' (%s%%)", (initialSize - size) / BYTES_PER_MB, initialSize / BYTES_PER_MB,
+								file.getAbsolutePath(), (initialSize - size) * 100 / initialSize));
+					}
+				}
+				channel.force(true);
+				LOGGER.debug(String.format("Truncated '%s' in %s ms", file.getAbsolutePath(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)));
+			}
+
+			operationsBucket.acquire(1);
+		} catch (InterruptedException ex) {
+			// The file has been partly truncated, it will be deleted when the deletion is retried
+			Thread.currentThread().interrupt();
+			InterruptedIOException interruptedException = new InterruptedIOException(String.format("Interrupted while deleting '%s'", file));
+			interruptedException.initCause(ex);
+			throw interruptedException;
+		}
+		Files.delete(file.toPath());
+	}
+}
@@ -0,0 +1,153 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hashed timing wheel expiring items after a timeout.<br>
+ * The wheel is a ring of slots, each holding the items expiring at a tick modulo the number of slots. Scheduling and
+ * cancelling an item take constant time, and every tick only looks at the items of one slot, so expiring items is
+ * constant time amortized whatever the number of items. Timeouts longer than a turn of the wheel are supported, an
+ * item then stays in its slot for several turns. Timeouts are rounded up to the next tick.<br>
+ * Items can be scheduled and cancelled from any thread, while {@link #advance()} and {@link #pollEarliest()} are
+ * meant to be called by a single thread.
+ *
+ * @param <T> the type of the items
+ */
+public class TimingWheel<T> {
+	private final List<Set<Timeout<T>>> slots;
+	private final int mask;
+	private final long tickMillis;
+	private final AtomicLong scheduledCount = new AtomicLong();
+	private volatile long currentTick;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param slotCount the number of slots, a power of two
+	 * @param tickMillis the duration of a tick in milliseconds
+	 */
+	public TimingWheel(int slotCount, long tickMillis) {
+		if (Integer.bitCount(slotCount) != 1) {
+			throw new IllegalArgumentException(String.format("The number of slots must be a power of two, not %s", slotCount));
+		}
+
+		slots = new ArrayList<Set<Timeout<T>>>(slotCount);
+		for (int i = 0; i < slotCount; i++) {
+			slots.add(Collections.newSetFromMap(new ConcurrentHashMap<Timeout<T>, Boolean>()));
+		}
+		this.mask = slotCount - 1;
+		this.tickMillis = tickMillis;
+	}
+
+	/**
+	 * Schedules the expiration of an item.
+	 *
+	 * @param item the item
+	 * @param timeoutMillis the time after which the item expires
+	 * @return the handle used to cancel the expiration
+	 */
+	public Timeout<T> schedule(T item, long timeoutMillis) {
+		long ticks = Math.max(1, (timeoutMillis + tickMillis - 1) / tickMillis);
+		long deadlineTick = currentTick + ticks;
+		Timeout<T> timeout = new Timeout<T>(item, deadlineTick, scheduledCount.incrementAndGet());
+		slots.get((int) (deadlineTick & mask)).add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Cancels the expiration of an item.
+	 *
+	 * @param timeout the handle returned when the item was scheduled
+	 * @return true, if the item hadn't expired or been cancelled yet
+	 */
+	public boolean cancel(Timeout<T> timeout) {
+		return slots.get((int) (timeout.deadlineTick & mask)).remove(timeout);
+	}
+
+	/**
+	 * Moves the wheel forward by one tick.
+	 *
+	 * @return the items which expired
+	 */
+	public List<T> advance() {
+		long tick = currentTick + 1;
+		currentTick = tick;
+		Set<Timeout<T>> slot = slots.get((int) (tick & mask));
+		if (slot.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		List<T> expiredItems = new ArrayList<T>();
+		for (Timeout<T> timeout : slot) {
+			// Items with a later deadline wait for a further turn of the wheel
+			if (timeout.deadlineTick <= tick && slot.remove(timeout)) {
+				expiredItems.add(timeout.item);
+			}
+		}
+		return expiredItems;
+	}
+
+	/**
+	 * Removes one of the items closest to expiring, e.g. to make room for a new item. The slots are looked at in the
+	 * order they will expire, and the item with the earliest deadline of the first slot which isn't empty is removed;
+	 * among items with the same deadline, the one scheduled first. An item scheduled for a later turn of the wheel can
+	 * be picked before an item of a further slot expiring earlier.
+	 *
+	 * @return the removed item, or null if the wheel is empty
+	 */
+	public T pollEarliest() {
+		long tick = currentTick;
+		for (int i = 1; i <= slots.size(); i++) {
+			Set<Timeout<T>> slot = slots.get((int) ((tick + i) & mask));
+			Timeout<T> earliest = null;
+			for (Timeout<T> timeout : slot) {
+				if (earliest == null || timeout.deadlineTick < earliest.deadlineTick
+						|| (timeout.deadlineTick == earliest.deadlineTick && timeout.sequence < earliest.sequence)) {
+					earliest = timeout;
+				}
+			}
+			if (earliest != null && slot.remove(earliest)) {
+				return earliest.item;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Removes all items.
+	 */
+	public void clear() {
+		for (Set<Timeout<T>> slot : slots) {
+			slot.clear();
+		}
+	}
+
+	/**
+	 * Handle of a scheduled item.
+	 *
+	 * @param <T> the type of the item
+	 */
+	public static class Timeout<T> {
+		private final T item;
+		private final long deadlineTick;
+		private final long sequence;
+
+		/**
+		 * The Constructor.
+		 *
+		 * @param item the item
+		 * @param deadlineTick the tick at which the item expires
+		 * @param sequence the order in which the item has been scheduled
+		 */
+		Timeout(T item, long deadlineTick, long sequence) {
+			this.item = item;
+			this.deadlineTick = deadlineTick;
+			this.sequence = sequence;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package github.com.taconaut.plugin.autodeleteafterplay;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of an operation. Tokens are added at a constant rate up to a capacity of one second worth of
+ * tokens; acquiring tokens which aren't available blocks until they would have been added.<br>
+ * Requests larger than the available tokens are allowed to take the bucket into debt, so that a large request isn't
+ * starved by smaller ones and callers are served in order. A rate of 0 or less disables the limit.
+ */
+public class TokenBucket {
+	private static final double NANOS_PER_SECOND = 1000000000d;
+
+	private double ratePerSecond;
+	private double tokens;
+	private long lastRefillNanos;
+
+	/**
+	 * The Constructor.
+	 *
+	 * @param ratePerSecond the number of tokens added per second
+	 */
+	public TokenBucket(double ratePerSecond) {
+		this.ratePerSecond = ratePerSecond;
+		this.tokens = Math.max(0, ratePerSecond);
+		this.lastRefillNanos = System.nanoTime();
+	}
+
+	/**
+	 * Changes the rate. Tokens which have been added at the previous rate are kept.
+	 *
+	 * @param ratePerSecond the number of tokens added per second
+	 */
+	public synchronized void setRate(double ratePerSecond) {
+		if (ratePerSecond == this.ratePerSecond) {
+			return;
+		}
+		refill(System.nanoTime());
+		this.ratePerSecond = ratePerSecond;
+		tokens = Math.min(tokens, Math.max(0, ratePerSecond));
+	}
+
+	/**
+	 * Gets the number of tokens added per second.
+	 *
+	 * @return the rate
+	 */
+	public synchronized double getRate() {
+		return ratePerSecond;
+	}
+
+	/**
+	 * Acquires tokens, waiting until they are available.
+	 *
+	 * @param permits the number of tokens to acquire
+	 * @throws InterruptedException Signals that the thread has been interrupted while waiting.
+	 */
+	public void acquire(long permits) throws InterruptedException {
+		long waitNanos;
+		synchronized (this) {
+			if (ratePerSecond <= 0) {
+				return;
+			}
+			refill(System.nanoTime());
+			tokens -= permits;
+			waitNanos = tokens >= 0 ? 0 : (long) (-tokens / ratePerSecond * NANOS_PER_SECOND);
+		}
+		if (waitNanos > 0) {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+	}
+
+	/**
+	 * Adds the tokens for the time elapsed since the last refill. Has to be called while holding the lock on this
+	 * instance.
+	 *
+	 * @param nowNanos the current {@link System#nanoTime()}
+	 */
+	private void refill(long nowNanos) {
+		if (ratePerSecond > 0) {
+			tokens = Math.min(ratePerSecond, tokens + (nowNanos - lastRefillNanos) / NANOS_PER_SECOND * ratePerSecond);
+		}
+		lastRefillNanos = nowNanos;
+	}
+}